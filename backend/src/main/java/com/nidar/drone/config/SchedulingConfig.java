@@ -0,0 +1,40 @@
+package com.nidar.drone.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+ * Task schedulers, kept apart from the WebSocket broker's messageBrokerTaskScheduler, which
+ * sends the STOMP heartbeats and must not be held up by application work.
+ *
+ * taskScheduler runs @Scheduled housekeeping and mission upload timeouts. Replay sessions and
+ * simulated flights tick on simulationTaskScheduler, since their ticks load telemetry pages or
+ * step and publish a whole flight segment.
+ */
+@Configuration
+public class SchedulingConfig {
+
+    public static final String TASK_SCHEDULER = "taskScheduler";
+    public static final String SIMULATION_SCHEDULER = "simulationTaskScheduler";
+
+    @Bean(name = TASK_SCHEDULER)
+    public ThreadPoolTaskScheduler taskScheduler(@Value("${scheduling.pool-size:2}") int poolSize) {
+        return scheduler("scheduling-", poolSize);
+    }
+
+    @Bean(name = SIMULATION_SCHEDULER)
+    public ThreadPoolTaskScheduler simulationTaskScheduler(@Value("${simulation.scheduler.pool-size:4}") int poolSize) {
+        return scheduler("simulation-", poolSize);
+    }
+
+    private ThreadPoolTaskScheduler scheduler(String threadNamePrefix, int poolSize) {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(poolSize);
+        scheduler.setThreadNamePrefix(threadNamePrefix);
+        scheduler.setWaitForTasksToCompleteOnShutdown(false);
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+}
@@ -3,11 +3,13 @@ package com.nidar.drone.controller;
 import com.nidar.drone.model.Telemetry;
 import com.nidar.drone.service.MAVProxyService;
 import com.nidar.drone.service.TelemetryService;
+import com.nidar.drone.service.VehicleConnection;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -59,14 +61,40 @@ public class DroneController {
         return ResponseEntity.ok(response);
     }
     
+    @GetMapping("/vehicles")
+    public ResponseEntity<List<Map<String, Object>>> getVehicles() {
+        List<Map<String, Object>> vehicles = new ArrayList<>();
+        for (VehicleConnection connection : mavProxyService.getVehicles()) {
+            Map<String, Object> vehicle = new HashMap<>();
+            vehicle.put("systemId", connection.getSystemId());
+            vehicle.put("droneId", connection.getDroneId());
+            vehicle.put("target", String.valueOf(connection.getLink().getTarget()));
+            vehicle.put("heartbeatReceived", connection.getState().isHeartbeatReceived());
+            vehicle.put("armed", connection.getState().isArmed());
+            vehicle.put("flightMode", connection.getState().getFlightMode());
+            vehicles.add(vehicle);
+        }
+        return ResponseEntity.ok(vehicles);
+    }
+    
     @GetMapping("/telemetry")
-    public ResponseEntity<List<Telemetry>> getTelemetry() {
+    public ResponseEntity<List<Telemetry>> getTelemetry(@RequestParam(required = false) Long droneId) {
+        if (droneId != null) {
+            return ResponseEntity.ok(telemetryService.getRecentTelemetry(droneId));
+        }
         return ResponseEntity.ok(telemetryService.getRecentTelemetry());
     }
     
+    @GetMapping("/telemetry/pipeline")
+    public ResponseEntity<Map<String, Object>> getTelemetryPipelineStats() {
+        return ResponseEntity.ok(telemetryService.getPipelineStats());
+    }
+    
     @GetMapping("/telemetry/latest")
-    public ResponseEntity<Telemetry> getLatestTelemetry() {
-        Telemetry telemetry = telemetryService.getLatestTelemetry();
+    public ResponseEntity<Telemetry> getLatestTelemetry(@RequestParam(required = false) Long droneId) {
+        Telemetry telemetry = droneId != null
+            ? telemetryService.getLatestTelemetry(droneId)
+            : telemetryService.getLatestTelemetry();
         if (telemetry != null) {
             return ResponseEntity.ok(telemetry);
         }
@@ -74,9 +102,10 @@ public class DroneController {
     }
     
     @PostMapping("/command/{command}")
-    public ResponseEntity<Map<String, Object>> sendCommand(@PathVariable String command) {
+    public ResponseEntity<Map<String, Object>> sendCommand(@PathVariable String command,
+                                                           @RequestParam(required = false) Long droneId) {
         log.info("Sending command: {}", command);
-        boolean success = mavProxyService.sendCommand(command);
+        boolean success = mavProxyService.sendCommand(command, droneId);
         
         Map<String, Object> response = new HashMap<>();
         response.put("success", success);
@@ -35,15 +35,23 @@ public class DroneManagementController {
     }
     
     @PostMapping
-    public ResponseEntity<Drone> createDrone(@RequestBody Drone drone) {
+    public ResponseEntity<?> createDrone(@RequestBody Drone drone) {
         log.info("Creating new drone: {}", drone.getName());
-        Drone created = droneService.createDrone(drone);
-        return ResponseEntity.ok(created);
+        try {
+            return ResponseEntity.ok(droneService.createDrone(drone));
+        } catch (RuntimeException e) {
+            return badRequest(e);
+        }
     }
     
     @PutMapping("/{id}")
-    public ResponseEntity<Drone> updateDrone(@PathVariable Long id, @RequestBody Drone drone) {
-        Drone updated = droneService.updateDrone(id, drone);
+    public ResponseEntity<?> updateDrone(@PathVariable Long id, @RequestBody Drone drone) {
+        Drone updated;
+        try {
+            updated = droneService.updateDrone(id, drone);
+        } catch (RuntimeException e) {
+            return badRequest(e);
+        }
         if (updated != null) {
             return ResponseEntity.ok(updated);
         }
@@ -101,4 +109,11 @@ public class DroneManagementController {
         }
         return ResponseEntity.notFound().build();
     }
+    
+    private ResponseEntity<Map<String, Object>> badRequest(RuntimeException e) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", false);
+        response.put("message", e.getMessage());
+        return ResponseEntity.badRequest().body(response);
+    }
 }
@@ -1,12 +1,14 @@
 package com.nidar.drone.controller;
 
 import com.nidar.drone.model.FlightLog;
-import com.nidar.drone.repository.FlightLogRepository;
+import com.nidar.drone.service.FlightLogService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -18,61 +20,64 @@ import java.util.Map;
 @CrossOrigin(origins = {"http://localhost:5173", "http://localhost:3000"})
 public class FlightLogController {
     
-    private final FlightLogRepository flightLogRepository;
+    private final FlightLogService flightLogService;
     
     @GetMapping
     public ResponseEntity<List<FlightLog>> getAllLogs() {
-        return ResponseEntity.ok(flightLogRepository.findByOrderByStartTimeDesc());
+        return ResponseEntity.ok(flightLogService.getAllLogs());
+    }
+    
+    /**
+     * Keyset-paginated, filtered flight logs, newest first, without mission graphs
+     */
+    @GetMapping("/page")
+    public ResponseEntity<Map<String, Object>> getLogPage(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) Long droneId,
+            @RequestParam(required = false) Long missionId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime afterStartTime,
+            @RequestParam(required = false) Long afterId,
+            @RequestParam(defaultValue = "100") int limit) {
+        return ResponseEntity.ok(flightLogService.getLogPage(
+            from, to, status, droneId, missionId, afterStartTime, afterId, limit));
     }
     
     @GetMapping("/{id}")
     public ResponseEntity<FlightLog> getLogById(@PathVariable Long id) {
-        return flightLogRepository.findById(id)
-            .map(ResponseEntity::ok)
-            .orElse(ResponseEntity.notFound().build());
+        FlightLog flightLog = flightLogService.getLogById(id);
+        return flightLog != null ? ResponseEntity.ok(flightLog) : ResponseEntity.notFound().build();
     }
     
     @GetMapping("/status/{status}")
     public ResponseEntity<List<FlightLog>> getLogsByStatus(@PathVariable String status) {
-        return ResponseEntity.ok(flightLogRepository.findByFlightStatus(status));
+        return ResponseEntity.ok(flightLogService.getLogsByStatus(status));
     }
     
+    /**
+     * Fleet totals, per-drone totals and per-day totals for the last days days;
+     * served from memory (see FleetStatisticsService)
+     */
     @GetMapping("/statistics")
-    public ResponseEntity<Map<String, Object>> getStatistics() {
-        Map<String, Object> stats = new HashMap<>();
-        
-        stats.put("totalFlights", flightLogRepository.getCompletedFlightsCount());
-        stats.put("totalDistance", flightLogRepository.getTotalDistanceFlown());
-        stats.put("totalFlightTime", flightLogRepository.getTotalFlightTime());
-        
-        List<FlightLog> recentLogs = flightLogRepository.findByOrderByStartTimeDesc();
-        if (!recentLogs.isEmpty()) {
-            stats.put("lastFlight", recentLogs.get(0));
-        }
-        
-        return ResponseEntity.ok(stats);
+    public ResponseEntity<Map<String, Object>> getStatistics(@RequestParam(defaultValue = "30") int days) {
+        return ResponseEntity.ok(flightLogService.getStatistics(days));
     }
     
     @PostMapping
     public ResponseEntity<FlightLog> createLog(@RequestBody FlightLog log) {
-        FlightLog saved = flightLogRepository.save(log);
-        return ResponseEntity.ok(saved);
+        return ResponseEntity.ok(flightLogService.createLog(log));
     }
     
     @PutMapping("/{id}")
     public ResponseEntity<FlightLog> updateLog(@PathVariable Long id, @RequestBody FlightLog log) {
-        return flightLogRepository.findById(id)
-            .map(existing -> {
-                log.setId(id);
-                FlightLog updated = flightLogRepository.save(log);
-                return ResponseEntity.ok(updated);
-            })
-            .orElse(ResponseEntity.notFound().build());
+        FlightLog updated = flightLogService.updateLog(id, log);
+        return updated != null ? ResponseEntity.ok(updated) : ResponseEntity.notFound().build();
     }
     
     @DeleteMapping("/{id}")
     public ResponseEntity<Map<String, Object>> deleteLog(@PathVariable Long id) {
-        flightLogRepository.deleteById(id);
+        flightLogService.deleteLog(id);
         
         Map<String, Object> response = new HashMap<>();
         response.put("success", true);
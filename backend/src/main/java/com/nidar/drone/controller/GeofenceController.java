@@ -1,12 +1,15 @@
 package com.nidar.drone.controller;
 
+import com.nidar.drone.geofence.Polyline;
 import com.nidar.drone.model.GeofenceZone;
+import com.nidar.drone.service.GeofenceMonitor;
 import com.nidar.drone.service.GeofenceService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -19,12 +22,21 @@ import java.util.Map;
 public class GeofenceController {
     
     private final GeofenceService geofenceService;
+    private final GeofenceMonitor geofenceMonitor;
     
     @GetMapping
     public ResponseEntity<List<GeofenceZone>> getAllZones() {
         return ResponseEntity.ok(geofenceService.getAllZones());
     }
     
+    /**
+     * Vehicles currently violating their mission's geofence (live events on /topic/geofence/{droneId})
+     */
+    @GetMapping("/violations")
+    public ResponseEntity<List<Map<String, Object>>> getActiveViolations() {
+        return ResponseEntity.ok(geofenceMonitor.getActiveViolations());
+    }
+    
     @GetMapping("/{id}")
     public ResponseEntity<GeofenceZone> getZoneById(@PathVariable Long id) {
         GeofenceZone zone = geofenceService.getZoneById(id);
@@ -70,6 +82,67 @@ public class GeofenceController {
         }
     }
     
+    /**
+     * Validate a whole path for a mission in one call. The body carries missionId and either
+     * "positions" (a list of {latitude, longitude, altitude}) or "polyline" (an encoded polyline,
+     * with optional "precision", default 5, and one "altitude" for every point). Set
+     * "checkLegs" to also check the legs between consecutive positions.
+     */
+    @PostMapping("/validate/batch")
+    public ResponseEntity<Map<String, Object>> validatePositions(@RequestBody Map<String, Object> request) {
+        try {
+            Long missionId = request.get("missionId") != null ?
+                ((Number) request.get("missionId")).longValue() : null;
+            if (missionId == null) {
+                throw new RuntimeException("Missing missionId");
+            }
+            boolean checkLegs = Boolean.TRUE.equals(request.get("checkLegs"));
+            
+            double[] latitudes;
+            double[] longitudes;
+            double[] altitudes;
+            if (request.get("polyline") != null) {
+                int precision = request.get("precision") != null ? ((Number) request.get("precision")).intValue() : 5;
+                double[][] decoded = Polyline.decode((String) request.get("polyline"), precision);
+                latitudes = decoded[0];
+                longitudes = decoded[1];
+                altitudes = new double[latitudes.length];
+                Arrays.fill(altitudes, request.get("altitude") != null ?
+                    ((Number) request.get("altitude")).doubleValue() : Double.NaN);
+            } else if (request.get("positions") instanceof List<?> positions) {
+                latitudes = new double[positions.size()];
+                longitudes = new double[positions.size()];
+                altitudes = new double[positions.size()];
+                for (int i = 0; i < positions.size(); i++) {
+                    Map<?, ?> position = (Map<?, ?>) positions.get(i);
+                    if (position.get("latitude") == null || position.get("longitude") == null) {
+                        throw new RuntimeException("Position " + i + " is missing latitude or longitude");
+                    }
+                    latitudes[i] = ((Number) position.get("latitude")).doubleValue();
+                    longitudes[i] = ((Number) position.get("longitude")).doubleValue();
+                    altitudes[i] = position.get("altitude") != null ?
+                        ((Number) position.get("altitude")).doubleValue() : Double.NaN;
+                }
+            } else {
+                throw new RuntimeException("Provide either positions or polyline");
+            }
+            
+            return ResponseEntity.ok(geofenceService.validatePositions(
+                missionId, latitudes, longitudes, altitudes, checkLegs));
+        } catch (ClassCastException e) {
+            log.error("Invalid parameter types", e);
+            Map<String, Object> error = new HashMap<>();
+            error.put("valid", false);
+            error.put("message", "Invalid parameter types");
+            return ResponseEntity.badRequest().body(error);
+        } catch (RuntimeException e) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("valid", false);
+            error.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        }
+    }
+    
     @PostMapping("/validate")
     public ResponseEntity<Map<String, Object>> validatePosition(@RequestBody Map<String, Object> request) {
         try {
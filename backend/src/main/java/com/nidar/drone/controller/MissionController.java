@@ -1,9 +1,11 @@
 package com.nidar.drone.controller;
 
 import com.nidar.drone.model.Mission;
+import com.nidar.drone.service.MissionDeploymentService;
 import com.nidar.drone.service.MissionService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
@@ -11,6 +13,8 @@ import org.springframework.web.multipart.MultipartFile;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @RestController
 @RequestMapping("/api/mission")
@@ -20,6 +24,7 @@ import java.util.Map;
 public class MissionController {
     
     private final MissionService missionService;
+    private final MissionDeploymentService missionDeploymentService;
     
     @PostMapping
     public ResponseEntity<Mission> createMission(@RequestBody Mission mission) {
@@ -42,25 +47,71 @@ public class MissionController {
         return ResponseEntity.notFound().build();
     }
     
+    /**
+     * Deploy a mission and answer with the finished job when the upload has finished. The request
+     * thread is released while the upload runs on the deployment pool; the response is completed
+     * from there, so it carries the job rather than the mission entity, whose collections could
+     * not be loaded outside the deployment's transaction.
+     */
     @PostMapping("/{id}/deploy")
-    public ResponseEntity<Map<String, Object>> deployMission(@PathVariable Long id) {
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> deployMission(@PathVariable Long id,
+                                                                                @RequestParam(required = false) Long droneId) {
         log.info("Deploying mission: {}", id);
+        MissionDeploymentService.DeploymentJob job;
+        try {
+            job = missionDeploymentService.deployMissionAsync(id, droneId);
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(deploymentFailed(e));
+        }
+        
+        return job.getFuture().handle((mission, error) -> {
+            if (error != null) {
+                return deploymentFailed(error);
+            }
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("message", job.getMessage());
+            response.put("jobId", job.getJobId());
+            response.put("status", job.getStatus());
+            response.put("missionId", job.getMissionId());
+            return ResponseEntity.ok(response);
+        });
+    }
+    
+    /**
+     * Start a deployment in the background. Progress is published to /topic/upload/{id}
+     * and can also be polled with GET /api/mission/deploy/jobs/{jobId}.
+     */
+    @PostMapping("/{id}/deploy/async")
+    public ResponseEntity<Map<String, Object>> deployMissionAsync(@PathVariable Long id,
+                                                                  @RequestParam(required = false) Long droneId) {
+        log.info("Queueing deployment of mission: {}", id);
         Map<String, Object> response = new HashMap<>();
         
         try {
-            Mission mission = missionService.deployMission(id);
+            MissionDeploymentService.DeploymentJob job = missionDeploymentService.deployMissionAsync(id, droneId);
             response.put("success", true);
-            response.put("message", "Mission deployed successfully");
-            response.put("mission", mission);
-            return ResponseEntity.ok(response);
+            response.put("jobId", job.getJobId());
+            response.put("status", job.getStatus());
+            response.put("topic", "/topic/upload/" + id);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
         } catch (Exception e) {
-            log.error("Failed to deploy mission", e);
+            log.error("Failed to queue mission deployment", e);
             response.put("success", false);
             response.put("message", e.getMessage());
             return ResponseEntity.badRequest().body(response);
         }
     }
     
+    @GetMapping("/deploy/jobs/{jobId}")
+    public ResponseEntity<MissionDeploymentService.DeploymentJob> getDeploymentJob(@PathVariable String jobId) {
+        MissionDeploymentService.DeploymentJob job = missionDeploymentService.getJob(jobId);
+        if (job != null) {
+            return ResponseEntity.ok(job);
+        }
+        return ResponseEntity.notFound().build();
+    }
+    
     @PostMapping("/upload")
     public ResponseEntity<Map<String, Object>> uploadMissionFile(@RequestParam("file") MultipartFile file) {
         log.info("Uploading mission file: {}", file.getOriginalFilename());
@@ -79,4 +130,13 @@ public class MissionController {
             return ResponseEntity.badRequest().body(response);
         }
     }
+    
+    private ResponseEntity<Map<String, Object>> deploymentFailed(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        log.error("Failed to deploy mission", cause);
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", false);
+        response.put("message", cause.getMessage());
+        return ResponseEntity.badRequest().body(response);
+    }
 }
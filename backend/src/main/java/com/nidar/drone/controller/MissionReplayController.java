@@ -1,14 +1,22 @@
 package com.nidar.drone.controller;
 
-import com.nidar.drone.model.Telemetry;
+import com.nidar.drone.dto.TelemetryPoint;
 import com.nidar.drone.service.MissionReplayService;
+import com.nidar.drone.service.ReplaySession;
+import com.nidar.drone.service.ReplaySessionService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 @RestController
 @RequestMapping("/api/replay")
@@ -18,11 +26,27 @@ import java.util.Map;
 public class MissionReplayController {
     
     private final MissionReplayService missionReplayService;
+    private final ReplaySessionService replaySessionService;
     
+    /**
+     * Replay data for a mission; pass tolerance (meters) and/or resolution (samples per series)
+     * to get a downsampled track for map rendering
+     */
     @GetMapping("/mission/{missionId}")
-    public ResponseEntity<Map<String, Object>> getMissionReplayData(@PathVariable Long missionId) {
+    public ResponseEntity<Map<String, Object>> getMissionReplayData(
+            @PathVariable Long missionId,
+            @RequestParam(required = false) Double tolerance,
+            @RequestParam(required = false) Integer resolution) {
         log.info("Getting replay data for mission: {}", missionId);
-        Map<String, Object> data = missionReplayService.getMissionReplayData(missionId);
+        Map<String, Object> data;
+        try {
+            data = missionReplayService.getMissionReplayData(missionId, tolerance, resolution);
+        } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
         
         if (data.containsKey("error")) {
             return ResponseEntity.notFound().build();
@@ -31,9 +55,148 @@ public class MissionReplayController {
         return ResponseEntity.ok(data);
     }
     
+    /**
+     * Mission statistics; constant time for a mission in flight
+     */
+    @GetMapping("/mission/{missionId}/statistics")
+    public ResponseEntity<Map<String, Object>> getMissionStatistics(@PathVariable Long missionId) {
+        return ResponseEntity.ok(missionReplayService.getMissionStatistics(missionId));
+    }
+    
     @GetMapping("/telemetry/{missionId}")
-    public ResponseEntity<List<Telemetry>> getTelemetryByMission(@PathVariable Long missionId) {
-        List<Telemetry> telemetry = missionReplayService.getTelemetryByMission(missionId);
-        return ResponseEntity.ok(telemetry);
+    public ResponseEntity<List<?>> getTelemetryByMission(
+            @PathVariable Long missionId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) Double tolerance,
+            @RequestParam(required = false) Integer resolution) {
+        if (tolerance == null && resolution == null) {
+            return ResponseEntity.ok(missionReplayService.getTelemetryByMission(missionId, from, to));
+        }
+        try {
+            return ResponseEntity.ok(missionReplayService.getSimplifiedTelemetry(missionId, from, to, tolerance, resolution));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
+    /**
+     * Mission telemetry as newline-delimited JSON, streamed from the database. With tolerance or
+     * resolution the track is downsampled first and the kept samples are written.
+     */
+    @GetMapping(value = "/telemetry/{missionId}/stream", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> streamTelemetryByMission(
+            @PathVariable Long missionId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) Double tolerance,
+            @RequestParam(required = false) Integer resolution) {
+        StreamingResponseBody body;
+        if (tolerance == null && resolution == null) {
+            body = out -> missionReplayService.streamMissionTelemetry(missionId, from, to, out);
+        } else {
+            List<TelemetryPoint> points;
+            try {
+                points = missionReplayService.getSimplifiedTelemetry(missionId, from, to, tolerance, resolution);
+            } catch (Exception e) {
+                return ResponseEntity.badRequest().build();
+            }
+            body = out -> missionReplayService.writeNdjson(points.iterator(), out);
+        }
+        return ResponseEntity.ok()
+            .contentType(MediaType.parseMediaType("application/x-ndjson"))
+            .body(body);
+    }
+    
+    @PostMapping("/sessions")
+    public ResponseEntity<Map<String, Object>> createReplaySession(
+            @RequestParam Long missionId,
+            @RequestParam(defaultValue = "1") double speed) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            ReplaySession session = replaySessionService.createSession(missionId, speed);
+            response.putAll(session.getStatus());
+            response.put("success", true);
+            response.put("topic", "/topic/replay/" + session.getSessionId());
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+    
+    @GetMapping("/sessions/{sessionId}")
+    public ResponseEntity<Map<String, Object>> getReplaySession(@PathVariable String sessionId) {
+        return replayControl(() -> replaySessionService.getSession(sessionId));
+    }
+    
+    @PostMapping("/sessions/{sessionId}/pause")
+    public ResponseEntity<Map<String, Object>> pauseReplay(@PathVariable String sessionId) {
+        return replayControl(() -> replaySessionService.pause(sessionId));
+    }
+    
+    @PostMapping("/sessions/{sessionId}/resume")
+    public ResponseEntity<Map<String, Object>> resumeReplay(@PathVariable String sessionId) {
+        return replayControl(() -> replaySessionService.resume(sessionId));
+    }
+    
+    @PostMapping("/sessions/{sessionId}/speed")
+    public ResponseEntity<Map<String, Object>> setReplaySpeed(@PathVariable String sessionId,
+                                                              @RequestParam double speed) {
+        return replayControl(() -> replaySessionService.setSpeed(sessionId, speed));
+    }
+    
+    @PostMapping("/sessions/{sessionId}/seek")
+    public ResponseEntity<Map<String, Object>> seekReplay(
+            @PathVariable String sessionId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime timestamp) {
+        return replayControl(() -> replaySessionService.seek(sessionId, timestamp));
+    }
+    
+    @DeleteMapping("/sessions/{sessionId}")
+    public ResponseEntity<Map<String, Object>> closeReplaySession(@PathVariable String sessionId) {
+        replaySessionService.closeSession(sessionId);
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("message", "Replay session closed");
+        return ResponseEntity.ok(response);
+    }
+    
+    private ResponseEntity<Map<String, Object>> replayControl(Supplier<ReplaySession> action) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            response.putAll(action.get().getStatus());
+            response.put("success", true);
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+    
+    @GetMapping("/telemetry/{missionId}/page")
+    public ResponseEntity<Map<String, Object>> getMissionTelemetryPage(
+            @PathVariable Long missionId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime afterTimestamp,
+            @RequestParam(required = false) Long afterId,
+            @RequestParam(defaultValue = "1000") int limit) {
+        return ResponseEntity.ok(missionReplayService.getMissionTelemetryPage(
+            missionId, from, to, afterTimestamp, afterId, limit));
+    }
+    
+    @GetMapping("/drone/{droneId}/telemetry/page")
+    public ResponseEntity<Map<String, Object>> getDroneTelemetryPage(
+            @PathVariable Long droneId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime afterTimestamp,
+            @RequestParam(required = false) Long afterId,
+            @RequestParam(defaultValue = "1000") int limit) {
+        return ResponseEntity.ok(missionReplayService.getDroneTelemetryPage(
+            droneId, from, to, afterTimestamp, afterId, limit));
     }
 }
@@ -1,13 +1,24 @@
 package com.nidar.drone.controller;
 
+import com.nidar.drone.energy.EnergyModel;
 import com.nidar.drone.model.Mission;
+import com.nidar.drone.service.EnergyModelService;
 import com.nidar.drone.service.MissionService;
 import com.nidar.drone.service.MissionSimulatorService;
+import com.nidar.drone.service.MonteCarloSimulationService;
+import com.nidar.drone.service.SimulatedFlight;
+import com.nidar.drone.service.SimulatedFlightService;
+import com.nidar.drone.service.SimulationResultCache;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
 @RestController
 @RequestMapping("/api/simulator")
 @RequiredArgsConstructor
@@ -15,12 +26,20 @@ import org.springframework.web.bind.annotation.*;
 @CrossOrigin(origins = {"http://localhost:5173", "http://localhost:3000"})
 public class MissionSimulatorController {
     
-    private final MissionSimulatorService simulatorService;
     private final MissionService missionService;
+    private final MonteCarloSimulationService monteCarloService;
+    private final SimulatedFlightService simulatedFlightService;
+    private final EnergyModelService energyModelService;
+    private final SimulationResultCache simulationResultCache;
     
+    /**
+     * Validate a saved mission; droneId (optional) predicts battery usage with the energy model
+     * of that drone's model. Results are cached by mission content.
+     */
     @PostMapping("/validate/{missionId}")
     public ResponseEntity<MissionSimulatorService.SimulationResult> validateMission(
-            @PathVariable Long missionId) {
+            @PathVariable Long missionId,
+            @RequestParam(required = false) Long droneId) {
         log.info("Validating mission: {}", missionId);
         
         Mission mission = missionService.getMissionById(missionId);
@@ -28,16 +47,140 @@ public class MissionSimulatorController {
             return ResponseEntity.notFound().build();
         }
         
-        MissionSimulatorService.SimulationResult result = simulatorService.simulateMission(mission);
+        EnergyModel energyModel;
+        try {
+            energyModel = energyModelService.getModelForDrone(droneId);
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().build(); // unknown drone
+        }
+        MissionSimulatorService.SimulationResult result = simulationResultCache.simulate(mission, energyModel);
         return ResponseEntity.ok(result);
     }
     
     @PostMapping("/validate")
     public ResponseEntity<MissionSimulatorService.SimulationResult> validateMissionData(
-            @RequestBody Mission mission) {
+            @RequestBody Mission mission,
+            @RequestParam(required = false) Long droneId) {
         log.info("Validating mission data");
         
-        MissionSimulatorService.SimulationResult result = simulatorService.simulateMission(mission);
+        EnergyModel energyModel;
+        try {
+            energyModel = energyModelService.getModelForDrone(droneId);
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().build(); // unknown drone
+        }
+        MissionSimulatorService.SimulationResult result = simulationResultCache.simulate(mission, energyModel);
         return ResponseEntity.ok(result);
     }
+    
+    /**
+     * Size and hit rate of the simulation result cache
+     */
+    @GetMapping("/cache")
+    public ResponseEntity<Map<String, Object>> getCacheStatistics() {
+        return ResponseEntity.ok(simulationResultCache.getStatistics());
+    }
+    
+    /**
+     * Energy models fitted so far, one per drone model
+     */
+    @GetMapping("/energy-models")
+    public ResponseEntity<List<EnergyModel>> getEnergyModels() {
+        return ResponseEntity.ok(energyModelService.getModels());
+    }
+    
+    /**
+     * Energy model of a drone model; the default model until its first fit, started by this call,
+     * has finished
+     */
+    @GetMapping("/energy-models/{model}")
+    public ResponseEntity<EnergyModel> getEnergyModel(@PathVariable String model) {
+        return ResponseEntity.ok(energyModelService.getModel(model));
+    }
+    
+    /**
+     * Fit a drone model's energy model again from the telemetry recorded so far
+     */
+    @PostMapping("/energy-models/{model}/fit")
+    public CompletableFuture<ResponseEntity<EnergyModel>> refitEnergyModel(@PathVariable String model) {
+        try {
+            return energyModelService.refit(model).thenApply(ResponseEntity::ok)
+                .exceptionally(e -> ResponseEntity.internalServerError().build());
+        } catch (RuntimeException e) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().build()); // unknown drone model
+        }
+    }
+    
+    /**
+     * Fly the mission many times under randomized wind, speed and battery health and return
+     * percentile flight time and battery at landing; the body (optional) overrides the defaults.
+     * Battery drain follows the energy model of droneId's model (optional), as in validation.
+     */
+    @PostMapping("/montecarlo/{missionId}")
+    public ResponseEntity<Map<String, Object>> simulateMonteCarlo(
+            @PathVariable Long missionId,
+            @RequestParam(required = false) Long droneId,
+            @RequestBody(required = false) MonteCarloSimulationService.MonteCarloOptions options) {
+        Mission mission = missionService.getMissionById(missionId);
+        if (mission == null) {
+            return ResponseEntity.notFound().build();
+        }
+        
+        try {
+            EnergyModel energyModel = energyModelService.getModelForDrone(droneId);
+            return ResponseEntity.ok(monteCarloService.simulate(mission,
+                options != null ? options : new MonteCarloSimulationService.MonteCarloOptions(), energyModel));
+        } catch (RuntimeException e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+    
+    /**
+     * Fly a mission with a simulated vehicle; its telemetry is published like a real vehicle's.
+     * timeScale runs it faster than real time, rateHz is the telemetry rate in simulated time.
+     */
+    @PostMapping("/flights")
+    public ResponseEntity<Map<String, Object>> startSimulatedFlight(
+            @RequestParam Long missionId,
+            @RequestParam(required = false) Long droneId,
+            @RequestParam(defaultValue = "1") double timeScale,
+            @RequestParam(defaultValue = "4") double rateHz) {
+        try {
+            SimulatedFlight flight = simulatedFlightService.start(missionId, droneId, timeScale, rateHz);
+            return ResponseEntity.ok(flight.getStatus());
+        } catch (RuntimeException e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+    
+    @GetMapping("/flights")
+    public ResponseEntity<List<Map<String, Object>>> getSimulatedFlights() {
+        return ResponseEntity.ok(simulatedFlightService.getFlights().stream()
+            .map(SimulatedFlight::getStatus)
+            .toList());
+    }
+    
+    @GetMapping("/flights/{sessionId}")
+    public ResponseEntity<Map<String, Object>> getSimulatedFlight(@PathVariable String sessionId) {
+        try {
+            return ResponseEntity.ok(simulatedFlightService.getFlight(sessionId).getStatus());
+        } catch (RuntimeException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+    
+    @DeleteMapping("/flights/{sessionId}")
+    public ResponseEntity<Map<String, Object>> stopSimulatedFlight(@PathVariable String sessionId) {
+        simulatedFlightService.stop(sessionId);
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("message", "Simulated flight stopped");
+        return ResponseEntity.ok(response);
+    }
 }
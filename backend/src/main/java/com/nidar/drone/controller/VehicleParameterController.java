@@ -61,7 +61,8 @@ public class VehicleParameterController {
     
     @PostMapping("/upload")
     public ResponseEntity<Map<String, Object>> uploadParameters(
-            @RequestBody List<VehicleParameter> parameters) {
+            @RequestBody List<VehicleParameter> parameters,
+            @RequestParam(required = false) Long droneId) {
         
         log.info("Uploading {} vehicle parameters to Mission Planner/QGC", parameters.size());
         Map<String, Object> response = new HashMap<>();
@@ -71,7 +72,7 @@ public class VehicleParameterController {
             List<VehicleParameter> saved = parameterRepository.saveAll(parameters);
             
             // Send to Mission Planner/QGC via MAVLink
-            boolean success = mavProxyService.uploadParameters(saved);
+            boolean success = mavProxyService.uploadParameters(saved, droneId);
             
             if (success) {
                 response.put("success", true);
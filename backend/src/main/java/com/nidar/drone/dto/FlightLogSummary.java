@@ -0,0 +1,37 @@
+package com.nidar.drone.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * One flight log with its mission and drone reduced to id and name, selected directly with a
+ * JPQL constructor expression so listings never load the mission's waypoints.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FlightLogSummary {
+    private Long id;
+    private Long missionId;
+    private String missionName;
+    private Long droneId;
+    private String droneName;
+    private LocalDateTime startTime;
+    private LocalDateTime endTime;
+    private Integer durationSeconds;
+    private Double maxAltitude;
+    private Double maxSpeed;
+    private Double avgSpeed;
+    private Double totalDistance;
+    private Double maxDistanceFromHome;
+    private Double startBattery;
+    private Double endBattery;
+    private Double batteryUsed;
+    private Integer waypointsPlanned;
+    private Integer waypointsCompleted;
+    private String flightStatus;
+    private String notes;
+}
@@ -0,0 +1,24 @@
+package com.nidar.drone.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Completed flights, distance (m) and flight time (s) of one group of flight logs - the whole
+ * fleet, one drone (key = drone id) or one day (key = date) - summed by the database with a
+ * GROUP BY instead of reading the rows.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FlightTotals {
+    private Object key;
+    private Long flights;
+    private Double distance;
+    private Long flightTime;
+    
+    public FlightTotals(Long flights, Double distance, Long flightTime) {
+        this(null, flights, distance, flightTime);
+    }
+}
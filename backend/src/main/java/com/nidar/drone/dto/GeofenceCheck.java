@@ -0,0 +1,24 @@
+package com.nidar.drone.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Result of one position (or, with toIndex set, one leg) of a batch geofence validation.
+ * Violation fields are omitted for valid entries to keep large responses small.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class GeofenceCheck {
+    private int index;
+    private Integer toIndex;
+    private boolean valid;
+    private String reason;
+    private String message;
+    private Long zoneId;
+    private String violationAction;
+}
@@ -0,0 +1,28 @@
+package com.nidar.drone.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * One recorded telemetry sample without its Drone/Mission associations, selected directly
+ * with a JPQL constructor expression for replay and export.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TelemetryPoint {
+    private Long id;
+    private LocalDateTime timestamp;
+    private Double latitude;
+    private Double longitude;
+    private Double altitude;
+    private Double speed;
+    private Double battery;
+    private Integer heading;
+    private Integer satellites;
+    private String flightMode;
+    private Boolean armed;
+}
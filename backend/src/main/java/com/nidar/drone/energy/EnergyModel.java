@@ -0,0 +1,154 @@
+package com.nidar.drone.energy;
+
+import java.time.LocalDateTime;
+
+/**
+ * Battery drain of one drone model, in percent of the pack per second.
+ *
+ * drain = hover + linearSpeed * v + quadraticSpeed * v^2
+ *       + climbCost * climb rate (up) + descentCost * descent rate (down)
+ *       + discharge * (1 - battery / 100)
+ *
+ * Hover is the power to stay in the air; the speed terms are the cruise power curve (induced
+ * power falls with speed, drag rises with its square); climb and descent costs are per meter of
+ * height gained or lost; the discharge term makes the reported percentage fall faster as the
+ * pack empties and its voltage sags. Coefficients are fitted from recorded telemetry by
+ * {@link EnergyModelFitter}; {@link #DEFAULT} is the fixed model the simulator used before
+ * (20 minutes of flight = 100% plus a 20% overhead) and is used for models without enough data.
+ */
+public class EnergyModel {
+    
+    static final int HOVER = 0;
+    static final int LINEAR_SPEED = 1;
+    static final int QUADRATIC_SPEED = 2;
+    static final int CLIMB = 3;
+    static final int DESCENT = 4;
+    static final int DISCHARGE = 5;
+    static final int TERMS = 6;
+    
+    private static final double DEFAULT_HOVER_DRAIN = 100.0 / (20 * 60) * 1.2;
+    
+    public static final EnergyModel DEFAULT = defaults(null);
+    
+    private final String model;
+    private final double[] coefficients;
+    private final boolean fitted;
+    private final long samples;
+    private final double flightSeconds;
+    private final double rmse;
+    private final LocalDateTime fittedAt;
+    
+    EnergyModel(String model, double[] coefficients, boolean fitted, long samples, double flightSeconds,
+                double rmse, LocalDateTime fittedAt) {
+        this.model = model;
+        this.coefficients = coefficients.clone();
+        this.fitted = fitted;
+        this.samples = samples;
+        this.flightSeconds = flightSeconds;
+        this.rmse = rmse;
+        this.fittedAt = fittedAt;
+    }
+    
+    /**
+     * The fixed default model, labeled with a drone model that has no fitted one
+     */
+    public static EnergyModel defaults(String model) {
+        double[] coefficients = new double[TERMS];
+        coefficients[HOVER] = DEFAULT_HOVER_DRAIN;
+        return new EnergyModel(model, coefficients, false, 0, 0, 0, null);
+    }
+    
+    /**
+     * Drain in percent per second at a horizontal speed (m/s), climb rate (m/s, positive up)
+     * and battery level (percent)
+     */
+    public double drainRate(double speed, double climbRate, double battery) {
+        return Math.max(0, cruiseRate(speed, battery)
+            + coefficients[CLIMB] * Math.max(0, climbRate)
+            + coefficients[DESCENT] * Math.max(0, -climbRate));
+    }
+    
+    /**
+     * Percent used flying for the given seconds at a speed while climbing the given meters
+     * (negative to descend); a hold is a leg at speed 0 without climb
+     */
+    public double legDrain(double seconds, double speed, double climb, double battery) {
+        return Math.max(0, cruiseRate(speed, battery) * seconds
+            + coefficients[CLIMB] * Math.max(0, climb)
+            + coefficients[DESCENT] * Math.max(0, -climb));
+    }
+    
+    private double cruiseRate(double speed, double battery) {
+        return coefficients[HOVER]
+            + coefficients[LINEAR_SPEED] * speed
+            + coefficients[QUADRATIC_SPEED] * speed * speed
+            + coefficients[DISCHARGE] * (1 - battery / 100);
+    }
+    
+    /**
+     * Drone model the coefficients belong to, null for the default model
+     */
+    public String getModel() {
+        return model;
+    }
+    
+    /**
+     * Whether the coefficients were fitted from telemetry rather than defaulted
+     */
+    public boolean isFitted() {
+        return fitted;
+    }
+    
+    public double getHoverDrain() {
+        return coefficients[HOVER];
+    }
+    
+    public double getLinearSpeedDrain() {
+        return coefficients[LINEAR_SPEED];
+    }
+    
+    public double getQuadraticSpeedDrain() {
+        return coefficients[QUADRATIC_SPEED];
+    }
+    
+    public double getClimbCostPerMeter() {
+        return coefficients[CLIMB];
+    }
+    
+    public double getDescentCostPerMeter() {
+        return coefficients[DESCENT];
+    }
+    
+    public double getDischargeSlope() {
+        return coefficients[DISCHARGE];
+    }
+    
+    /**
+     * Minutes from a full pack to empty hovering, ignoring the discharge curve
+     */
+    public double getHoverEnduranceMinutes() {
+        return 100 / coefficients[HOVER] / 60;
+    }
+    
+    /**
+     * Pairs of consecutive samples the coefficients were fitted from
+     */
+    public long getSamples() {
+        return samples;
+    }
+    
+    public double getFlightSeconds() {
+        return flightSeconds;
+    }
+    
+    /**
+     * Root mean square error of the fitted drain rate, percent per second
+     */
+    public double getRmse() {
+        return rmse;
+    }
+    
+    public LocalDateTime getFittedAt() {
+        return fittedAt;
+    }
+}
@@ -0,0 +1,171 @@
+package com.nidar.drone.energy;
+
+import com.nidar.drone.dto.TelemetryPoint;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Least-squares fit of an {@link EnergyModel} from recorded telemetry, one sample at a time.
+ *
+ * Each pair of consecutive airborne samples of one vehicle gives a drain rate (battery drop over
+ * the time between them) and the speed, climb rate and battery level it was flown at. Only the
+ * normal equations (a 6x6 matrix and a vector) are accumulated, so memory stays constant however
+ * much telemetry is streamed through. Pairs are weighted by their duration: the battery is
+ * reported in whole percent, so single pairs are coarse, but the weighted sum of drops telescopes
+ * to the true drop over each series. An empty reading (0%) no longer drops, so it is skipped.
+ * Samples must arrive in time order, one series per vehicle.
+ */
+public class EnergyModelFitter {
+    
+    private static final double MAX_GAP = 10.0; // seconds; a longer gap starts a new series
+    private static final double MIN_ALTITUDE = 1.0; // meters; below this the vehicle is on the ground
+    private static final double RIDGE = 1e-6; // relative regularization for terms the data does not excite
+    
+    private final double[][] normal = new double[EnergyModel.TERMS][EnergyModel.TERMS];
+    private final double[] moment = new double[EnergyModel.TERMS];
+    private final double[] x = new double[EnergyModel.TERMS];
+    private double weightedSquares;
+    private long samples;
+    private double seconds;
+    
+    private boolean hasPrevious;
+    private LocalDateTime previousTime;
+    private double previousAltitude;
+    private double previousSpeed;
+    private double previousBattery;
+    
+    /**
+     * Start the samples of another vehicle (or another period)
+     */
+    public void startSeries() {
+        hasPrevious = false;
+    }
+    
+    public void add(TelemetryPoint p) {
+        add(p.getTimestamp(), p.getAltitude(), p.getSpeed(), p.getBattery(), p.getArmed());
+    }
+    
+    public void add(LocalDateTime timestamp, Double altitude, Double speed, Double battery, Boolean armed) {
+        if (timestamp == null || altitude == null || speed == null || battery == null
+                || !Boolean.TRUE.equals(armed) || altitude < MIN_ALTITUDE || battery <= 0) {
+            hasPrevious = false;
+            return;
+        }
+        if (hasPrevious) {
+            double dt = Duration.between(previousTime, timestamp).toNanos() / 1e9;
+            if (dt <= 0) {
+                return; // same instant, keep the earlier sample
+            }
+            double drop = previousBattery - battery;
+            // A rise is a battery swap or a recalibration, not flight
+            if (dt <= MAX_GAP && drop >= 0) {
+                accumulate(dt, (previousSpeed + speed) / 2, (altitude - previousAltitude) / dt,
+                    (previousBattery + battery) / 2, drop / dt);
+            }
+        }
+        hasPrevious = true;
+        previousTime = timestamp;
+        previousAltitude = altitude;
+        previousSpeed = speed;
+        previousBattery = battery;
+    }
+    
+    private void accumulate(double weight, double speed, double climbRate, double battery, double drain) {
+        x[EnergyModel.HOVER] = 1;
+        x[EnergyModel.LINEAR_SPEED] = speed;
+        x[EnergyModel.QUADRATIC_SPEED] = speed * speed;
+        x[EnergyModel.CLIMB] = Math.max(0, climbRate);
+        x[EnergyModel.DESCENT] = Math.max(0, -climbRate);
+        x[EnergyModel.DISCHARGE] = 1 - battery / 100;
+        for (int i = 0; i < EnergyModel.TERMS; i++) {
+            double wx = weight * x[i];
+            for (int j = i; j < EnergyModel.TERMS; j++) {
+                normal[i][j] += wx * x[j];
+            }
+            moment[i] += wx * drain;
+        }
+        weightedSquares += weight * drain * drain;
+        samples++;
+        seconds += weight;
+    }
+    
+    public long getSamples() {
+        return samples;
+    }
+    
+    /**
+     * Solve for the coefficients; null with fewer than minSamples pairs, or when the fit is
+     * degenerate or has no positive hover drain
+     */
+    public EnergyModel fit(String model, long minSamples) {
+        if (samples < minSamples || samples == 0) {
+            return null;
+        }
+        int n = EnergyModel.TERMS;
+        double[][] a = new double[n][n + 1];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                a[i][j] = i <= j ? normal[i][j] : normal[j][i];
+            }
+            a[i][i] += RIDGE * normal[i][i] + 1e-12 * seconds;
+            a[i][n] = moment[i];
+        }
+        double[] beta = solve(a);
+        if (beta == null || !(beta[EnergyModel.HOVER] > 0)) {
+            return null;
+        }
+        
+        // Weighted residual sum of squares from the accumulated moments
+        double residual = weightedSquares;
+        for (int i = 0; i < n; i++) {
+            residual -= 2 * beta[i] * moment[i];
+            for (int j = 0; j < n; j++) {
+                residual += beta[i] * beta[j] * (i <= j ? normal[i][j] : normal[j][i]);
+            }
+        }
+        double rmse = Math.sqrt(Math.max(0, residual) / seconds);
+        return new EnergyModel(model, beta, true, samples, seconds, rmse, LocalDateTime.now());
+    }
+    
+    /**
+     * Gaussian elimination with partial pivoting on an augmented n x (n+1) matrix
+     */
+    private static double[] solve(double[][] a) {
+        int n = a.length;
+        for (int col = 0; col < n; col++) {
+            int pivot = col;
+            for (int row = col + 1; row < n; row++) {
+                if (Math.abs(a[row][col]) > Math.abs(a[pivot][col])) {
+                    pivot = row;
+                }
+            }
+            if (Math.abs(a[pivot][col]) < 1e-300) {
+                return null;
+            }
+            double[] swap = a[col];
+            a[col] = a[pivot];
+            a[pivot] = swap;
+            for (int row = col + 1; row < n; row++) {
+                double factor = a[row][col] / a[col][col];
+                for (int k = col; k <= n; k++) {
+                    a[row][k] -= factor * a[col][k];
+                }
+            }
+        }
+        double[] result = new double[n];
+        for (int row = n - 1; row >= 0; row--) {
+            double sum = a[row][n];
+            for (int k = row + 1; k < n; k++) {
+                sum -= a[row][k] * result[k];
+            }
+            result[row] = sum / a[row][row];
+        }
+        for (double value : result) {
+            if (!Double.isFinite(value)) {
+                return null;
+            }
+        }
+        return result;
+    }
+}
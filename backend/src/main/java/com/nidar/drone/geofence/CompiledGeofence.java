@@ -0,0 +1,259 @@
+package com.nidar.drone.geofence;
+
+import com.nidar.drone.model.GeofenceZone;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * The enabled zones of one mission, compiled for per-sample validation.
+ *
+ * Zones keep their original order and a position is reported against the first zone it
+ * violates (altitude limits first, then containment), as the entity-based check did. Every
+ * zone's altitude limits and every inclusion zone must be checked for each position, but
+ * exclusion zones only matter where the position falls inside them, so they are indexed in a
+ * uniform grid over their combined bounding box: each cell lists the exclusion zones whose
+ * bounding box overlaps it, and a lookup only ray-casts those.
+ * Immutable and safe to share between threads.
+ */
+public final class CompiledGeofence {
+    
+    private static final int MAX_CELLS_PER_AXIS = 64;
+    private static final int[] NONE = new int[0];
+    
+    private final Long missionId;
+    private final CompiledZone[] zones;
+    private final int[] inclusionZones;
+    private final int[] exclusionZones;
+    
+    // Grid over the exclusion zones, indexed [row * columns + column]
+    private final int rows;
+    private final int columns;
+    private final double south;
+    private final double west;
+    private final double cellHeight;
+    private final double cellWidth;
+    private final int[][] cells;
+    
+    public CompiledGeofence(Long missionId, List<GeofenceZone> zones) {
+        this.missionId = missionId;
+        this.zones = zones.stream().map(CompiledZone::new).toArray(CompiledZone[]::new);
+        
+        List<Integer> inclusion = new ArrayList<>();
+        List<Integer> exclusion = new ArrayList<>();
+        double minLat = Double.POSITIVE_INFINITY;
+        double maxLat = Double.NEGATIVE_INFINITY;
+        double minLon = Double.POSITIVE_INFINITY;
+        double maxLon = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < this.zones.length; i++) {
+            CompiledZone zone = this.zones[i];
+            if (zone.isInclusion()) {
+                inclusion.add(i);
+            } else if (zone.isExclusion() && zone.isPolygon()) {
+                exclusion.add(i);
+                minLat = Math.min(minLat, zone.getMinLatitude());
+                maxLat = Math.max(maxLat, zone.getMaxLatitude());
+                minLon = Math.min(minLon, zone.getMinLongitude());
+                maxLon = Math.max(maxLon, zone.getMaxLongitude());
+            }
+        }
+        this.inclusionZones = inclusion.stream().mapToInt(Integer::intValue).toArray();
+        this.exclusionZones = exclusion.stream().mapToInt(Integer::intValue).toArray();
+        
+        if (exclusion.isEmpty()) {
+            rows = 0;
+            columns = 0;
+            south = 0;
+            west = 0;
+            cellHeight = 1;
+            cellWidth = 1;
+            cells = new int[0][];
+            return;
+        }
+        
+        // Roughly a few cells per zone along each axis, so most cells hold zero or one zone
+        int perAxis = Math.min(MAX_CELLS_PER_AXIS, Math.max(1, (int) Math.ceil(Math.sqrt(exclusion.size()) * 4)));
+        rows = maxLat > minLat ? perAxis : 1;
+        columns = maxLon > minLon ? perAxis : 1;
+        south = minLat;
+        west = minLon;
+        cellHeight = maxLat > minLat ? (maxLat - minLat) / rows : 1;
+        cellWidth = maxLon > minLon ? (maxLon - minLon) / columns : 1;
+        
+        List<List<Integer>> buckets = new ArrayList<>(rows * columns);
+        for (int c = 0; c < rows * columns; c++) {
+            buckets.add(null);
+        }
+        for (int index : exclusion) {
+            CompiledZone zone = this.zones[index];
+            int r0 = row(zone.getMinLatitude());
+            int r1 = row(zone.getMaxLatitude());
+            int c0 = column(zone.getMinLongitude());
+            int c1 = column(zone.getMaxLongitude());
+            for (int r = r0; r <= r1; r++) {
+                for (int c = c0; c <= c1; c++) {
+                    int cell = r * columns + c;
+                    if (buckets.get(cell) == null) {
+                        buckets.set(cell, new ArrayList<>(2));
+                    }
+                    buckets.get(cell).add(index); // ascending, zones are visited in order
+                }
+            }
+        }
+        cells = new int[rows * columns][];
+        for (int c = 0; c < cells.length; c++) {
+            List<Integer> bucket = buckets.get(c);
+            cells[c] = bucket != null ? bucket.stream().mapToInt(Integer::intValue).toArray() : NONE;
+        }
+    }
+    
+    /**
+     * The first violation of a position in zone order, or null if it is valid.
+     * A NaN altitude skips the altitude limits.
+     */
+    public GeofenceViolation check(double latitude, double longitude, double altitude) {
+        int first = zones.length;
+        GeofenceViolation.Reason reason = null;
+        
+        if (!Double.isNaN(altitude)) {
+            for (int i = 0; i < zones.length; i++) {
+                if (zones[i].isBelowMinimum(altitude)) {
+                    first = i;
+                    reason = GeofenceViolation.Reason.BELOW_MIN_ALTITUDE;
+                    break;
+                }
+                if (zones[i].isAboveMaximum(altitude)) {
+                    first = i;
+                    reason = GeofenceViolation.Reason.ABOVE_MAX_ALTITUDE;
+                    break;
+                }
+            }
+        }
+        
+        for (int i : inclusionZones) {
+            if (i >= first) {
+                break;
+            }
+            if (!zones[i].contains(latitude, longitude)) {
+                first = i;
+                reason = GeofenceViolation.Reason.OUTSIDE_INCLUSION;
+                break;
+            }
+        }
+        
+        for (int i : candidates(latitude, longitude)) {
+            if (i >= first) {
+                break;
+            }
+            if (zones[i].contains(latitude, longitude)) {
+                first = i;
+                reason = GeofenceViolation.Reason.INSIDE_EXCLUSION;
+                break;
+            }
+        }
+        
+        return reason != null ? new GeofenceViolation(zones[first], reason) : null;
+    }
+    
+    /**
+     * The first zone, in zone order, that the straight leg between two valid positions breaks
+     * although neither end does: it passes through an exclusion zone both ends are outside of,
+     * or bulges out of a (non-convex) inclusion zone both ends are inside. Null if the leg is
+     * clear. Altitude varies linearly along a leg, so its limits are covered by checking the ends.
+     */
+    public GeofenceViolation checkLeg(double lat1, double lon1, double lat2, double lon2) {
+        int first = zones.length;
+        GeofenceViolation.Reason reason = null;
+        
+        for (int i : inclusionZones) {
+            CompiledZone zone = zones[i];
+            if (zone.crossesBoundary(lat1, lon1, lat2, lon2)
+                    && zone.contains(lat1, lon1) && zone.contains(lat2, lon2)) {
+                first = i;
+                reason = GeofenceViolation.Reason.LEAVES_INCLUSION;
+                break;
+            }
+        }
+        
+        BitSet candidates = candidates(Math.min(lat1, lat2), Math.max(lat1, lat2),
+            Math.min(lon1, lon2), Math.max(lon1, lon2));
+        for (int i = candidates.nextSetBit(0); i >= 0 && i < first; i = candidates.nextSetBit(i + 1)) {
+            CompiledZone zone = zones[i];
+            if (zone.crossesBoundary(lat1, lon1, lat2, lon2)
+                    && !zone.contains(lat1, lon1) && !zone.contains(lat2, lon2)) {
+                first = i;
+                reason = GeofenceViolation.Reason.CROSSES_EXCLUSION;
+                break;
+            }
+        }
+        
+        return reason != null ? new GeofenceViolation(zones[first], reason) : null;
+    }
+    
+    /**
+     * Exclusion zones whose bounding box may overlap the given box. Long legs covering more
+     * cells than there are exclusion zones fall back to a bounding box test on each zone.
+     */
+    BitSet candidates(double south, double north, double west, double east) {
+        BitSet found = new BitSet(zones.length);
+        if (cells.length == 0) {
+            return found;
+        }
+        int r0 = row(south);
+        int r1 = row(north);
+        int c0 = column(west);
+        int c1 = column(east);
+        if ((long) (r1 - r0 + 1) * (c1 - c0 + 1) > exclusionZones.length) {
+            for (int i : exclusionZones) {
+                if (zones[i].boundsOverlap(south, north, west, east)) {
+                    found.set(i);
+                }
+            }
+            return found;
+        }
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                for (int i : cells[r * columns + c]) {
+                    found.set(i);
+                }
+            }
+        }
+        return found;
+    }
+    
+    /**
+     * Exclusion zones whose bounding box may contain the position, in zone order
+     */
+    int[] candidates(double latitude, double longitude) {
+        if (cells.length == 0) {
+            return NONE;
+        }
+        double r = (latitude - south) / cellHeight;
+        double c = (longitude - west) / cellWidth;
+        if (r < 0 || c < 0 || r > rows || c > columns) {
+            return NONE;
+        }
+        return cells[Math.min((int) r, rows - 1) * columns + Math.min((int) c, columns - 1)];
+    }
+    
+    public Long getMissionId() {
+        return missionId;
+    }
+    
+    public CompiledZone[] getZones() {
+        return zones;
+    }
+    
+    public int size() {
+        return zones.length;
+    }
+    
+    private int row(double latitude) {
+        return Math.max(0, Math.min(rows - 1, (int) ((latitude - south) / cellHeight)));
+    }
+    
+    private int column(double longitude) {
+        return Math.max(0, Math.min(columns - 1, (int) ((longitude - west) / cellWidth)));
+    }
+}
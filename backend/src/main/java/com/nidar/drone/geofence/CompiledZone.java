@@ -0,0 +1,199 @@
+package com.nidar.drone.geofence;
+
+import com.nidar.drone.model.GeofencePoint;
+import com.nidar.drone.model.GeofenceZone;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A {@link GeofenceZone} prepared for fast containment tests: the polygon is held as primitive
+ * latitude/longitude arrays in sequence order with a precomputed bounding box, so a test on a
+ * point outside the box costs four comparisons and no entity is touched.
+ * Immutable and safe to share between threads.
+ */
+public final class CompiledZone {
+    
+    private final Long id;
+    private final String name;
+    private final boolean inclusion;
+    private final boolean exclusion;
+    private final String violationAction;
+    private final double minAltitude;
+    private final double maxAltitude;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final double minLatitude;
+    private final double maxLatitude;
+    private final double minLongitude;
+    private final double maxLongitude;
+    
+    public CompiledZone(GeofenceZone zone) {
+        this.id = zone.getId();
+        this.name = zone.getName();
+        this.inclusion = "INCLUSION".equals(zone.getZoneType());
+        this.exclusion = "EXCLUSION".equals(zone.getZoneType());
+        this.violationAction = zone.getViolationAction();
+        this.minAltitude = zone.getMinAltitude() != null ? zone.getMinAltitude() : Double.NEGATIVE_INFINITY;
+        this.maxAltitude = zone.getMaxAltitude() != null ? zone.getMaxAltitude() : Double.POSITIVE_INFINITY;
+        
+        List<GeofencePoint> points = zone.getPoints().stream()
+            .filter(p -> p.getLatitude() != null && p.getLongitude() != null)
+            .sorted(Comparator.comparing(GeofencePoint::getSequence, Comparator.nullsLast(Comparator.naturalOrder())))
+            .toList();
+        int n = points.size();
+        this.latitudes = new double[n];
+        this.longitudes = new double[n];
+        double south = Double.POSITIVE_INFINITY;
+        double north = Double.NEGATIVE_INFINITY;
+        double west = Double.POSITIVE_INFINITY;
+        double east = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            latitudes[i] = points.get(i).getLatitude();
+            longitudes[i] = points.get(i).getLongitude();
+            south = Math.min(south, latitudes[i]);
+            north = Math.max(north, latitudes[i]);
+            west = Math.min(west, longitudes[i]);
+            east = Math.max(east, longitudes[i]);
+        }
+        this.minLatitude = south;
+        this.maxLatitude = north;
+        this.minLongitude = west;
+        this.maxLongitude = east;
+    }
+    
+    /**
+     * Point-in-polygon by ray casting; zones with fewer than three points contain nothing
+     */
+    public boolean contains(double latitude, double longitude) {
+        if (!isPolygon() || !boundsContain(latitude, longitude)) {
+            return false;
+        }
+        boolean inside = false;
+        int n = latitudes.length;
+        for (int i = 0, j = n - 1; i < n; j = i++) {
+            if ((longitudes[i] > longitude) != (longitudes[j] > longitude) &&
+                latitude < (latitudes[j] - latitudes[i]) * (longitude - longitudes[i]) /
+                    (longitudes[j] - longitudes[i]) + latitudes[i]) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+    
+    /**
+     * Whether the segment between two positions touches or crosses an edge of the polygon
+     */
+    public boolean crossesBoundary(double lat1, double lon1, double lat2, double lon2) {
+        if (!isPolygon() || !boundsOverlap(Math.min(lat1, lat2), Math.max(lat1, lat2),
+                Math.min(lon1, lon2), Math.max(lon1, lon2))) {
+            return false;
+        }
+        int n = latitudes.length;
+        for (int i = 0, j = n - 1; i < n; j = i++) {
+            if (segmentsIntersect(lat1, lon1, lat2, lon2, latitudes[j], longitudes[j], latitudes[i], longitudes[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    public boolean boundsOverlap(double south, double north, double west, double east) {
+        return south <= maxLatitude && north >= minLatitude && west <= maxLongitude && east >= minLongitude;
+    }
+    
+    public boolean boundsContain(double latitude, double longitude) {
+        return latitude >= minLatitude && latitude <= maxLatitude
+            && longitude >= minLongitude && longitude <= maxLongitude;
+    }
+    
+    public boolean isPolygon() {
+        return latitudes.length >= 3;
+    }
+    
+    public boolean isBelowMinimum(double altitude) {
+        return altitude < minAltitude;
+    }
+    
+    public boolean isAboveMaximum(double altitude) {
+        return altitude > maxAltitude;
+    }
+    
+    private static boolean segmentsIntersect(double ay, double ax, double by, double bx,
+                                             double cy, double cx, double dy, double dx) {
+        double d1 = orientation(cy, cx, dy, dx, ay, ax);
+        double d2 = orientation(cy, cx, dy, dx, by, bx);
+        double d3 = orientation(ay, ax, by, bx, cy, cx);
+        double d4 = orientation(ay, ax, by, bx, dy, dx);
+        if (((d1 > 0 && d2 < 0) || (d1 < 0 && d2 > 0)) && ((d3 > 0 && d4 < 0) || (d3 < 0 && d4 > 0))) {
+            return true;
+        }
+        return (d1 == 0 && onSegment(cy, cx, dy, dx, ay, ax))
+            || (d2 == 0 && onSegment(cy, cx, dy, dx, by, bx))
+            || (d3 == 0 && onSegment(ay, ax, by, bx, cy, cx))
+            || (d4 == 0 && onSegment(ay, ax, by, bx, dy, dx));
+    }
+    
+    private static double orientation(double ay, double ax, double by, double bx, double py, double px) {
+        return (bx - ax) * (py - ay) - (by - ay) * (px - ax);
+    }
+    
+    private static boolean onSegment(double ay, double ax, double by, double bx, double py, double px) {
+        return py >= Math.min(ay, by) && py <= Math.max(ay, by) && px >= Math.min(ax, bx) && px <= Math.max(ax, bx);
+    }
+    
+    public Long getId() {
+        return id;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public boolean isInclusion() {
+        return inclusion;
+    }
+    
+    public boolean isExclusion() {
+        return exclusion;
+    }
+    
+    public String getViolationAction() {
+        return violationAction;
+    }
+    
+    public double getMinAltitude() {
+        return minAltitude;
+    }
+    
+    public double getMaxAltitude() {
+        return maxAltitude;
+    }
+    
+    /**
+     * Polygon vertices in sequence order; callers must not modify the arrays
+     */
+    public double[] getLatitudes() {
+        return latitudes;
+    }
+    
+    public double[] getLongitudes() {
+        return longitudes;
+    }
+    
+    public double getMinLatitude() {
+        return minLatitude;
+    }
+    
+    public double getMaxLatitude() {
+        return maxLatitude;
+    }
+    
+    public double getMinLongitude() {
+        return minLongitude;
+    }
+    
+    public double getMaxLongitude() {
+        return maxLongitude;
+    }
+}
@@ -0,0 +1,35 @@
+package com.nidar.drone.geofence;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * The first rule a position (or a leg between two positions) breaks, in zone order
+ */
+@Getter
+@RequiredArgsConstructor
+public class GeofenceViolation {
+    
+    public enum Reason {
+        BELOW_MIN_ALTITUDE, ABOVE_MAX_ALTITUDE, INSIDE_EXCLUSION, OUTSIDE_INCLUSION,
+        CROSSES_EXCLUSION, LEAVES_INCLUSION
+    }
+    
+    private final CompiledZone zone;
+    private final Reason reason;
+    
+    public String getMessage() {
+        return switch (reason) {
+            case BELOW_MIN_ALTITUDE -> "Below minimum altitude for zone: " + zone.getName();
+            case ABOVE_MAX_ALTITUDE -> "Above maximum altitude for zone: " + zone.getName();
+            case INSIDE_EXCLUSION -> "Inside exclusion zone: " + zone.getName();
+            case OUTSIDE_INCLUSION -> "Outside inclusion zone: " + zone.getName();
+            case CROSSES_EXCLUSION -> "Crosses exclusion zone: " + zone.getName();
+            case LEAVES_INCLUSION -> "Leaves inclusion zone: " + zone.getName();
+        };
+    }
+    
+    public String getViolationAction() {
+        return zone.getViolationAction();
+    }
+}
@@ -0,0 +1,63 @@
+package com.nidar.drone.geofence;
+
+import java.util.Arrays;
+
+/**
+ * Decoder for the encoded polyline format (as used by Google Maps and most planning tools):
+ * zig-zag encoded coordinate deltas in 5-bit chunks offset by 63, latitude before longitude.
+ */
+public final class Polyline {
+    
+    private Polyline() {
+    }
+    
+    /**
+     * Decode into {latitudes, longitudes}; precision is the number of decimal places
+     * (5 for the standard format, 6 for polyline6)
+     */
+    public static double[][] decode(String encoded, int precision) {
+        if (precision < 1 || precision > 7) {
+            throw new RuntimeException("Polyline precision must be between 1 and 7");
+        }
+        double factor = Math.pow(10, precision);
+        double[] latitudes = new double[encoded.length() / 2 + 1];
+        double[] longitudes = new double[latitudes.length];
+        int count = 0;
+        long latitude = 0;
+        long longitude = 0;
+        int index = 0;
+        while (index < encoded.length()) {
+            long latitudeDelta = 0;
+            for (int axis = 0; axis < 2; axis++) {
+                long result = 0;
+                int shift = 0;
+                int chunk;
+                do {
+                    if (index >= encoded.length()) {
+                        throw new RuntimeException("Truncated polyline at character " + index);
+                    }
+                    chunk = encoded.charAt(index++) - 63;
+                    if (chunk < 0 || chunk > 63 || shift > 60) {
+                        throw new RuntimeException("Invalid polyline character at " + (index - 1));
+                    }
+                    result |= (long) (chunk & 0x1f) << shift;
+                    shift += 5;
+                } while (chunk >= 0x20);
+                long delta = (result & 1) != 0 ? ~(result >> 1) : result >> 1;
+                if (axis == 0) {
+                    latitudeDelta = delta;
+                } else {
+                    latitude += latitudeDelta;
+                    longitude += delta;
+                }
+            }
+            latitudes[count] = latitude / factor;
+            longitudes[count] = longitude / factor;
+            count++;
+        }
+        return new double[][] {
+            Arrays.copyOf(latitudes, count),
+            Arrays.copyOf(longitudes, count)
+        };
+    }
+}
@@ -0,0 +1,51 @@
+package com.nidar.drone.mavlink;
+
+import java.nio.ByteBuffer;
+
+/**
+ * CRC-16/MCRF4XX (the X.25 variant used by MAVLink) with a 256-entry lookup table.
+ *
+ * The checksum covers every frame byte after the start marker (header + payload) followed by
+ * the message's CRC_EXTRA seed byte from {@link MAVLinkMessages#crcExtra(int)}. It is computed
+ * with absolute reads over the buffer region, so encoding and validation never copy the frame.
+ */
+public final class MAVLinkCrc {
+    
+    public static final int INITIAL = 0xFFFF;
+    
+    // Reflected CCITT polynomial 0x1021
+    private static final int POLYNOMIAL = 0x8408;
+    
+    private static final char[] TABLE = new char[256];
+    
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLYNOMIAL : crc >>> 1;
+            }
+            TABLE[i] = (char) crc;
+        }
+    }
+    
+    private MAVLinkCrc() {
+    }
+    
+    public static int accumulate(int crc, int b) {
+        return (crc >>> 8) ^ TABLE[(crc ^ b) & 0xFF];
+    }
+    
+    public static int accumulate(int crc, ByteBuffer buffer, int offset, int length) {
+        for (int i = offset, end = offset + length; i < end; i++) {
+            crc = (crc >>> 8) ^ TABLE[(crc ^ buffer.get(i)) & 0xFF];
+        }
+        return crc;
+    }
+    
+    /**
+     * Checksum of {@code length} bytes starting at {@code offset}, seeded with CRC_EXTRA
+     */
+    public static int checksum(ByteBuffer buffer, int offset, int length, int crcExtra) {
+        return accumulate(accumulate(INITIAL, buffer, offset, length), crcExtra);
+    }
+}
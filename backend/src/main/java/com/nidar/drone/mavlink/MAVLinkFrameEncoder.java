@@ -0,0 +1,67 @@
+package com.nidar.drone.mavlink;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Allocation-free MAVLink 2 frame encoder.
+ *
+ * Each thread encodes into its own direct buffer, so frames are built without locking and
+ * handed to {@link java.nio.channels.DatagramChannel#send} without an intermediate array.
+ * Usage is {@link #begin()} to obtain the buffer positioned at the payload, write the payload
+ * fields in wire order, then {@link #finish} to fill in the header and checksum.
+ */
+public final class MAVLinkFrameEncoder {
+    
+    /** Our own MAVLink identity: the conventional ground-station system id / MAV_COMP_ID_MISSIONPLANNER */
+    public static final int SYSTEM_ID = 255;
+    public static final int COMPONENT_ID = 190;
+    
+    private static final ThreadLocal<ByteBuffer> BUFFERS = ThreadLocal.withInitial(() ->
+        ByteBuffer.allocateDirect(MAVLinkFrameParser.MAX_FRAME_LENGTH).order(ByteOrder.LITTLE_ENDIAN));
+    
+    private MAVLinkFrameEncoder() {
+    }
+    
+    /**
+     * @return this thread's frame buffer, cleared and positioned at the start of the payload
+     */
+    public static ByteBuffer begin() {
+        ByteBuffer buffer = BUFFERS.get();
+        buffer.clear();
+        buffer.position(MAVLinkFrameParser.V2_HEADER_LENGTH);
+        return buffer;
+    }
+    
+    /**
+     * Complete the frame whose payload ends at the buffer's position: trims trailing zero
+     * bytes (MAVLink 2 payload truncation), writes the header and checksum, and flips the
+     * buffer so it is ready to send.
+     */
+    public static ByteBuffer finish(ByteBuffer buffer, int messageId, int sequence) {
+        int payloadStart = MAVLinkFrameParser.V2_HEADER_LENGTH;
+        int payloadEnd = buffer.position();
+        while (payloadEnd > payloadStart + 1 && buffer.get(payloadEnd - 1) == 0) {
+            payloadEnd--;
+        }
+        int payloadLength = payloadEnd - payloadStart;
+        
+        buffer.put(0, MAVLinkFrameParser.STX_V2);
+        buffer.put(1, (byte) payloadLength);
+        buffer.put(2, (byte) 0); // incompat flags
+        buffer.put(3, (byte) 0); // compat flags
+        buffer.put(4, (byte) sequence);
+        buffer.put(5, (byte) SYSTEM_ID);
+        buffer.put(6, (byte) COMPONENT_ID);
+        buffer.put(7, (byte) messageId);
+        buffer.put(8, (byte) (messageId >> 8));
+        buffer.put(9, (byte) (messageId >> 16));
+        
+        int crc = MAVLinkCrc.checksum(buffer, 1, payloadEnd - 1, MAVLinkMessages.crcExtra(messageId));
+        buffer.putShort(payloadEnd, (short) crc);
+        
+        buffer.limit(payloadEnd + MAVLinkFrameParser.CHECKSUM_LENGTH);
+        buffer.position(0);
+        return buffer;
+    }
+}
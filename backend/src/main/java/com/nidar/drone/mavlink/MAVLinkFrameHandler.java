@@ -0,0 +1,16 @@
+package com.nidar.drone.mavlink;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Callback invoked by {@link MAVLinkFrameParser} for every complete frame.
+ *
+ * The payload is not copied: it is the region {@code [payloadOffset, payloadOffset + payloadLength)}
+ * of the receive buffer and is only valid for the duration of the call.
+ */
+@FunctionalInterface
+public interface MAVLinkFrameHandler {
+    
+    void onFrame(int systemId, int componentId, int messageId,
+                 ByteBuffer buffer, int payloadOffset, int payloadLength);
+}
@@ -0,0 +1,174 @@
+package com.nidar.drone.mavlink;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Zero-copy MAVLink frame parser.
+ *
+ * Scans a received datagram for MAVLink 2 (0xFD) and MAVLink 1 (0xFE) frames and hands
+ * each complete frame to a {@link MAVLinkFrameHandler} as an offset into the receive buffer.
+ * Nothing is allocated per packet: fields are decoded with absolute little-endian reads
+ * straight out of the (direct) buffer.
+ *
+ * Every frame's checksum is verified against {@link MAVLinkCrc} before dispatch. Frames with a
+ * bad checksum cause a resync on the next byte; frames for messages without a known CRC_EXTRA
+ * cannot be validated and are skipped.
+ *
+ * The field readers honor MAVLink 2 payload truncation, where trailing zero bytes are
+ * dropped on the wire and must be read back as zero.
+ */
+public final class MAVLinkFrameParser {
+    
+    public static final byte STX_V2 = (byte) 0xFD;
+    public static final byte STX_V1 = (byte) 0xFE;
+    
+    public static final int V2_HEADER_LENGTH = 10;
+    public static final int V1_HEADER_LENGTH = 6;
+    public static final int CHECKSUM_LENGTH = 2;
+    public static final int SIGNATURE_LENGTH = 13;
+    public static final int INCOMPAT_FLAG_SIGNED = 0x01;
+    
+    /** Largest possible MAVLink 2 frame (signed, 255 byte payload) */
+    public static final int MAX_FRAME_LENGTH = V2_HEADER_LENGTH + 255 + CHECKSUM_LENGTH + SIGNATURE_LENGTH;
+    
+    private MAVLinkFrameParser() {
+    }
+    
+    /**
+     * Parse every complete frame between the buffer's position and limit.
+     * The buffer must be in {@link java.nio.ByteOrder#LITTLE_ENDIAN} order.
+     *
+     * @return number of frames handed to the handler
+     */
+    public static int parse(ByteBuffer buffer, MAVLinkFrameHandler handler) {
+        int pos = buffer.position();
+        int limit = buffer.limit();
+        int frames = 0;
+        
+        while (pos < limit) {
+            byte stx = buffer.get(pos);
+            
+            if (stx == STX_V2) {
+                if (pos + V2_HEADER_LENGTH > limit) {
+                    break;
+                }
+                int payloadLength = buffer.get(pos + 1) & 0xFF;
+                int incompatFlags = buffer.get(pos + 2) & 0xFF;
+                int frameLength = V2_HEADER_LENGTH + payloadLength + CHECKSUM_LENGTH
+                    + ((incompatFlags & INCOMPAT_FLAG_SIGNED) != 0 ? SIGNATURE_LENGTH : 0);
+                if (pos + frameLength > limit) {
+                    break;
+                }
+                
+                int systemId = buffer.get(pos + 5) & 0xFF;
+                int componentId = buffer.get(pos + 6) & 0xFF;
+                int messageId = (buffer.get(pos + 7) & 0xFF)
+                    | (buffer.get(pos + 8) & 0xFF) << 8
+                    | (buffer.get(pos + 9) & 0xFF) << 16;
+                    
+                int crcExtra = MAVLinkMessages.crcExtra(messageId);
+                if (crcExtra < 0) {
+                    pos += frameLength;
+                    continue;
+                }
+                int checksumOffset = pos + V2_HEADER_LENGTH + payloadLength;
+                if (!checksumValid(buffer, pos + 1, checksumOffset, crcExtra)) {
+                    pos++;
+                    continue;
+                }
+                
+                handler.onFrame(systemId, componentId, messageId, buffer, pos + V2_HEADER_LENGTH, payloadLength);
+                frames++;
+                pos += frameLength;
+                
+            } else if (stx == STX_V1) {
+                if (pos + V1_HEADER_LENGTH > limit) {
+                    break;
+                }
+                int payloadLength = buffer.get(pos + 1) & 0xFF;
+                int frameLength = V1_HEADER_LENGTH + payloadLength + CHECKSUM_LENGTH;
+                if (pos + frameLength > limit) {
+                    break;
+                }
+                
+                int systemId = buffer.get(pos + 3) & 0xFF;
+                int componentId = buffer.get(pos + 4) & 0xFF;
+                int messageId = buffer.get(pos + 5) & 0xFF;
+                
+                int crcExtra = MAVLinkMessages.crcExtra(messageId);
+                if (crcExtra < 0) {
+                    pos += frameLength;
+                    continue;
+                }
+                int checksumOffset = pos + V1_HEADER_LENGTH + payloadLength;
+                if (!checksumValid(buffer, pos + 1, checksumOffset, crcExtra)) {
+                    pos++;
+                    continue;
+                }
+                
+                handler.onFrame(systemId, componentId, messageId, buffer, pos + V1_HEADER_LENGTH, payloadLength);
+                frames++;
+                pos += frameLength;
+                
+            } else {
+                // Not a start marker - resynchronize on the next byte
+                pos++;
+            }
+        }
+        
+        buffer.position(pos);
+        return frames;
+    }
+    
+    private static boolean checksumValid(ByteBuffer buffer, int from, int checksumOffset, int crcExtra) {
+        int expected = MAVLinkCrc.checksum(buffer, from, checksumOffset - from, crcExtra);
+        return (buffer.getShort(checksumOffset) & 0xFFFF) == expected;
+    }
+    
+    public static int uint8(ByteBuffer buffer, int payloadOffset, int payloadLength, int fieldOffset) {
+        return fieldOffset < payloadLength ? buffer.get(payloadOffset + fieldOffset) & 0xFF : 0;
+    }
+    
+    public static int int8(ByteBuffer buffer, int payloadOffset, int payloadLength, int fieldOffset) {
+        return fieldOffset < payloadLength ? buffer.get(payloadOffset + fieldOffset) : 0;
+    }
+    
+    public static int uint16(ByteBuffer buffer, int payloadOffset, int payloadLength, int fieldOffset) {
+        if (fieldOffset + 2 <= payloadLength) {
+            return buffer.getShort(payloadOffset + fieldOffset) & 0xFFFF;
+        }
+        return (int) readTruncated(buffer, payloadOffset, payloadLength, fieldOffset, 2);
+    }
+    
+    public static int int16(ByteBuffer buffer, int payloadOffset, int payloadLength, int fieldOffset) {
+        return (short) uint16(buffer, payloadOffset, payloadLength, fieldOffset);
+    }
+    
+    public static int int32(ByteBuffer buffer, int payloadOffset, int payloadLength, int fieldOffset) {
+        if (fieldOffset + 4 <= payloadLength) {
+            return buffer.getInt(payloadOffset + fieldOffset);
+        }
+        return (int) readTruncated(buffer, payloadOffset, payloadLength, fieldOffset, 4);
+    }
+    
+    public static long uint32(ByteBuffer buffer, int payloadOffset, int payloadLength, int fieldOffset) {
+        return int32(buffer, payloadOffset, payloadLength, fieldOffset) & 0xFFFFFFFFL;
+    }
+    
+    public static float float32(ByteBuffer buffer, int payloadOffset, int payloadLength, int fieldOffset) {
+        return Float.intBitsToFloat(int32(buffer, payloadOffset, payloadLength, fieldOffset));
+    }
+    
+    /**
+     * Little-endian read of a field that runs past the end of a truncated payload.
+     * Missing bytes are zero by definition.
+     */
+    private static long readTruncated(ByteBuffer buffer, int payloadOffset, int payloadLength,
+                                      int fieldOffset, int size) {
+        long value = 0;
+        for (int i = 0; i < size && fieldOffset + i < payloadLength; i++) {
+            value |= (long) (buffer.get(payloadOffset + fieldOffset + i) & 0xFF) << (8 * i);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,48 @@
+package com.nidar.drone.mavlink;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One MAVLink link: the channel we send on, where frames go, and the link's packet sequence.
+ *
+ * The sequence counter is atomic because uploads, parameter writes and commands may run
+ * concurrently on the same link. Safe for use from any thread.
+ */
+@Getter
+public class MAVLinkLink {
+    
+    private final DatagramChannel channel;
+    @Getter(AccessLevel.NONE)
+    private final AtomicInteger sequence = new AtomicInteger();
+    @Setter
+    private volatile InetSocketAddress target;
+    @Setter
+    private volatile int targetSystem;
+    @Setter
+    private volatile int targetComponent;
+    
+    public MAVLinkLink(DatagramChannel channel, InetSocketAddress target) {
+        this.channel = channel;
+        this.target = target;
+    }
+    
+    public int nextSequence() {
+        return sequence.getAndIncrement() & 0xFF;
+    }
+    
+    /**
+     * Finish the frame started with {@link MAVLinkFrameEncoder#begin()} and send it
+     */
+    public void send(int messageId, ByteBuffer buffer) throws IOException {
+        MAVLinkFrameEncoder.finish(buffer, messageId, nextSequence());
+        channel.send(buffer, target);
+    }
+}
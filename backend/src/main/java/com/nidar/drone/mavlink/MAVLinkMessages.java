@@ -0,0 +1,74 @@
+package com.nidar.drone.mavlink;
+
+import java.util.Arrays;
+
+/**
+ * MAVLink message ids used by the backend (common.xml / ardupilotmega.xml dialect)
+ * and their CRC_EXTRA seeds.
+ *
+ * CRC_EXTRA is derived from the message definition and must match the autopilot's
+ * generated headers, otherwise frames are silently dropped as corrupted.
+ */
+public final class MAVLinkMessages {
+    
+    public static final int HEARTBEAT = 0;
+    public static final int SYS_STATUS = 1;
+    public static final int PARAM_VALUE = 22;
+    public static final int PARAM_SET = 23;
+    public static final int GPS_RAW_INT = 24;
+    public static final int ATTITUDE = 30;
+    public static final int GLOBAL_POSITION_INT = 33;
+    public static final int MISSION_ITEM = 39;
+    public static final int MISSION_REQUEST = 40;
+    public static final int MISSION_CURRENT = 42;
+    public static final int MISSION_COUNT = 44;
+    public static final int MISSION_CLEAR_ALL = 45;
+    public static final int MISSION_ITEM_REACHED = 46;
+    public static final int MISSION_ACK = 47;
+    public static final int MISSION_REQUEST_INT = 51;
+    public static final int MISSION_ITEM_INT = 73;
+    public static final int VFR_HUD = 74;
+    public static final int COMMAND_LONG = 76;
+    public static final int COMMAND_ACK = 77;
+    public static final int FENCE_POINT = 160;
+    public static final int RALLY_POINT = 175;
+    public static final int STATUSTEXT = 253;
+    
+    private static final int[] CRC_EXTRA = new int[256];
+    
+    static {
+        Arrays.fill(CRC_EXTRA, -1);
+        CRC_EXTRA[HEARTBEAT] = 50;
+        CRC_EXTRA[SYS_STATUS] = 124;
+        CRC_EXTRA[PARAM_VALUE] = 220;
+        CRC_EXTRA[PARAM_SET] = 168;
+        CRC_EXTRA[GPS_RAW_INT] = 24;
+        CRC_EXTRA[ATTITUDE] = 39;
+        CRC_EXTRA[GLOBAL_POSITION_INT] = 104;
+        CRC_EXTRA[MISSION_ITEM] = 254;
+        CRC_EXTRA[MISSION_REQUEST] = 230;
+        CRC_EXTRA[MISSION_CURRENT] = 28;
+        CRC_EXTRA[MISSION_COUNT] = 221;
+        CRC_EXTRA[MISSION_CLEAR_ALL] = 232;
+        CRC_EXTRA[MISSION_ITEM_REACHED] = 11;
+        CRC_EXTRA[MISSION_ACK] = 153;
+        CRC_EXTRA[MISSION_REQUEST_INT] = 196;
+        CRC_EXTRA[MISSION_ITEM_INT] = 38;
+        CRC_EXTRA[VFR_HUD] = 20;
+        CRC_EXTRA[COMMAND_LONG] = 152;
+        CRC_EXTRA[COMMAND_ACK] = 143;
+        CRC_EXTRA[FENCE_POINT] = 78;
+        CRC_EXTRA[RALLY_POINT] = 138;
+        CRC_EXTRA[STATUSTEXT] = 83;
+    }
+    
+    private MAVLinkMessages() {
+    }
+    
+    /**
+     * @return the CRC_EXTRA seed for a message id, or -1 if the message is not known to us
+     */
+    public static int crcExtra(int messageId) {
+        return messageId >= 0 && messageId < CRC_EXTRA.length ? CRC_EXTRA[messageId] : -1;
+    }
+}
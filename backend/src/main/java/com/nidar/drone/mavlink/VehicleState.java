@@ -0,0 +1,216 @@
+package com.nidar.drone.mavlink;
+
+import com.nidar.drone.model.Telemetry;
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+
+import static com.nidar.drone.mavlink.MAVLinkFrameParser.*;
+
+/**
+ * Latest known state of one vehicle, decoded field by field from incoming MAVLink frames.
+ *
+ * All state is held in primitive fields and updated in place so decoding does not allocate.
+ * An instance is owned by the receive thread and must not be shared with other threads;
+ * use {@link #toTelemetry()} to take a snapshot.
+ */
+@Getter
+public class VehicleState {
+    
+    private static final int MAV_TYPE_FIXED_WING = 1;
+    private static final int MAV_AUTOPILOT_ARDUPILOTMEGA = 3;
+    private static final int MAV_AUTOPILOT_INVALID = 8;
+    private static final int MAV_MODE_FLAG_SAFETY_ARMED = 0x80;
+    
+    private static final int UNKNOWN_HEADING = 0xFFFF;
+    private static final int UNKNOWN_SATELLITES = 0xFF;
+    
+    // ArduCopter / ArduPlane custom_mode values (index = custom_mode)
+    private static final String[] COPTER_MODES = {
+        "STABILIZE", "ACRO", "ALT_HOLD", "AUTO", "GUIDED", "LOITER", "RTL", "CIRCLE", null, "LAND",
+        null, "DRIFT", null, "SPORT", "FLIP", "AUTOTUNE", "POSHOLD", "BRAKE", "THROW", "AVOID_ADSB",
+        "GUIDED_NOGPS", "SMART_RTL", "FLOWHOLD", "FOLLOW", "ZIGZAG", "SYSTEMID", "AUTOROTATE", "AUTO_RTL"
+    };
+    private static final String[] PLANE_MODES = {
+        "MANUAL", "CIRCLE", "STABILIZE", "TRAINING", "ACRO", "FBWA", "FBWB", "CRUISE", "AUTOTUNE", null,
+        "AUTO", "RTL", "LOITER", "TAKEOFF", "AVOID_ADSB", "GUIDED", null, "QSTABILIZE", "QHOVER", "QLOITER",
+        "QLAND", "QRTL", "QAUTOTUNE", "QACRO", "THERMAL"
+    };
+    
+    private final int systemId;
+    
+    // HEARTBEAT
+    private boolean heartbeatReceived;
+    private long customMode;
+    private int vehicleType;
+    private int autopilot;
+    private int baseMode;
+    private int systemStatus;
+    
+    // GLOBAL_POSITION_INT
+    private boolean positionReceived;
+    private double latitude;
+    private double longitude;
+    private double altitudeMsl;
+    private double relativeAltitude;
+    private double velocityNorth;
+    private double velocityEast;
+    private double velocityDown;
+    private int headingCentiDegrees = UNKNOWN_HEADING;
+    
+    // ATTITUDE
+    private float roll;
+    private float pitch;
+    private float yaw;
+    
+    // VFR_HUD
+    private boolean hudReceived;
+    private float airspeed;
+    private float groundspeed;
+    private float climbRate;
+    private int throttle;
+    
+    // SYS_STATUS
+    private double batteryVoltage;
+    private double batteryCurrent;
+    private int batteryRemaining = -1;
+    
+    // GPS_RAW_INT
+    private int satellites = UNKNOWN_SATELLITES;
+    private int gpsFixType;
+    
+    // MISSION_CURRENT / MISSION_ITEM_REACHED (-1 until reported)
+    private int currentWaypoint = -1;
+    private int lastReachedWaypoint = -1;
+    
+    public VehicleState(int systemId) {
+        this.systemId = systemId;
+    }
+    
+    /**
+     * Decode one frame into this state.
+     *
+     * @return true if the frame carried a new position fix (GLOBAL_POSITION_INT)
+     */
+    public boolean apply(int messageId, ByteBuffer buf, int payload, int length) {
+        switch (messageId) {
+            case MAVLinkMessages.HEARTBEAT -> {
+                int heartbeatAutopilot = uint8(buf, payload, length, 5);
+                if (heartbeatAutopilot == MAV_AUTOPILOT_INVALID) {
+                    // GCS, camera, gimbal etc. - not the flight controller
+                    return false;
+                }
+                customMode = uint32(buf, payload, length, 0);
+                vehicleType = uint8(buf, payload, length, 4);
+                autopilot = heartbeatAutopilot;
+                baseMode = uint8(buf, payload, length, 6);
+                systemStatus = uint8(buf, payload, length, 7);
+                heartbeatReceived = true;
+                return false;
+            }
+            case MAVLinkMessages.SYS_STATUS -> {
+                batteryVoltage = uint16(buf, payload, length, 14) / 1000.0;
+                batteryCurrent = int16(buf, payload, length, 16) / 100.0;
+                batteryRemaining = int8(buf, payload, length, 30);
+                return false;
+            }
+            case MAVLinkMessages.GPS_RAW_INT -> {
+                gpsFixType = uint8(buf, payload, length, 28);
+                satellites = uint8(buf, payload, length, 29);
+                return false;
+            }
+            case MAVLinkMessages.ATTITUDE -> {
+                roll = float32(buf, payload, length, 4);
+                pitch = float32(buf, payload, length, 8);
+                yaw = float32(buf, payload, length, 12);
+                return false;
+            }
+            case MAVLinkMessages.GLOBAL_POSITION_INT -> {
+                latitude = int32(buf, payload, length, 4) / 1e7;
+                longitude = int32(buf, payload, length, 8) / 1e7;
+                altitudeMsl = int32(buf, payload, length, 12) / 1000.0;
+                relativeAltitude = int32(buf, payload, length, 16) / 1000.0;
+                velocityNorth = int16(buf, payload, length, 20) / 100.0;
+                velocityEast = int16(buf, payload, length, 22) / 100.0;
+                velocityDown = int16(buf, payload, length, 24) / 100.0;
+                headingCentiDegrees = uint16(buf, payload, length, 26);
+                positionReceived = true;
+                return true;
+            }
+            case MAVLinkMessages.MISSION_CURRENT -> {
+                currentWaypoint = uint16(buf, payload, length, 0);
+                return false;
+            }
+            case MAVLinkMessages.MISSION_ITEM_REACHED -> {
+                lastReachedWaypoint = uint16(buf, payload, length, 0);
+                return false;
+            }
+            case MAVLinkMessages.VFR_HUD -> {
+                airspeed = float32(buf, payload, length, 0);
+                groundspeed = float32(buf, payload, length, 4);
+                climbRate = float32(buf, payload, length, 12);
+                throttle = uint16(buf, payload, length, 18);
+                hudReceived = true;
+                return false;
+            }
+            default -> {
+                return false;
+            }
+        }
+    }
+    
+    /**
+     * Forget mission progress reported before now, e.g. at the start of a new flight
+     */
+    public void resetMissionProgress() {
+        currentWaypoint = -1;
+        lastReachedWaypoint = -1;
+    }
+    
+    public boolean isArmed() {
+        return (baseMode & MAV_MODE_FLAG_SAFETY_ARMED) != 0;
+    }
+    
+    public String getFlightMode() {
+        if (!heartbeatReceived || autopilot != MAV_AUTOPILOT_ARDUPILOTMEGA) {
+            return "UNKNOWN";
+        }
+        String[] modes = vehicleType == MAV_TYPE_FIXED_WING ? PLANE_MODES : COPTER_MODES;
+        String mode = customMode < modes.length ? modes[(int) customMode] : null;
+        return mode != null ? mode : "UNKNOWN";
+    }
+    
+    public double getGroundSpeed() {
+        if (hudReceived) {
+            return groundspeed;
+        }
+        return Math.sqrt(velocityNorth * velocityNorth + velocityEast * velocityEast);
+    }
+    
+    public int getHeadingDegrees() {
+        if (headingCentiDegrees != UNKNOWN_HEADING) {
+            return headingCentiDegrees / 100;
+        }
+        int degrees = (int) Math.round(Math.toDegrees(yaw));
+        return degrees < 0 ? degrees + 360 : degrees;
+    }
+    
+    /**
+     * Snapshot the current state as a Telemetry record
+     */
+    public Telemetry toTelemetry() {
+        Telemetry telemetry = new Telemetry();
+        telemetry.setLatitude(latitude);
+        telemetry.setLongitude(longitude);
+        telemetry.setAltitude(relativeAltitude);
+        telemetry.setSpeed(getGroundSpeed());
+        telemetry.setBattery(batteryRemaining >= 0 ? (double) batteryRemaining : null);
+        telemetry.setHeading(getHeadingDegrees());
+        telemetry.setSatellites(satellites != UNKNOWN_SATELLITES ? satellites : null);
+        telemetry.setFlightMode(getFlightMode());
+        telemetry.setArmed(isArmed());
+        telemetry.setTimestamp(LocalDateTime.now());
+        return telemetry;
+    }
+}
@@ -26,6 +26,7 @@ public class Drone {
     // Connection details
     private String mavproxyHost;
     private Integer mavproxyPort;
+    private Integer systemId; // MAVLink SYSID_THISMAV, must be unique across the fleet
     
     // Latest position
     private Double lastLatitude;
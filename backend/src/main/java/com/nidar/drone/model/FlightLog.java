@@ -8,7 +8,12 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "flight_logs")
+@Table(name = "flight_logs", indexes = {
+    @Index(name = "idx_flight_logs_start", columnList = "start_time, id"),
+    @Index(name = "idx_flight_logs_status_start", columnList = "flight_status, start_time, id"),
+    @Index(name = "idx_flight_logs_drone_start", columnList = "drone_id, start_time, id"),
+    @Index(name = "idx_flight_logs_mission_start", columnList = "mission_id, start_time, id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -21,6 +26,10 @@ public class FlightLog {
     @JoinColumn(name = "mission_id")
     private Mission mission;
     
+    @ManyToOne
+    @JoinColumn(name = "drone_id")
+    private Drone drone;
+    
     private LocalDateTime startTime;
     private LocalDateTime endTime;
     private Integer durationSeconds;
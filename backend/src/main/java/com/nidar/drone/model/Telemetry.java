@@ -8,7 +8,10 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "telemetry")
+@Table(name = "telemetry", indexes = {
+    @Index(name = "idx_telemetry_mission_time", columnList = "mission_id, timestamp, id"),
+    @Index(name = "idx_telemetry_drone_time", columnList = "drone_id, timestamp, id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -38,6 +41,8 @@ public class Telemetry {
     
     @PrePersist
     protected void onCreate() {
-        timestamp = LocalDateTime.now();
+        if (timestamp == null) {
+            timestamp = LocalDateTime.now();
+        }
     }
 }
@@ -2,6 +2,7 @@ package com.nidar.drone.repository;
 
 import com.nidar.drone.model.Drone;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -11,4 +12,9 @@ public interface DroneRepository extends JpaRepository<Drone, Long> {
     List<Drone> findByConnected(Boolean connected);
     List<Drone> findByStatus(String status);
     Drone findBySerialNumber(String serialNumber);
+    List<Drone> findByModel(String model);
+    boolean existsByModel(String model);
+    
+    @Query("SELECT DISTINCT d.model FROM Drone d WHERE d.model IS NOT NULL AND d.model <> ''")
+    List<String> findDistinctModels();
 }
@@ -1,15 +1,28 @@
 package com.nidar.drone.repository;
 
+import com.nidar.drone.dto.FlightLogSummary;
+import com.nidar.drone.dto.FlightTotals;
 import com.nidar.drone.model.FlightLog;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface FlightLogRepository extends JpaRepository<FlightLog, Long> {
+    
+    // Flight logs as FlightLogSummary, without loading the mission's waypoints
+    String SELECT_SUMMARY = "SELECT new com.nidar.drone.dto.FlightLogSummary(f.id, m.id, m.name, d.id, d.name, " +
+        "f.startTime, f.endTime, f.durationSeconds, f.maxAltitude, f.maxSpeed, f.avgSpeed, f.totalDistance, " +
+        "f.maxDistanceFromHome, f.startBattery, f.endBattery, f.batteryUsed, " +
+        "f.waypointsPlanned, f.waypointsCompleted, f.flightStatus, f.notes) " +
+        "FROM FlightLog f LEFT JOIN f.mission m LEFT JOIN f.drone d ";
+    
     List<FlightLog> findByOrderByStartTimeDesc();
     List<FlightLog> findByFlightStatus(String status);
     List<FlightLog> findByStartTimeBetween(LocalDateTime start, LocalDateTime end);
@@ -22,4 +35,61 @@ public interface FlightLogRepository extends JpaRepository<FlightLog, Long> {
     
     @Query("SELECT COUNT(f) FROM FlightLog f WHERE f.flightStatus = 'COMPLETED'")
     Long getCompletedFlightsCount();
+    
+    @Query(SELECT_SUMMARY + "WHERE f.id = :id")
+    Optional<FlightLogSummary> findSummaryById(@Param("id") Long id);
+    
+    @Query("SELECT new com.nidar.drone.dto.FlightTotals(COUNT(f), SUM(f.totalDistance), SUM(f.durationSeconds)) " +
+           "FROM FlightLog f WHERE f.flightStatus = 'COMPLETED'")
+    FlightTotals getCompletedTotals();
+    
+    @Query("SELECT new com.nidar.drone.dto.FlightTotals(d.id, COUNT(f), SUM(f.totalDistance), SUM(f.durationSeconds)) " +
+           "FROM FlightLog f JOIN f.drone d WHERE f.flightStatus = 'COMPLETED' GROUP BY d.id")
+    List<FlightTotals> getCompletedTotalsByDrone();
+    
+    @Query("SELECT new com.nidar.drone.dto.FlightTotals(CAST(f.startTime AS LocalDate), COUNT(f), " +
+           "SUM(f.totalDistance), SUM(f.durationSeconds)) " +
+           "FROM FlightLog f WHERE f.flightStatus = 'COMPLETED' AND f.startTime IS NOT NULL " +
+           "GROUP BY CAST(f.startTime AS LocalDate)")
+    List<FlightTotals> getCompletedTotalsByDay();
+    
+    /**
+     * One keyset page of flight logs, newest first, after (afterStartTime, afterId);
+     * null filters match everything
+     */
+    @Query(SELECT_SUMMARY +
+           "WHERE f.startTime BETWEEN :from AND :to " +
+           "AND (:status IS NULL OR f.flightStatus = :status) " +
+           "AND (:droneId IS NULL OR d.id = :droneId) " +
+           "AND (:missionId IS NULL OR m.id = :missionId) " +
+           "AND (f.startTime < :afterStartTime OR (f.startTime = :afterStartTime AND f.id < :afterId)) " +
+           "ORDER BY f.startTime DESC, f.id DESC")
+    List<FlightLogSummary> findSummaryPage(@Param("from") LocalDateTime from,
+                                           @Param("to") LocalDateTime to,
+                                           @Param("status") String status,
+                                           @Param("droneId") Long droneId,
+                                           @Param("missionId") Long missionId,
+                                           @Param("afterStartTime") LocalDateTime afterStartTime,
+                                           @Param("afterId") Long afterId,
+                                           Pageable pageable);
+    
+    /**
+     * One keyset page of the flight logs without a start time, which sort after all others,
+     * newest id first after afterId
+     */
+    @Query(SELECT_SUMMARY +
+           "WHERE f.startTime IS NULL " +
+           "AND (:status IS NULL OR f.flightStatus = :status) " +
+           "AND (:droneId IS NULL OR d.id = :droneId) " +
+           "AND (:missionId IS NULL OR m.id = :missionId) " +
+           "AND f.id < :afterId " +
+           "ORDER BY f.id DESC")
+    List<FlightLogSummary> findUndatedSummaryPage(@Param("status") String status,
+                                                  @Param("droneId") Long droneId,
+                                                  @Param("missionId") Long missionId,
+                                                  @Param("afterId") Long afterId,
+                                                  Pageable pageable);
+    
+    @Query(SELECT_SUMMARY + "ORDER BY f.startTime DESC, f.id DESC")
+    List<FlightLogSummary> findLatestSummaries(Pageable pageable);
 }
@@ -3,6 +3,8 @@ package com.nidar.drone.repository;
 import com.nidar.drone.model.GeofenceZone;
 import com.nidar.drone.model.Mission;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -12,4 +14,11 @@ public interface GeofenceZoneRepository extends JpaRepository<GeofenceZone, Long
     List<GeofenceZone> findByMission(Mission mission);
     List<GeofenceZone> findByMissionAndEnabled(Mission mission, Boolean enabled);
     List<GeofenceZone> findByZoneType(String zoneType);
+    
+    /**
+     * Enabled zones of a mission with their points, in id order, in one query
+     */
+    @Query("SELECT DISTINCT z FROM GeofenceZone z LEFT JOIN FETCH z.points " +
+           "WHERE z.mission.id = :missionId AND z.enabled = true ORDER BY z.id")
+    List<GeofenceZone> findEnabledWithPoints(@Param("missionId") Long missionId);
 }
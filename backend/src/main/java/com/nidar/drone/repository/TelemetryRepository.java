@@ -1,12 +1,99 @@
 package com.nidar.drone.repository;
 
+import com.nidar.drone.dto.TelemetryPoint;
 import com.nidar.drone.model.Telemetry;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 public interface TelemetryRepository extends JpaRepository<Telemetry, Long> {
     List<Telemetry> findTop100ByOrderByTimestampDesc();
+    
+    List<Telemetry> findByMission_IdAndTimestampBetweenOrderByTimestampAscIdAsc(
+        Long missionId, LocalDateTime from, LocalDateTime to);
+    
+    /**
+     * Keyset page of a mission's telemetry: rows after (afterTimestamp, afterId) up to {@code to},
+     * in (timestamp, id) order. Served by idx_telemetry_mission_time.
+     */
+    @Query("SELECT t FROM Telemetry t WHERE t.mission.id = :missionId AND t.timestamp <= :to " +
+           "AND (t.timestamp > :afterTimestamp OR (t.timestamp = :afterTimestamp AND t.id > :afterId)) " +
+           "ORDER BY t.timestamp ASC, t.id ASC")
+    List<Telemetry> findMissionPage(@Param("missionId") Long missionId,
+                                    @Param("afterTimestamp") LocalDateTime afterTimestamp,
+                                    @Param("afterId") Long afterId,
+                                    @Param("to") LocalDateTime to,
+                                    Pageable pageable);
+    
+    /**
+     * A mission's telemetry in [from, to] as a forward-only stream of projections, for export and
+     * replay without materializing the track. The fetch size of Integer.MIN_VALUE makes the MySQL
+     * driver stream rows instead of buffering the whole result. Must be consumed inside a
+     * transaction and closed.
+     */
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT new com.nidar.drone.dto.TelemetryPoint(t.id, t.timestamp, t.latitude, t.longitude, t.altitude, " +
+           "t.speed, t.battery, t.heading, t.satellites, t.flightMode, t.armed) " +
+           "FROM Telemetry t WHERE t.mission.id = :missionId AND t.timestamp BETWEEN :from AND :to " +
+           "ORDER BY t.timestamp ASC, t.id ASC")
+    Stream<TelemetryPoint> streamMissionPoints(@Param("missionId") Long missionId,
+                                               @Param("from") LocalDateTime from,
+                                               @Param("to") LocalDateTime to);
+    
+    /**
+     * A drone's telemetry in [from, to] as a forward-only stream of projections, as
+     * {@link #streamMissionPoints}. Served by idx_telemetry_drone_time.
+     */
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT new com.nidar.drone.dto.TelemetryPoint(t.id, t.timestamp, t.latitude, t.longitude, t.altitude, " +
+           "t.speed, t.battery, t.heading, t.satellites, t.flightMode, t.armed) " +
+           "FROM Telemetry t WHERE t.drone.id = :droneId AND t.timestamp BETWEEN :from AND :to " +
+           "ORDER BY t.timestamp ASC, t.id ASC")
+    Stream<TelemetryPoint> streamDronePoints(@Param("droneId") Long droneId,
+                                             @Param("from") LocalDateTime from,
+                                             @Param("to") LocalDateTime to);
+    
+    /**
+     * Keyset page of a mission's telemetry as projections, as {@link #findMissionPage}
+     */
+    @Query("SELECT new com.nidar.drone.dto.TelemetryPoint(t.id, t.timestamp, t.latitude, t.longitude, t.altitude, " +
+           "t.speed, t.battery, t.heading, t.satellites, t.flightMode, t.armed) " +
+           "FROM Telemetry t WHERE t.mission.id = :missionId " +
+           "AND (t.timestamp > :afterTimestamp OR (t.timestamp = :afterTimestamp AND t.id > :afterId)) " +
+           "ORDER BY t.timestamp ASC, t.id ASC")
+    List<TelemetryPoint> findMissionPointPage(@Param("missionId") Long missionId,
+                                              @Param("afterTimestamp") LocalDateTime afterTimestamp,
+                                              @Param("afterId") Long afterId,
+                                              Pageable pageable);
+    
+    @Query("SELECT MIN(t.timestamp) FROM Telemetry t WHERE t.mission.id = :missionId")
+    LocalDateTime findFirstTimestampByMission(@Param("missionId") Long missionId);
+    
+    /**
+     * Keyset page of a drone's telemetry, as {@link #findMissionPage}. Served by idx_telemetry_drone_time.
+     */
+    @Query("SELECT t FROM Telemetry t WHERE t.drone.id = :droneId AND t.timestamp <= :to " +
+           "AND (t.timestamp > :afterTimestamp OR (t.timestamp = :afterTimestamp AND t.id > :afterId)) " +
+           "ORDER BY t.timestamp ASC, t.id ASC")
+    List<Telemetry> findDronePage(@Param("droneId") Long droneId,
+                                  @Param("afterTimestamp") LocalDateTime afterTimestamp,
+                                  @Param("afterId") Long afterId,
+                                  @Param("to") LocalDateTime to,
+                                  Pageable pageable);
 }
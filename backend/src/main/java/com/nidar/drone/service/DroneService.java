@@ -15,6 +15,7 @@ import java.util.List;
 public class DroneService {
     
     private final DroneRepository droneRepository;
+    private final MAVLinkLinkManager linkManager;
     
     public List<Drone> getAllDrones() {
         return droneRepository.findAll();
@@ -26,12 +27,16 @@ public class DroneService {
     
     public Drone createDrone(Drone drone) {
         log.info("Creating new drone: {}", drone.getName());
-        return droneRepository.save(drone);
+        checkSystemId(drone.getSystemId());
+        Drone saved = droneRepository.save(drone);
+        linkManager.register(saved);
+        return saved;
     }
     
     public Drone updateDrone(Long id, Drone droneDetails) {
         Drone drone = getDroneById(id);
         if (drone != null) {
+            checkSystemId(droneDetails.getSystemId());
             drone.setName(droneDetails.getName());
             drone.setSerialNumber(droneDetails.getSerialNumber());
             drone.setModel(droneDetails.getModel());
@@ -39,13 +44,17 @@ public class DroneService {
             drone.setConnected(droneDetails.getConnected());
             drone.setMavproxyHost(droneDetails.getMavproxyHost());
             drone.setMavproxyPort(droneDetails.getMavproxyPort());
-            return droneRepository.save(drone);
+            drone.setSystemId(droneDetails.getSystemId());
+            Drone saved = droneRepository.save(drone);
+            linkManager.register(saved);
+            return saved;
         }
         return null;
     }
     
     public void deleteDrone(Long id) {
         droneRepository.deleteById(id);
+        linkManager.unregister(id);
     }
     
     public List<Drone> getConnectedDrones() {
@@ -60,7 +69,9 @@ public class DroneService {
             drone.setLastAltitude(altitude);
             drone.setLastBattery(battery);
             drone.setLastSeenAt(LocalDateTime.now());
-            return droneRepository.save(drone);
+            Drone saved = droneRepository.save(drone);
+            linkManager.register(saved);
+            return saved;
         }
         return null;
     }
@@ -71,8 +82,16 @@ public class DroneService {
             drone.setStatus(status);
             drone.setConnected(connected);
             drone.setLastSeenAt(LocalDateTime.now());
-            return droneRepository.save(drone);
+            Drone saved = droneRepository.save(drone);
+            linkManager.register(saved);
+            return saved;
         }
         return null;
     }
+    
+    private void checkSystemId(Integer systemId) {
+        if (systemId != null && !MAVLinkLinkManager.isValidSystemId(systemId)) {
+            throw new RuntimeException("MAVLink system id must be between 1 and 255, got " + systemId);
+        }
+    }
 }
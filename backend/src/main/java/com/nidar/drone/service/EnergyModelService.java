@@ -0,0 +1,235 @@
+package com.nidar.drone.service;
+
+import com.nidar.drone.dto.TelemetryPoint;
+import com.nidar.drone.energy.EnergyModel;
+import com.nidar.drone.energy.EnergyModelFitter;
+import com.nidar.drone.model.Drone;
+import com.nidar.drone.repository.DroneRepository;
+import com.nidar.drone.repository.TelemetryRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Stream;
+
+/**
+ * Energy models per drone model (Drone.model), fitted from the fleet's recorded telemetry.
+ *
+ * A model is fitted by streaming the telemetry of every drone of that model over the last
+ * energy.model.fit-window-days through an {@link EnergyModelFitter}, so the table is never loaded
+ * into memory. Fits run in the background, one at a time and at most one per model: the first
+ * request for a model gets the default model and starts its fit, later requests get the cached
+ * result without touching the database. Only models of registered drones are fitted and kept.
+ * A fit that fails is retried after a back-off that doubles with each failure, up to
+ * energy.model.refit-interval-ms, at which all drone models are refitted to pick up new flights.
+ * Models with fewer than energy.model.min-samples usable sample pairs (or an unusable fit) get
+ * the default model, which is cached too.
+ */
+@Service
+@Slf4j
+public class EnergyModelService {
+    
+    private static final LocalDateTime LATEST = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+    private static final long INITIAL_BACKOFF_MS = 60_000;
+    
+    private final DroneRepository droneRepository;
+    private final TelemetryRepository telemetryRepository;
+    private final TransactionTemplate readOnlyTransaction;
+    private final ExecutorService fitExecutor = Executors.newSingleThreadExecutor(
+        new CustomizableThreadFactory("energy-model-fit-"));
+    private final Map<String, EnergyModel> models = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<EnergyModel>> fits = new ConcurrentHashMap<>();
+    private final Map<String, Backoff> backoffs = new ConcurrentHashMap<>();
+    
+    @Value("${energy.model.fit-window-days:90}")
+    private long fitWindowDays;
+    
+    @Value("${energy.model.min-samples:300}")
+    private long minSamples;
+    
+    @Value("${energy.model.refit-interval-ms:21600000}")
+    private long refitIntervalMs;
+    
+    public EnergyModelService(DroneRepository droneRepository,
+                              TelemetryRepository telemetryRepository,
+                              PlatformTransactionManager transactionManager) {
+        this.droneRepository = droneRepository;
+        this.telemetryRepository = telemetryRepository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+    
+    /**
+     * The energy model of a drone model; the default model when it is null or blank, or while
+     * its fit has not finished
+     */
+    public EnergyModel getModel(String model) {
+        if (model == null || model.isBlank()) {
+            return EnergyModel.DEFAULT;
+        }
+        EnergyModel cached = models.get(model);
+        if (cached != null) {
+            return cached;
+        }
+        if (!isBackingOff(model)) {
+            startFit(model);
+        }
+        return EnergyModel.defaults(model);
+    }
+    
+    /**
+     * The energy model of a registered drone; the default model when droneId is null
+     */
+    public EnergyModel getModelForDrone(Long droneId) {
+        if (droneId == null) {
+            return EnergyModel.DEFAULT;
+        }
+        Drone drone = droneRepository.findById(droneId)
+            .orElseThrow(() -> new RuntimeException("Drone not found"));
+        return getModel(drone.getModel());
+    }
+    
+    public List<EnergyModel> getModels() {
+        return List.copyOf(models.values());
+    }
+    
+    /**
+     * Fit a model again from the telemetry now recorded and replace the cached one; completes
+     * when the fit has finished (joining one already running)
+     */
+    public CompletableFuture<EnergyModel> refit(String model) {
+        if (model == null || model.isBlank()) {
+            throw new RuntimeException("Drone model is required");
+        }
+        if (!droneRepository.existsByModel(model)) {
+            throw new RuntimeException("No drones of model " + model);
+        }
+        return startFit(model);
+    }
+    
+    @Scheduled(fixedDelayString = "${energy.model.refit-interval-ms:21600000}",
+               initialDelayString = "${energy.model.refit-interval-ms:21600000}")
+    public void refitAll() {
+        List<String> registered = droneRepository.findDistinctModels();
+        models.keySet().retainAll(registered);
+        long now = System.currentTimeMillis();
+        backoffs.values().removeIf(backoff -> backoff.retryAt <= now);
+        registered.stream().filter(model -> !isBackingOff(model)).forEach(this::startFit);
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        fitExecutor.shutdownNow();
+    }
+    
+    /**
+     * Queue a fit of a model unless one is already queued or running
+     */
+    private CompletableFuture<EnergyModel> startFit(String model) {
+        CompletableFuture<EnergyModel> created = new CompletableFuture<>();
+        CompletableFuture<EnergyModel> running = fits.putIfAbsent(model, created);
+        if (running != null) {
+            return running;
+        }
+        try {
+            fitExecutor.execute(() -> runFit(model, created));
+        } catch (RejectedExecutionException e) {
+            fits.remove(model, created);
+            created.completeExceptionally(e);
+        }
+        return created;
+    }
+    
+    private void runFit(String model, CompletableFuture<EnergyModel> result) {
+        try {
+            EnergyModel fitted = fit(model);
+            if (fitted != null) {
+                models.put(model, fitted);
+                backoffs.remove(model);
+            } else {
+                models.remove(model);
+                backOff(model);
+                fitted = EnergyModel.defaults(model);
+            }
+            fits.remove(model, result);
+            result.complete(fitted);
+        } catch (RuntimeException e) {
+            Backoff backoff = backOff(model);
+            log.warn("Failed to fit energy model for {}, using the default for {} s: {}",
+                model, (backoff.retryAt - System.currentTimeMillis()) / 1000, e.getMessage());
+            fits.remove(model, result);
+            result.completeExceptionally(e);
+        }
+    }
+    
+    private boolean isBackingOff(String model) {
+        Backoff backoff = backoffs.get(model);
+        return backoff != null && backoff.retryAt > System.currentTimeMillis();
+    }
+    
+    private Backoff backOff(String model) {
+        return backoffs.compute(model, (key, previous) -> {
+            long delay = previous != null ? Math.min(previous.delay * 2, refitIntervalMs) : INITIAL_BACKOFF_MS;
+            return new Backoff(delay, System.currentTimeMillis() + delay);
+        });
+    }
+    
+    /**
+     * The fitted model, the default model when there is too little usable telemetry, or null
+     * when no registered drone has this model
+     */
+    private EnergyModel fit(String model) {
+        long started = System.currentTimeMillis();
+        LocalDateTime from = LocalDateTime.now().minusDays(fitWindowDays);
+        EnergyModelFitter fitter = new EnergyModelFitter();
+        List<Drone> drones = droneRepository.findByModel(model);
+        if (drones.isEmpty()) {
+            return null;
+        }
+        for (Drone drone : drones) {
+            fitter.startSeries();
+            readOnlyTransaction.executeWithoutResult(status -> {
+                try (Stream<TelemetryPoint> points = telemetryRepository.streamDronePoints(drone.getId(), from, LATEST)) {
+                    points.forEach(fitter::add);
+                }
+            });
+        }
+        
+        EnergyModel fitted = fitter.fit(model, minSamples);
+        if (fitted == null) {
+            log.info("Not enough usable telemetry to fit an energy model for {} ({} sample pairs from {} drones), using the default",
+                model, fitter.getSamples(), drones.size());
+            return EnergyModel.defaults(model);
+        }
+        log.info("Fitted energy model for {} from {} sample pairs in {} ms: hover {}%/s, rmse {}%/s",
+            model, fitted.getSamples(), System.currentTimeMillis() - started,
+            String.format("%.4f", fitted.getHoverDrain()), String.format("%.4f", fitted.getRmse()));
+        return fitted;
+    }
+    
+    /**
+     * Failed or pointless fits of a model are not retried before retryAt
+     */
+    private static final class Backoff {
+        private final long delay;
+        private final long retryAt;
+        
+        Backoff(long delay, long retryAt) {
+            this.delay = delay;
+            this.retryAt = retryAt;
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package com.nidar.drone.service;
+
+import com.nidar.drone.dto.FlightLogSummary;
+import com.nidar.drone.dto.FlightTotals;
+import com.nidar.drone.model.FlightLog;
+import com.nidar.drone.repository.FlightLogRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Materialized fleet statistics for /api/logs/statistics.
+ *
+ * Totals over completed flights (count, distance, flight time), per-drone and per-day buckets
+ * and the most recent flight are built from the flight_logs table once and then kept current
+ * by {@link FlightLogService}, which reports every insert, update and delete. Reading the
+ * statistics only loads the most recent flight by id, so it is returned as the full flight log
+ * (looking up which flight that is again after it was updated or deleted). The summary is
+ * rebuilt periodically, from GROUP BY aggregates rather than the rows, to pick up rows changed
+ * outside the application.
+ *
+ * No query runs under the lock: request threads report changes while holding a connection, so
+ * a rebuild that queried under the lock could wait for a connection they hold. A rebuild
+ * therefore queries first and installs its result only if no change was reported meanwhile,
+ * since the queries may or may not have seen it. A change reported with the generation read
+ * before it was written is only applied if no rebuild was installed in between; otherwise that
+ * rebuild may already have counted it, and the summary is rebuilt instead.
+ */
+@Service
+@Slf4j
+public class FleetStatisticsService {
+    
+    private static final String COMPLETED = "COMPLETED";
+    private static final int MAX_REBUILD_ATTEMPTS = 5;
+    
+    private final FlightLogRepository flightLogRepository;
+    
+    private Bucket totals = new Bucket();
+    private Map<Long, Bucket> byDrone = new HashMap<>();
+    private TreeMap<LocalDate, Bucket> byDay = new TreeMap<>();
+    private Long lastFlightId;
+    private LocalDateTime lastFlightStart;
+    private boolean lastFlightStale; // the most recent flight must be looked up again
+    private long lastFlightVersion;
+    private boolean loaded;
+    private long generation; // rebuilds installed
+    private long changes; // changes reported
+    
+    public FleetStatisticsService(FlightLogRepository flightLogRepository) {
+        this.flightLogRepository = flightLogRepository;
+    }
+    
+    /**
+     * Fleet totals, per-drone totals and the given number of most recent days
+     */
+    public Map<String, Object> getStatistics(int days) {
+        if (!isLoaded()) {
+            rebuild();
+        }
+        Long latestId = resolveLastFlight();
+        FlightLog lastFlight = latestId != null ? flightLogRepository.findById(latestId).orElse(null) : null;
+        
+        synchronized (this) {
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("totalFlights", totals.flights);
+            stats.put("totalDistance", totals.distance);
+            stats.put("totalFlightTime", totals.flightTime);
+            
+            Map<Long, Object> drones = new HashMap<>();
+            byDrone.forEach((droneId, bucket) -> drones.put(droneId, bucket.toMap()));
+            stats.put("byDrone", drones);
+            
+            Map<LocalDate, Object> recentDays = new LinkedHashMap<>();
+            byDay.tailMap(LocalDate.now().minusDays(Math.max(0, days - 1)), true)
+                .forEach((day, bucket) -> recentDays.put(day, bucket.toMap()));
+            stats.put("byDay", recentDays);
+            
+            if (lastFlight != null) {
+                stats.put("lastFlight", lastFlight);
+            }
+            return stats;
+        }
+    }
+    
+    /**
+     * Rebuild generation; read it before writing a flight log and pass it with the change
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+    
+    /**
+     * Apply a saved flight log; previous is the row as it was before an update, or null for an insert
+     */
+    public void onSaved(long writtenAt, FlightLogSummary previous, FlightLog saved) {
+        if (!applySaved(writtenAt, previous, saved)) {
+            rebuild();
+        }
+    }
+    
+    public void onDeleted(long writtenAt, FlightLogSummary deleted) {
+        if (!applyDeleted(writtenAt, deleted)) {
+            rebuild();
+        }
+    }
+    
+    /**
+     * Rebuild the summary from the database
+     */
+    @Scheduled(fixedRateString = "${fleet.statistics.rebuild-interval-ms:3600000}",
+               initialDelayString = "${fleet.statistics.rebuild-interval-ms:3600000}")
+    public void rebuild() {
+        for (int attempt = 1; ; attempt++) {
+            long changesBefore;
+            synchronized (this) {
+                changesBefore = changes;
+            }
+            
+            Bucket newTotals = new Bucket(flightLogRepository.getCompletedTotals());
+            Map<Long, Bucket> newByDrone = new HashMap<>();
+            for (FlightTotals drone : flightLogRepository.getCompletedTotalsByDrone()) {
+                newByDrone.put((Long) drone.getKey(), new Bucket(drone));
+            }
+            TreeMap<LocalDate, Bucket> newByDay = new TreeMap<>();
+            for (FlightTotals day : flightLogRepository.getCompletedTotalsByDay()) {
+                newByDay.put((LocalDate) day.getKey(), new Bucket(day));
+            }
+            FlightLogSummary latest = findLatestFlight();
+            
+            synchronized (this) {
+                if (changes != changesBefore) {
+                    if (loaded && attempt >= MAX_REBUILD_ATTEMPTS) {
+                        // Keep the incrementally maintained summary until the next rebuild
+                        log.debug("Fleet statistics rebuild skipped, flight logs kept changing");
+                        return;
+                    }
+                    continue;
+                }
+                totals = newTotals;
+                byDrone = newByDrone;
+                byDay = newByDay;
+                setLastFlight(latest);
+                loaded = true;
+                generation++;
+                log.debug("Rebuilt fleet statistics: {} completed flights", totals.flights);
+                return;
+            }
+        }
+    }
+    
+    private synchronized boolean isLoaded() {
+        return loaded;
+    }
+    
+    private synchronized boolean applySaved(long writtenAt, FlightLogSummary previous, FlightLog saved) {
+        changes++;
+        if (!loaded) {
+            return true;
+        }
+        if (writtenAt != generation) {
+            return false;
+        }
+        if (previous != null) {
+            apply(previous.getDroneId(), previous.getStartTime(), previous.getFlightStatus(),
+                previous.getTotalDistance(), previous.getDurationSeconds(), -1);
+        }
+        apply(saved.getDrone() != null ? saved.getDrone().getId() : null, saved.getStartTime(),
+            saved.getFlightStatus(), saved.getTotalDistance(), saved.getDurationSeconds(), 1);
+        
+        if (saved.getId().equals(lastFlightId)) {
+            // The most recent flight changed; it may no longer be the most recent
+            lastFlightStale = true;
+            lastFlightVersion++;
+        } else if (!lastFlightStale && isAfterLastFlight(saved)) {
+            lastFlightId = saved.getId();
+            lastFlightStart = saved.getStartTime();
+            lastFlightVersion++;
+        }
+        return true;
+    }
+    
+    private synchronized boolean applyDeleted(long writtenAt, FlightLogSummary deleted) {
+        changes++;
+        if (!loaded) {
+            return true;
+        }
+        if (writtenAt != generation) {
+            return false;
+        }
+        apply(deleted.getDroneId(), deleted.getStartTime(), deleted.getFlightStatus(),
+            deleted.getTotalDistance(), deleted.getDurationSeconds(), -1);
+        if (deleted.getId().equals(lastFlightId)) {
+            lastFlightStale = true;
+            lastFlightVersion++;
+        }
+        return true;
+    }
+    
+    /**
+     * Id of the most recent flight, looked up again if it was updated or deleted since
+     */
+    private Long resolveLastFlight() {
+        long version;
+        synchronized (this) {
+            if (!lastFlightStale) {
+                return lastFlightId;
+            }
+            version = lastFlightVersion;
+        }
+        
+        FlightLogSummary found = findLatestFlight();
+        synchronized (this) {
+            if (lastFlightVersion == version) {
+                setLastFlight(found);
+            }
+            // A change that raced the lookup is picked up by the next read
+            return found != null ? found.getId() : null;
+        }
+    }
+    
+    private FlightLogSummary findLatestFlight() {
+        return flightLogRepository.findLatestSummaries(PageRequest.of(0, 1)).stream().findFirst().orElse(null);
+    }
+    
+    private void setLastFlight(FlightLogSummary flight) {
+        lastFlightId = flight != null ? flight.getId() : null;
+        lastFlightStart = flight != null ? flight.getStartTime() : null;
+        lastFlightStale = false;
+        lastFlightVersion++;
+    }
+    
+    private void apply(Long droneId, LocalDateTime startTime, String status,
+                       Double distance, Integer durationSeconds, int sign) {
+        if (!COMPLETED.equals(status)) {
+            return;
+        }
+        double d = distance != null ? distance : 0.0;
+        long t = durationSeconds != null ? durationSeconds : 0;
+        totals.add(sign, d, t);
+        if (droneId != null) {
+            add(byDrone, droneId, sign, d, t);
+        }
+        if (startTime != null) {
+            add(byDay, startTime.toLocalDate(), sign, d, t);
+        }
+    }
+    
+    private static <K> void add(Map<K, Bucket> buckets, K key, int sign, double distance, long flightTime) {
+        Bucket bucket = buckets.computeIfAbsent(key, k -> new Bucket());
+        bucket.add(sign, distance, flightTime);
+        if (bucket.flights <= 0) {
+            buckets.remove(key);
+        }
+    }
+    
+    private boolean isAfterLastFlight(FlightLog flight) {
+        if (flight.getStartTime() == null) {
+            return false;
+        }
+        if (lastFlightId == null || lastFlightStart == null) {
+            return true;
+        }
+        int order = flight.getStartTime().compareTo(lastFlightStart);
+        return order > 0 || (order == 0 && flight.getId() > lastFlightId);
+    }
+    
+    /**
+     * Completed flights, distance (m) and flight time (s)
+     */
+    private static class Bucket {
+        
+        private long flights;
+        private double distance;
+        private long flightTime;
+        
+        Bucket() {
+        }
+        
+        Bucket(FlightTotals sums) {
+            if (sums != null) {
+                flights = sums.getFlights() != null ? sums.getFlights() : 0;
+                distance = sums.getDistance() != null ? sums.getDistance() : 0.0;
+                flightTime = sums.getFlightTime() != null ? sums.getFlightTime() : 0;
+            }
+        }
+        
+        void add(int sign, double flightDistance, long seconds) {
+            flights += sign;
+            distance += sign * flightDistance;
+            flightTime += sign * seconds;
+        }
+        
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<>();
+            map.put("flights", flights);
+            map.put("distance", distance);
+            map.put("flightTime", flightTime);
+            return map;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.nidar.drone.service;
+
+import com.nidar.drone.mavlink.VehicleState;
+import com.nidar.drone.model.FlightLog;
+import com.nidar.drone.model.Mission;
+import com.nidar.drone.model.Telemetry;
+import com.nidar.drone.repository.DroneRepository;
+import com.nidar.drone.repository.MissionRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes a FlightLog for every flight seen on the MAVLink link.
+ *
+ * A flight starts when a vehicle's position reports it armed and ends when it reports it
+ * disarmed. In between every position sample is folded into a running aggregate (statistics,
+ * home and maximum distance from it, mission progress from MISSION_CURRENT and
+ * MISSION_ITEM_REACHED), so the log is built without reading the telemetry table back.
+ * Logs are saved on a background thread to keep the receive loop off the database. A flight
+ * whose vehicle stops reporting for flightlog.recorder.link-lost-seconds is closed as LINK_LOST.
+ * While a flight of an uploaded mission is open, the mission's live statistics are tracked in
+ * {@link TelemetryService}.
+ */
+@Service
+@Slf4j
+public class FlightLogRecorder {
+    
+    private final FlightLogService flightLogService;
+    private final TelemetryService telemetryService;
+    private final DroneRepository droneRepository;
+    private final MissionRepository missionRepository;
+    private final ExecutorService writer;
+    private final Map<Integer, Flight> activeFlights = new ConcurrentHashMap<>();
+    
+    @Value("${flightlog.recorder.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${flightlog.recorder.link-lost-seconds:30}")
+    private long linkLostSeconds;
+    
+    public FlightLogRecorder(FlightLogService flightLogService,
+                             TelemetryService telemetryService,
+                             DroneRepository droneRepository,
+                             MissionRepository missionRepository) {
+        this.flightLogService = flightLogService;
+        this.telemetryService = telemetryService;
+        this.droneRepository = droneRepository;
+        this.missionRepository = missionRepository;
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "flight-log-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    /**
+     * Fold a position sample into the vehicle's current flight; called on the receive thread
+     */
+    public void onPosition(VehicleConnection connection, Telemetry telemetry) {
+        if (!enabled) {
+            return;
+        }
+        int systemId = connection.getSystemId();
+        VehicleState state = connection.getState();
+        Flight flight = activeFlights.get(systemId);
+        
+        if (Boolean.TRUE.equals(telemetry.getArmed())) {
+            if (flight == null) {
+                state.resetMissionProgress();
+                flight = new Flight(connection);
+                activeFlights.put(systemId, flight);
+                if (flight.missionId != null) {
+                    telemetryService.startMissionStatistics(flight.missionId);
+                }
+                log.info("Flight started on system id {}", systemId);
+            }
+            flight.add(telemetry, state);
+        } else if (flight != null) {
+            flight.add(telemetry, state);
+            finish(systemId, flight, null);
+        }
+    }
+    
+    /**
+     * Close flights whose vehicle has gone quiet
+     */
+    @Scheduled(fixedRate = 10000)
+    public void closeLostFlights() {
+        long limit = TimeUnit.SECONDS.toNanos(linkLostSeconds);
+        activeFlights.forEach((systemId, flight) -> {
+            if (flight.getIdleNanos() > limit) {
+                finish(systemId, flight, "LINK_LOST");
+            }
+        });
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        List.copyOf(activeFlights.keySet()).forEach(systemId -> {
+            Flight flight = activeFlights.get(systemId);
+            if (flight != null) {
+                finish(systemId, flight, "LINK_LOST");
+            }
+        });
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(5, TimeUnit.SECONDS)) {
+                log.warn("Flight log writer did not finish in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private void finish(int systemId, Flight flight, String status) {
+        // Only one of the receive thread and the sweep may close a flight
+        if (!activeFlights.remove(systemId, flight)) {
+            return;
+        }
+        if (flight.missionId != null) {
+            telemetryService.stopMissionStatistics(flight.missionId);
+        }
+        FlightLog flightLog = flight.toFlightLog(status);
+        writer.execute(() -> save(flightLog, flight));
+    }
+    
+    private void save(FlightLog flightLog, Flight flight) {
+        try {
+            if (flight.droneId != null) {
+                flightLog.setDrone(droneRepository.getReferenceById(flight.droneId));
+            }
+            if (flight.missionId != null) {
+                flightLog.setMission(missionRepository.getReferenceById(flight.missionId));
+            }
+            FlightLog saved = flightLogService.createLog(flightLog);
+            log.info("Recorded flight log {} for system id {} ({}, {} s)", saved.getId(), flight.systemId,
+                saved.getFlightStatus(), saved.getDurationSeconds());
+        } catch (Exception e) {
+            log.error("Failed to save flight log for system id {}", flight.systemId, e);
+        }
+    }
+    
+    /**
+     * Running aggregate of one flight
+     */
+    private static class Flight {
+        
+        private final int systemId;
+        private final Long droneId;
+        private final Long missionId;
+        private final Integer waypointsPlanned;
+        private final MissionStatisticsAccumulator statistics = new MissionStatisticsAccumulator();
+        
+        private Double homeLatitude;
+        private Double homeLongitude;
+        private double maxDistanceFromHome;
+        private int waypointsCompleted;
+        private volatile long lastSampleNanos = System.nanoTime();
+        
+        Flight(VehicleConnection connection) {
+            Mission mission = connection.getMission();
+            this.systemId = connection.getSystemId();
+            this.droneId = connection.getDroneId();
+            this.missionId = mission != null ? mission.getId() : null;
+            this.waypointsPlanned = mission != null ? connection.getMissionWaypointCount() : null;
+        }
+        
+        synchronized void add(Telemetry telemetry, VehicleState state) {
+            lastSampleNanos = System.nanoTime();
+            statistics.add(telemetry);
+            
+            Double latitude = telemetry.getLatitude();
+            Double longitude = telemetry.getLongitude();
+            if (latitude != null && longitude != null && (latitude != 0 || longitude != 0)) {
+                if (homeLatitude == null) {
+                    homeLatitude = latitude;
+                    homeLongitude = longitude;
+                }
+                maxDistanceFromHome = Math.max(maxDistanceFromHome,
+                    MissionStatisticsAccumulator.distance(homeLatitude, homeLongitude, latitude, longitude));
+            }
+            
+            // Items before the current one are done, as is every item reported reached
+            waypointsCompleted = Math.max(waypointsCompleted,
+                Math.max(state.getCurrentWaypoint(), state.getLastReachedWaypoint() + 1));
+        }
+        
+        long getIdleNanos() {
+            return System.nanoTime() - lastSampleNanos;
+        }
+        
+        synchronized FlightLog toFlightLog(String status) {
+            FlightLog flightLog = new FlightLog();
+            statistics.fill(flightLog);
+            flightLog.setHomeLatitude(homeLatitude);
+            flightLog.setHomeLongitude(homeLongitude);
+            flightLog.setMaxDistanceFromHome(maxDistanceFromHome);
+            flightLog.setWaypointsPlanned(waypointsPlanned);
+            flightLog.setWaypointsCompleted(waypointsPlanned != null
+                ? Math.min(waypointsCompleted, waypointsPlanned) : null);
+            
+            if (status == null) {
+                boolean incomplete = waypointsPlanned != null && waypointsPlanned > 0
+                    && waypointsCompleted < waypointsPlanned;
+                status = incomplete ? "ABORTED" : "COMPLETED";
+            }
+            flightLog.setFlightStatus(status);
+            flightLog.setNotes("Recorded automatically from telemetry");
+            return flightLog;
+        }
+    }
+}
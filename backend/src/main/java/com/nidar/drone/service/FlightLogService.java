@@ -0,0 +1,113 @@
+package com.nidar.drone.service;
+
+import com.nidar.drone.dto.FlightLogSummary;
+import com.nidar.drone.model.FlightLog;
+import com.nidar.drone.repository.FlightLogRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Flight log CRUD. Every write is reported to {@link FleetStatisticsService} so the fleet
+ * statistics stay current without re-aggregating the table.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class FlightLogService {
+    
+    // Bounds used when a time range is left open (within the MySQL DATETIME range)
+    private static final LocalDateTime EARLIEST = LocalDateTime.of(1970, 1, 1, 0, 0);
+    private static final LocalDateTime LATEST = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+    private static final int MAX_PAGE_SIZE = 500;
+    
+    private final FlightLogRepository flightLogRepository;
+    private final FleetStatisticsService fleetStatisticsService;
+    
+    public List<FlightLog> getAllLogs() {
+        return flightLogRepository.findByOrderByStartTimeDesc();
+    }
+    
+    public FlightLog getLogById(Long id) {
+        return flightLogRepository.findById(id).orElse(null);
+    }
+    
+    public List<FlightLog> getLogsByStatus(String status) {
+        return flightLogRepository.findByFlightStatus(status);
+    }
+    
+    /**
+     * One keyset page of flight logs, newest first, filtered by start time, status, drone and
+     * mission (null matches everything). Logs without a start time come last, and only when no
+     * time range is given. Pass the returned nextCursor back as afterStartTime/afterId to get the
+     * following page (afterId alone once the cursor reaches the logs without a start time); it is
+     * null after the last page.
+     */
+    public Map<String, Object> getLogPage(LocalDateTime from, LocalDateTime to, String status,
+                                          Long droneId, Long missionId,
+                                          LocalDateTime afterStartTime, Long afterId, int limit) {
+        int size = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        boolean undatedCursor = afterId != null && afterStartTime == null;
+        List<FlightLogSummary> page = new ArrayList<>(undatedCursor ? List.of() : flightLogRepository.findSummaryPage(
+            from != null ? from : EARLIEST, to != null ? to : LATEST, status, droneId, missionId,
+            afterStartTime != null ? afterStartTime : LATEST, afterId != null ? afterId : Long.MAX_VALUE,
+            PageRequest.of(0, size)));
+        if (page.size() < size && from == null && to == null) {
+            page.addAll(flightLogRepository.findUndatedSummaryPage(status, droneId, missionId,
+                undatedCursor ? afterId : Long.MAX_VALUE, PageRequest.of(0, size - page.size())));
+        }
+        
+        Map<String, Object> result = new HashMap<>();
+        result.put("logs", page);
+        result.put("count", page.size());
+        if (page.size() == size) {
+            FlightLogSummary last = page.get(page.size() - 1);
+            Map<String, Object> cursor = new HashMap<>();
+            cursor.put("afterStartTime", last.getStartTime());
+            cursor.put("afterId", last.getId());
+            result.put("nextCursor", cursor);
+        } else {
+            result.put("nextCursor", null);
+        }
+        return result;
+    }
+    
+    public Map<String, Object> getStatistics(int days) {
+        return fleetStatisticsService.getStatistics(days);
+    }
+    
+    public FlightLog createLog(FlightLog flightLog) {
+        flightLog.setId(null);
+        long generation = fleetStatisticsService.getGeneration();
+        FlightLog saved = flightLogRepository.save(flightLog);
+        fleetStatisticsService.onSaved(generation, null, saved);
+        return saved;
+    }
+    
+    public FlightLog updateLog(Long id, FlightLog flightLog) {
+        long generation = fleetStatisticsService.getGeneration();
+        FlightLogSummary previous = flightLogRepository.findSummaryById(id).orElse(null);
+        if (previous == null) {
+            return null;
+        }
+        flightLog.setId(id);
+        FlightLog saved = flightLogRepository.save(flightLog);
+        fleetStatisticsService.onSaved(generation, previous, saved);
+        return saved;
+    }
+    
+    public void deleteLog(Long id) {
+        long generation = fleetStatisticsService.getGeneration();
+        flightLogRepository.findSummaryById(id).ifPresent(deleted -> {
+            flightLogRepository.deleteById(id);
+            fleetStatisticsService.onDeleted(generation, deleted);
+        });
+    }
+}
@@ -0,0 +1,227 @@
+package com.nidar.drone.service;
+
+import com.nidar.drone.geofence.CompiledGeofence;
+import com.nidar.drone.geofence.GeofenceViolation;
+import com.nidar.drone.model.Mission;
+import com.nidar.drone.model.Telemetry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks every live position against the geofence of the mission the vehicle is flying.
+ *
+ * Runs for each sample on the thread that publishes it - the receive thread for real vehicles,
+ * a scheduler thread for simulated ones - against the mission's cached {@link CompiledGeofence}
+ * from {@link GeofenceService}, so no sample waits for the database. A geofence that is not
+ * cached yet is compiled on a background thread and samples are not checked until it is ready;
+ * uploads compile it ahead of the first sample (see {@link #prepare}). Events are only
+ * published when a vehicle's state changes - it enters a violation, moves to a different one
+ * or clears - to /topic/geofence and /topic/geofence/{droneId}. When
+ * geofence.enforcement.enabled is set, a violation whose zone action is RTL, LAND or BRAKE
+ * sends the matching command to the vehicle, repeated every geofence.enforcement.retry-seconds
+ * while the violation lasts in case the datagram was lost.
+ */
+@Service
+@Slf4j
+public class GeofenceMonitor {
+    
+    private static final Set<String> ENFORCED_ACTIONS = Set.of("RTL", "LAND", "BRAKE");
+    
+    private final GeofenceService geofenceService;
+    private final MAVLinkMessageService mavLinkMessageService;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final Map<Integer, FenceState> states = new ConcurrentHashMap<>();
+    private final Set<Long> compiling = ConcurrentHashMap.newKeySet();
+    private final ExecutorService compiler;
+    
+    @Value("${geofence.monitor.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${geofence.enforcement.enabled:false}")
+    private boolean enforcementEnabled;
+    
+    @Value("${geofence.enforcement.retry-seconds:10}")
+    private long retrySeconds;
+    
+    public GeofenceMonitor(GeofenceService geofenceService,
+                           MAVLinkMessageService mavLinkMessageService,
+                           SimpMessagingTemplate messagingTemplate) {
+        this.geofenceService = geofenceService;
+        this.mavLinkMessageService = mavLinkMessageService;
+        this.messagingTemplate = messagingTemplate;
+        this.compiler = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "geofence-compiler");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    /**
+     * Check a live position; called by one thread at a time per vehicle
+     */
+    public void onPosition(VehicleConnection connection, Telemetry telemetry) {
+        Mission mission = connection.getMission();
+        if (!enabled || mission == null || telemetry.getLatitude() == null || telemetry.getLongitude() == null) {
+            return;
+        }
+        
+        CompiledGeofence geofence = geofenceService.findCompiledGeofence(mission.getId());
+        if (geofence == null) {
+            prepare(mission.getId());
+            return;
+        }
+        if (geofence.size() == 0) {
+            return;
+        }
+        GeofenceViolation violation = geofence.check(telemetry.getLatitude(), telemetry.getLongitude(),
+            telemetry.getAltitude() != null ? telemetry.getAltitude() : Double.NaN);
+        
+        FenceState state = states.computeIfAbsent(connection.getSystemId(), id -> new FenceState());
+        FenceState.Change change = state.update(violation);
+        if (change != FenceState.Change.NONE) {
+            publish(connection, mission, telemetry, violation);
+        }
+        if (violation != null && enforcementEnabled && state.enforcementDue(TimeUnit.SECONDS.toNanos(retrySeconds))) {
+            enforce(connection, violation);
+        }
+    }
+    
+    /**
+     * Compile a mission's geofence in the background, e.g. when it is uploaded so it is ready
+     * for the first sample; does nothing while a compile of the mission is queued
+     */
+    public void prepare(Long missionId) {
+        if (!compiling.add(missionId)) {
+            return;
+        }
+        compiler.execute(() -> {
+            try {
+                geofenceService.getCompiledGeofence(missionId);
+            } catch (Exception e) {
+                log.error("Failed to compile the geofence of mission {}", missionId, e);
+            } finally {
+                compiling.remove(missionId);
+            }
+        });
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        compiler.shutdownNow();
+    }
+    
+    /**
+     * Vehicles currently violating their mission's geofence
+     */
+    public List<Map<String, Object>> getActiveViolations() {
+        List<Map<String, Object>> active = new ArrayList<>();
+        states.forEach((systemId, state) -> {
+            Map<String, Object> event = state.lastEvent;
+            if (event != null && "VIOLATION".equals(event.get("type"))) {
+                active.add(event);
+            }
+        });
+        return active;
+    }
+    
+    private void publish(VehicleConnection connection, Mission mission, Telemetry telemetry,
+                         GeofenceViolation violation) {
+        Map<String, Object> event = new HashMap<>();
+        event.put("type", violation != null ? "VIOLATION" : "CLEARED");
+        event.put("systemId", connection.getSystemId());
+        event.put("droneId", connection.getDroneId());
+        event.put("missionId", mission.getId());
+        event.put("latitude", telemetry.getLatitude());
+        event.put("longitude", telemetry.getLongitude());
+        event.put("altitude", telemetry.getAltitude());
+        event.put("timestamp", telemetry.getTimestamp() != null ? telemetry.getTimestamp() : LocalDateTime.now());
+        if (violation != null) {
+            event.put("zoneId", violation.getZone().getId());
+            event.put("zoneName", violation.getZone().getName());
+            event.put("reason", violation.getReason());
+            event.put("message", violation.getMessage());
+            event.put("violationAction", violation.getViolationAction());
+            log.warn("Geofence violation by system id {}: {}", connection.getSystemId(), violation.getMessage());
+        } else {
+            log.info("Geofence violation cleared for system id {}", connection.getSystemId());
+        }
+        states.get(connection.getSystemId()).lastEvent = event;
+        
+        messagingTemplate.convertAndSend("/topic/geofence", event);
+        if (connection.getDroneId() != null) {
+            messagingTemplate.convertAndSend("/topic/geofence/" + connection.getDroneId(), event);
+        }
+    }
+    
+    private void enforce(VehicleConnection connection, GeofenceViolation violation) {
+        String action = violation.getViolationAction();
+        if (connection.isSimulated()) {
+            return;
+        }
+        if (action == null || !ENFORCED_ACTIONS.contains(action.toUpperCase())) {
+            return;
+        }
+        log.warn("Enforcing geofence on system id {}: {}", connection.getSystemId(), action);
+        mavLinkMessageService.sendNamedCommand(connection.getLink(), action);
+    }
+    
+    /**
+     * Violation state of one vehicle; written only by the thread publishing that vehicle's samples
+     * (the receive thread, or the simulated flight's tick, which is serialized per flight)
+     */
+    private static class FenceState {
+        
+        enum Change { NONE, ENTERED, CHANGED, CLEARED }
+        
+        private Long zoneId;
+        private GeofenceViolation.Reason reason;
+        private long lastEnforcementNanos;
+        private boolean enforced;
+        private volatile Map<String, Object> lastEvent;
+        
+        Change update(GeofenceViolation violation) {
+            if (violation == null) {
+                if (reason == null) {
+                    return Change.NONE;
+                }
+                zoneId = null;
+                reason = null;
+                enforced = false;
+                return Change.CLEARED;
+            }
+            Long newZoneId = violation.getZone().getId();
+            if (reason == violation.getReason() && newZoneId != null && newZoneId.equals(zoneId)) {
+                return Change.NONE;
+            }
+            Change change = reason == null ? Change.ENTERED : Change.CHANGED;
+            zoneId = newZoneId;
+            reason = violation.getReason();
+            enforced = false;
+            return change;
+        }
+        
+        boolean enforcementDue(long retryNanos) {
+            long now = System.nanoTime();
+            if (enforced && now - lastEnforcementNanos < retryNanos) {
+                return false;
+            }
+            enforced = true;
+            lastEnforcementNanos = now;
+            return true;
+        }
+    }
+}
@@ -1,25 +1,51 @@
 package com.nidar.drone.service;
 
-import com.nidar.drone.model.GeofencePoint;
+import com.nidar.drone.dto.GeofenceCheck;
+import com.nidar.drone.geofence.CompiledGeofence;
+import com.nidar.drone.geofence.GeofenceViolation;
 import com.nidar.drone.model.GeofenceZone;
 import com.nidar.drone.model.Mission;
 import com.nidar.drone.repository.GeofenceZoneRepository;
 import com.nidar.drone.repository.MissionRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
 
+/**
+ * Geofence zones and position validation.
+ *
+ * Validation runs against {@link CompiledGeofence}s cached per mission, so checking a position
+ * touches neither the database nor the zone entities; zone changes through this service and
+ * new missions drop the affected mission's entry. Missions that do not exist are cached too, so
+ * repeated lookups of a stale mission id do not query the database each time.
+ */
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class GeofenceService {
     
+    // Below this many positions a batch is cheaper to check on the request thread
+    private static final int PARALLEL_BATCH_THRESHOLD = 1024;
+    
+    // Cached for mission ids that do not exist
+    private static final CompiledGeofence MISSING = new CompiledGeofence(null, List.of());
+    
     private final GeofenceZoneRepository geofenceZoneRepository;
     private final MissionRepository missionRepository;
+    private final Map<Long, CompiledGeofence> compiledGeofences = new ConcurrentHashMap<>();
+    private final AtomicLong cacheGeneration = new AtomicLong();
+    
+    @Value("${geofence.validate.max-positions:100000}")
+    private int maxBatchPositions;
     
     public List<GeofenceZone> getAllZones() {
         return geofenceZoneRepository.findAll();
@@ -39,7 +65,9 @@ public class GeofenceService {
     
     public GeofenceZone createZone(GeofenceZone zone) {
         log.info("Creating geofence zone: {}", zone.getName());
-        return geofenceZoneRepository.save(zone);
+        GeofenceZone saved = geofenceZoneRepository.save(zone);
+        invalidate(missionIdOf(saved));
+        return saved;
     }
     
     public GeofenceZone updateZone(Long id, GeofenceZone zoneDetails) {
@@ -51,88 +79,157 @@ public class GeofenceService {
             zone.setMinAltitude(zoneDetails.getMinAltitude());
             zone.setMaxAltitude(zoneDetails.getMaxAltitude());
             zone.setViolationAction(zoneDetails.getViolationAction());
-            return geofenceZoneRepository.save(zone);
+            GeofenceZone saved = geofenceZoneRepository.save(zone);
+            invalidate(missionIdOf(saved));
+            return saved;
         }
         return null;
     }
     
     public void deleteZone(Long id) {
+        GeofenceZone zone = getZoneById(id);
         geofenceZoneRepository.deleteById(id);
+        invalidate(missionIdOf(zone));
     }
     
     public Map<String, Object> validatePosition(Double latitude, Double longitude, Double altitude, Long missionId) {
         Map<String, Object> result = new HashMap<>();
         result.put("valid", true);
         
-        Mission mission = missionRepository.findById(missionId).orElse(null);
-        if (mission == null) {
+        CompiledGeofence geofence = getCompiledGeofence(missionId);
+        if (geofence == null) {
             result.put("valid", false);
             result.put("message", "Mission not found");
             return result;
         }
         
-        List<GeofenceZone> zones = geofenceZoneRepository.findByMissionAndEnabled(mission, true);
-        
-        for (GeofenceZone zone : zones) {
-            // Check altitude constraints
-            if (zone.getMinAltitude() != null && altitude < zone.getMinAltitude()) {
-                result.put("valid", false);
-                result.put("message", "Below minimum altitude for zone: " + zone.getName());
-                result.put("violationAction", zone.getViolationAction());
-                return result;
-            }
-            
-            if (zone.getMaxAltitude() != null && altitude > zone.getMaxAltitude()) {
-                result.put("valid", false);
-                result.put("message", "Above maximum altitude for zone: " + zone.getName());
-                result.put("violationAction", zone.getViolationAction());
-                return result;
-            }
-            
-            // Check if point is inside zone (simplified point-in-polygon check)
-            if (isPointInZone(latitude, longitude, zone)) {
-                if ("EXCLUSION".equals(zone.getZoneType())) {
-                    result.put("valid", false);
-                    result.put("message", "Inside exclusion zone: " + zone.getName());
-                    result.put("violationAction", zone.getViolationAction());
-                    return result;
-                }
-            } else {
-                if ("INCLUSION".equals(zone.getZoneType())) {
-                    result.put("valid", false);
-                    result.put("message", "Outside inclusion zone: " + zone.getName());
-                    result.put("violationAction", zone.getViolationAction());
-                    return result;
-                }
-            }
+        GeofenceViolation violation = geofence.check(latitude, longitude, altitude);
+        if (violation != null) {
+            result.put("valid", false);
+            result.put("message", violation.getMessage());
+            result.put("violationAction", violation.getViolationAction());
+            return result;
         }
         
         result.put("message", "Position is valid");
         return result;
     }
     
-    private boolean isPointInZone(Double latitude, Double longitude, GeofenceZone zone) {
-        List<GeofencePoint> points = zone.getPoints();
-        if (points.size() < 3) {
-            return false; // Not a valid polygon
+    /**
+     * Validate many positions of one mission at once (e.g. a candidate path) against a single
+     * compiled zone set. Positions are checked in parallel once there are enough of them to pay
+     * for the fork; with checkLegs, the leg between each pair of consecutive positions is checked
+     * too and its violations are listed under "legViolations". A NaN altitude skips the
+     * altitude limits for that position.
+     */
+    public Map<String, Object> validatePositions(Long missionId, double[] latitudes, double[] longitudes,
+                                                 double[] altitudes, boolean checkLegs) {
+        if (latitudes.length > maxBatchPositions) {
+            throw new RuntimeException("At most " + maxBatchPositions + " positions can be validated at once");
+        }
+        CompiledGeofence geofence = getCompiledGeofence(missionId);
+        if (geofence == null) {
+            throw new RuntimeException("Mission not found");
         }
         
-        // Ray casting algorithm for point-in-polygon test
-        boolean inside = false;
-        int j = points.size() - 1;
+        int n = latitudes.length;
+        GeofenceCheck[] results = new GeofenceCheck[n];
+        IntStream indices = IntStream.range(0, n);
+        if (n >= PARALLEL_BATCH_THRESHOLD) {
+            indices = indices.parallel();
+        }
+        indices.forEach(i -> results[i] = toCheck(i, null,
+            geofence.check(latitudes[i], longitudes[i], altitudes[i])));
         
-        for (int i = 0; i < points.size(); i++) {
-            GeofencePoint pi = points.get(i);
-            GeofencePoint pj = points.get(j);
-            
-            if ((pi.getLongitude() > longitude) != (pj.getLongitude() > longitude) &&
-                (latitude < (pj.getLatitude() - pi.getLatitude()) * (longitude - pi.getLongitude()) / 
-                 (pj.getLongitude() - pi.getLongitude()) + pi.getLatitude())) {
-                inside = !inside;
+        int invalid = 0;
+        for (GeofenceCheck check : results) {
+            if (!check.isValid()) {
+                invalid++;
             }
-            j = i;
         }
         
-        return inside;
+        Map<String, Object> response = new HashMap<>();
+        response.put("missionId", missionId);
+        response.put("count", n);
+        response.put("validCount", n - invalid);
+        response.put("invalidCount", invalid);
+        response.put("valid", invalid == 0);
+        response.put("results", Arrays.asList(results));
+        
+        if (checkLegs) {
+            IntStream legs = IntStream.range(0, Math.max(0, n - 1));
+            if (n >= PARALLEL_BATCH_THRESHOLD) {
+                legs = legs.parallel();
+            }
+            List<GeofenceCheck> legViolations = legs
+                .mapToObj(i -> toCheck(i, i + 1,
+                    geofence.checkLeg(latitudes[i], longitudes[i], latitudes[i + 1], longitudes[i + 1])))
+                .filter(check -> !check.isValid())
+                .toList();
+            response.put("legViolations", legViolations);
+            response.put("valid", invalid == 0 && legViolations.isEmpty());
+        }
+        return response;
+    }
+    
+    private GeofenceCheck toCheck(int index, Integer toIndex, GeofenceViolation violation) {
+        if (violation == null) {
+            return new GeofenceCheck(index, toIndex, true, null, null, null, null);
+        }
+        return new GeofenceCheck(index, toIndex, false, violation.getReason().name(), violation.getMessage(),
+            violation.getZone().getId(), violation.getViolationAction());
+    }
+    
+    /**
+     * The mission's enabled zones compiled for fast checks (see {@link CompiledGeofence}), or null
+     * if the mission does not exist. Compiled once per mission and cached until a zone changes.
+     */
+    public CompiledGeofence getCompiledGeofence(Long missionId) {
+        CompiledGeofence cached = compiledGeofences.get(missionId);
+        if (cached == null) {
+            cached = compile(missionId);
+        }
+        return cached != MISSING ? cached : null;
+    }
+    
+    /**
+     * The mission's cached geofence without compiling it: null if it has not been compiled yet,
+     * an empty one if the mission does not exist. Never touches the database.
+     */
+    public CompiledGeofence findCompiledGeofence(Long missionId) {
+        return compiledGeofences.get(missionId);
+    }
+    
+    private CompiledGeofence compile(Long missionId) {
+        long generation = cacheGeneration.get();
+        CompiledGeofence compiled = missionRepository.existsById(missionId)
+            ? new CompiledGeofence(missionId, geofenceZoneRepository.findEnabledWithPoints(missionId))
+            : MISSING;
+        synchronized (compiledGeofences) {
+            // A zone changed while compiling; use the result once but do not cache it
+            if (cacheGeneration.get() == generation) {
+                compiledGeofences.putIfAbsent(missionId, compiled);
+            }
+        }
+        log.debug("Compiled {} geofence zones for mission {}", compiled.size(), missionId);
+        return compiled;
+    }
+    
+    /**
+     * Drop the compiled zones of a mission, or of every mission if missionId is null
+     */
+    public void invalidate(Long missionId) {
+        synchronized (compiledGeofences) {
+            cacheGeneration.incrementAndGet();
+            if (missionId != null) {
+                compiledGeofences.remove(missionId);
+            } else {
+                compiledGeofences.clear();
+            }
+        }
+    }
+    
+    private Long missionIdOf(GeofenceZone zone) {
+        return zone != null && zone.getMission() != null ? zone.getMission().getId() : null;
     }
 }
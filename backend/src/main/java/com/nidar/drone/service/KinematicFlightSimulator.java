@@ -0,0 +1,435 @@
+package com.nidar.drone.service;
+
+import com.nidar.drone.energy.EnergyModel;
+import com.nidar.drone.model.Waypoint;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fixed-timestep kinematic model of a multirotor flying a mission.
+ *
+ * The vehicle takes off vertically at the first waypoint, flies each leg with limited
+ * horizontal acceleration, climbs and descends no faster than MAX_CLIMB_RATE/MAX_DESCENT_RATE,
+ * counts a waypoint as reached within its acceptanceRadius (and a meter of its altitude),
+ * holds there for its delay, and lands after the last one. It slows down ahead of a waypoint
+ * so it can take the turn onto the next leg: full speed through a straight line, stopped for
+ * a turn of 90 degrees or more and for a waypoint with a delay. Positions are advanced on a
+ * local flat-earth approximation, which is accurate to well under a meter per step. The battery
+ * drains at the rate the {@link EnergyModel} gives for the current speed and climb rate.
+ *
+ * All state is primitive and the waypoints are copied at construction, so an instance can be
+ * stepped on any thread (one at a time) after the entities are gone, and as fast as the CPU allows.
+ * With checkpoints recorded, the state as each waypoint is reached can be restored into a
+ * simulator of an edited mission: up to waypoint i the flight depends only on waypoints 0 to i+1
+ * (the next one decides the speed carried through the corner), so a mission edited from
+ * waypoint i+2 on can resume there instead of flying again from take-off.
+ */
+public class KinematicFlightSimulator {
+    
+    public static final double DEFAULT_STEP = 0.1; // seconds
+    
+    private static final double METERS_PER_DEGREE = 111_320.0;
+    private static final double MAX_ACCELERATION = 2.5; // m/s^2, horizontal
+    private static final double DEFAULT_ACCEPTANCE_RADIUS = 2.0; // meters
+    private static final double ALTITUDE_TOLERANCE = 1.0; // meters
+    private static final double DEFAULT_SPEED = 10.0; // m/s
+    private static final double MAX_FLIGHT_SECONDS = 24 * 3600;
+    
+    public enum Phase { TAKEOFF, MISSION, LANDING, LANDED }
+    
+    /**
+     * The simulator state at the step a waypoint was reached
+     */
+    public static final class Checkpoint {
+        private final int waypoint;
+        private final Phase phase;
+        private final int target;
+        private final double holdRemaining;
+        private final double latitude;
+        private final double longitude;
+        private final double altitude;
+        private final double speed;
+        private final double velocityNorth;
+        private final double velocityEast;
+        private final double climbRate;
+        private final double battery;
+        private final double elapsed;
+        private final double distance;
+        
+        private Checkpoint(KinematicFlightSimulator s) {
+            waypoint = s.lastReached;
+            phase = s.phase;
+            target = s.target;
+            holdRemaining = s.holdRemaining;
+            latitude = s.latitude;
+            longitude = s.longitude;
+            altitude = s.altitude;
+            speed = s.speed;
+            velocityNorth = s.velocityNorth;
+            velocityEast = s.velocityEast;
+            climbRate = s.climbRate;
+            battery = s.battery;
+            elapsed = s.elapsed;
+            distance = s.distance;
+        }
+        
+        /**
+         * Index of the waypoint just reached
+         */
+        public int getWaypoint() {
+            return waypoint;
+        }
+    }
+    
+    private final int count;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final double[] altitudes;
+    private final double[] speeds;
+    private final double[] delays;
+    private final double[] acceptanceRadii;
+    private final double[] cornerSpeeds; // speed to carry through each waypoint
+    private final EnergyModel energyModel;
+    
+    private Phase phase = Phase.TAKEOFF;
+    private int target;
+    private int lastReached = -1;
+    private double holdRemaining;
+    
+    private double latitude;
+    private double longitude;
+    private double altitude;
+    private double speed; // horizontal, m/s
+    private double velocityNorth;
+    private double velocityEast;
+    private double climbRate;
+    private double battery = 100;
+    private double elapsed;
+    private double distance;
+    private List<Checkpoint> checkpoints;
+    
+    public KinematicFlightSimulator(List<Waypoint> waypoints, Double defaultSpeed) {
+        this(waypoints, defaultSpeed, EnergyModel.DEFAULT);
+    }
+    
+    /**
+     * Simulate with the battery drained by the given energy model
+     */
+    public KinematicFlightSimulator(List<Waypoint> waypoints, Double defaultSpeed, EnergyModel energyModel) {
+        this.energyModel = energyModel;
+        count = waypoints.size();
+        latitudes = new double[count];
+        longitudes = new double[count];
+        altitudes = new double[count];
+        speeds = new double[count];
+        delays = new double[count];
+        acceptanceRadii = new double[count];
+        cornerSpeeds = new double[count];
+        double cruise = defaultSpeed != null && defaultSpeed > 0 ? defaultSpeed : DEFAULT_SPEED;
+        for (int i = 0; i < count; i++) {
+            Waypoint wp = waypoints.get(i);
+            latitudes[i] = wp.getLatitude();
+            longitudes[i] = wp.getLongitude();
+            altitudes[i] = wp.getAltitude();
+            speeds[i] = wp.getSpeed() != null && wp.getSpeed() > 0 ? wp.getSpeed() : cruise;
+            delays[i] = wp.getDelay() != null ? Math.max(0, wp.getDelay()) : 0;
+            acceptanceRadii[i] = wp.getAcceptanceRadius() != null && wp.getAcceptanceRadius() > 0
+                ? wp.getAcceptanceRadius() : DEFAULT_ACCEPTANCE_RADIUS;
+        }
+        for (int i = 1; i < count - 1; i++) {
+            if (delays[i] == 0) {
+                double turn = turnAngle(i);
+                cornerSpeeds[i] = turn < Math.PI / 2 ? Math.min(speeds[i], speeds[i + 1]) * Math.cos(turn) : 0;
+            }
+        }
+        if (count > 0) {
+            latitude = latitudes[0];
+            longitude = longitudes[0];
+        } else {
+            phase = Phase.LANDED;
+        }
+    }
+    
+    /**
+     * Fly the whole mission and return its duration in seconds
+     */
+    public double run(double step) {
+        while (!isFinished()) {
+            step(step);
+        }
+        return elapsed;
+    }
+    
+    /**
+     * Record a {@link Checkpoint} each time a waypoint is reached from now on
+     */
+    public void recordCheckpoints() {
+        if (checkpoints == null) {
+            checkpoints = new ArrayList<>();
+        }
+    }
+    
+    /**
+     * Checkpoints recorded so far, in waypoint order
+     */
+    public List<Checkpoint> getCheckpoints() {
+        return checkpoints != null ? checkpoints : List.of();
+    }
+    
+    /**
+     * Continue from the last of the checkpoints of a simulation whose waypoints up to that
+     * checkpoint's waypoint + 1 are the same as this one's, with the same speeds and energy model.
+     * When recording, the given checkpoints become the first of this simulator's.
+     */
+    public void restore(List<Checkpoint> history) {
+        Checkpoint checkpoint = history.get(history.size() - 1);
+        if (checkpoint.waypoint + 1 >= count) {
+            throw new IllegalArgumentException("Checkpoint at waypoint " + checkpoint.waypoint
+                + " is not before the last of " + count + " waypoints");
+        }
+        if (checkpoints != null) {
+            checkpoints.clear();
+            checkpoints.addAll(history);
+        }
+        phase = checkpoint.phase;
+        target = checkpoint.target;
+        lastReached = checkpoint.waypoint;
+        holdRemaining = checkpoint.holdRemaining;
+        latitude = checkpoint.latitude;
+        longitude = checkpoint.longitude;
+        altitude = checkpoint.altitude;
+        speed = checkpoint.speed;
+        velocityNorth = checkpoint.velocityNorth;
+        velocityEast = checkpoint.velocityEast;
+        climbRate = checkpoint.climbRate;
+        battery = checkpoint.battery;
+        elapsed = checkpoint.elapsed;
+        distance = checkpoint.distance;
+    }
+    
+    public boolean isFinished() {
+        return phase == Phase.LANDED || elapsed >= MAX_FLIGHT_SECONDS;
+    }
+    
+    /**
+     * Advance the simulation by dt seconds
+     */
+    public void step(double dt) {
+        if (isFinished()) {
+            return;
+        }
+        elapsed += dt;
+        
+        switch (phase) {
+            case TAKEOFF -> {
+                travel(stopHorizontal(dt), climbTowards(altitudes[0], dt));
+                if (Math.abs(altitudes[0] - altitude) <= ALTITUDE_TOLERANCE) {
+                    phase = Phase.MISSION;
+                }
+            }
+            case MISSION -> flyMission(dt);
+            case LANDING -> {
+                travel(stopHorizontal(dt), climbTowards(0, dt));
+                if (altitude <= 0) {
+                    altitude = 0;
+                    climbRate = 0;
+                    phase = Phase.LANDED;
+                }
+            }
+            default -> {
+            }
+        }
+        battery = Math.max(0, battery - energyModel.drainRate(speed, climbRate, battery) * dt);
+        if (checkpoints != null && lastReached >= 0
+                && (checkpoints.isEmpty() || checkpoints.get(checkpoints.size() - 1).waypoint != lastReached)) {
+            checkpoints.add(new Checkpoint(this));
+        }
+    }
+    
+    private void flyMission(double dt) {
+        if (holdRemaining > 0) {
+            travel(stopHorizontal(dt), climbTowards(altitudes[target], dt));
+            holdRemaining -= dt;
+            if (holdRemaining <= 0) {
+                nextTarget();
+            }
+            return;
+        }
+        
+        double metersPerDegreeLon = METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude));
+        double north = (latitudes[target] - latitude) * METERS_PER_DEGREE;
+        double east = (longitudes[target] - longitude) * metersPerDegreeLon;
+        double remaining = Math.sqrt(north * north + east * east);
+        
+        // Fastest speed from which the vehicle can still slow to the corner speed in time
+        double desired = Math.min(speeds[target],
+            Math.sqrt(cornerSpeeds[target] * cornerSpeeds[target] + 2 * MAX_ACCELERATION * remaining));
+        speed = approach(speed, desired, MAX_ACCELERATION * dt);
+        double traveled = Math.min(speed * dt, remaining);
+        if (remaining > 0) {
+            velocityNorth = speed * north / remaining;
+            velocityEast = speed * east / remaining;
+            latitude += traveled * north / remaining / METERS_PER_DEGREE;
+            longitude += traveled * east / remaining / metersPerDegreeLon;
+        } else {
+            // Over the waypoint, waiting for the altitude
+            speed = 0;
+            velocityNorth = 0;
+            velocityEast = 0;
+        }
+        travel(traveled, climbTowards(altitudes[target], dt));
+        
+        if (remaining - traveled <= acceptanceRadii[target]
+                && Math.abs(altitudes[target] - altitude) <= ALTITUDE_TOLERANCE) {
+            lastReached = target;
+            if (delays[target] > 0) {
+                holdRemaining = delays[target];
+            } else {
+                nextTarget();
+            }
+        }
+    }
+    
+    private void nextTarget() {
+        holdRemaining = 0;
+        if (target + 1 < count) {
+            target++;
+        } else {
+            phase = Phase.LANDING;
+        }
+    }
+    
+    /**
+     * Move vertically towards an altitude within the climb and descent limits; returns meters moved
+     */
+    private double climbTowards(double targetAltitude, double dt) {
+        double wanted = (targetAltitude - altitude) / dt;
+        climbRate = Math.max(-MissionSimulatorService.MAX_DESCENT_RATE,
+            Math.min(MissionSimulatorService.MAX_CLIMB_RATE, wanted));
+        altitude += climbRate * dt;
+        return Math.abs(climbRate) * dt;
+    }
+    
+    /**
+     * Brake to a hover, drifting on while slowing down; returns meters moved
+     */
+    private double stopHorizontal(double dt) {
+        if (speed == 0) {
+            return 0;
+        }
+        double slowed = approach(speed, 0, MAX_ACCELERATION * dt);
+        double scale = slowed / speed;
+        velocityNorth *= scale;
+        velocityEast *= scale;
+        speed = slowed;
+        latitude += velocityNorth * dt / METERS_PER_DEGREE;
+        longitude += velocityEast * dt / (METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude)));
+        return speed * dt;
+    }
+    
+    private void travel(double horizontal, double vertical) {
+        distance += Math.sqrt(horizontal * horizontal + vertical * vertical);
+    }
+    
+    private static double approach(double value, double goal, double maxChange) {
+        return value < goal ? Math.min(goal, value + maxChange) : Math.max(goal, value - maxChange);
+    }
+    
+    /**
+     * Change of direction at waypoint i, in radians (0 = straight on)
+     */
+    private double turnAngle(int i) {
+        double scale = Math.cos(Math.toRadians(latitudes[i]));
+        double inNorth = latitudes[i] - latitudes[i - 1];
+        double inEast = (longitudes[i] - longitudes[i - 1]) * scale;
+        double outNorth = latitudes[i + 1] - latitudes[i];
+        double outEast = (longitudes[i + 1] - longitudes[i]) * scale;
+        double inLength = Math.hypot(inNorth, inEast);
+        double outLength = Math.hypot(outNorth, outEast);
+        if (inLength == 0 || outLength == 0) {
+            return Math.PI;
+        }
+        double cos = (inNorth * outNorth + inEast * outEast) / (inLength * outLength);
+        return Math.acos(Math.max(-1, Math.min(1, cos)));
+    }
+    
+    public Phase getPhase() {
+        return phase;
+    }
+    
+    /**
+     * Index of the waypoint being flown to
+     */
+    public int getCurrentWaypoint() {
+        return target;
+    }
+    
+    public int getLastReachedWaypoint() {
+        return lastReached;
+    }
+    
+    public int getWaypointCount() {
+        return count;
+    }
+    
+    public double getLatitude() {
+        return latitude;
+    }
+    
+    public double getLongitude() {
+        return longitude;
+    }
+    
+    /**
+     * Altitude above the take-off point, meters
+     */
+    public double getAltitude() {
+        return altitude;
+    }
+    
+    public double getGroundSpeed() {
+        return speed;
+    }
+    
+    public double getVelocityNorth() {
+        return velocityNorth;
+    }
+    
+    public double getVelocityEast() {
+        return velocityEast;
+    }
+    
+    /**
+     * Vertical speed, positive up
+     */
+    public double getClimbRate() {
+        return climbRate;
+    }
+    
+    /**
+     * Direction of travel in degrees from north
+     */
+    public double getHeading() {
+        double degrees = Math.toDegrees(Math.atan2(velocityEast, velocityNorth));
+        return degrees < 0 ? degrees + 360 : degrees;
+    }
+    
+    public double getBattery() {
+        return battery;
+    }
+    
+    /**
+     * Simulated seconds since take-off
+     */
+    public double getElapsed() {
+        return elapsed;
+    }
+    
+    /**
+     * Distance flown, horizontal and vertical, meters
+     */
+    public double getDistance() {
+        return distance;
+    }
+}
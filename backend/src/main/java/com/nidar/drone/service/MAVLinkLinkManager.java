@@ -0,0 +1,259 @@
+package com.nidar.drone.service;
+
+import com.nidar.drone.mavlink.MAVLinkLink;
+import com.nidar.drone.model.Drone;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Registry of the vehicles reachable over the MAVLink channel.
+ *
+ * All vehicles share one UDP channel: every MAVProxy instance pushes to the same local port and
+ * frames are routed by MAVLink system id, so each vehicle in the fleet must use a distinct
+ * SYSID_THISMAV. A registered {@link Drone} is matched to its vehicle through Drone.systemId;
+ * its mavproxyHost/mavproxyPort are where frames go until the vehicle's own traffic is seen,
+ * after which replies follow the address the traffic comes from.
+ *
+ * Requests that do not name a drone go to the first autopilot heard on the channel, or to
+ * mavproxy.host:mavproxy.port before any vehicle has been heard (the single-vehicle setup).
+ */
+@Service
+@Slf4j
+public class MAVLinkLinkManager {
+    
+    private static final int MAX_SYSTEMS = 256;
+    
+    // Indexed by MAVLink system id
+    private final AtomicReferenceArray<VehicleConnection> connections = new AtomicReferenceArray<>(MAX_SYSTEMS);
+    private final Map<Long, Drone> drones = new ConcurrentHashMap<>();
+    
+    private volatile DatagramChannel channel;
+    private volatile VehicleConnection defaultConnection;
+    private volatile VehicleConnection primary;
+    
+    /**
+     * Bind the shared channel on the given port. Frames for not-yet-identified vehicles go to defaultTarget.
+     */
+    public synchronized DatagramChannel open(int port, InetSocketAddress defaultTarget) throws IOException {
+        DatagramChannel opened = DatagramChannel.open();
+        try {
+            opened.bind(new InetSocketAddress(port));
+        } catch (IOException e) {
+            opened.close();
+            throw e;
+        }
+        
+        channel = opened;
+        defaultConnection = new VehicleConnection(0, new MAVLinkLink(opened, defaultTarget));
+        for (Drone drone : drones.values()) {
+            attach(drone);
+        }
+        return opened;
+    }
+    
+    public synchronized void close() {
+        DatagramChannel current = channel;
+        channel = null;
+        defaultConnection = null;
+        primary = null;
+        for (int i = 0; i < MAX_SYSTEMS; i++) {
+            connections.set(i, null);
+        }
+        
+        try {
+            if (current != null && current.isOpen()) {
+                current.close();
+            }
+        } catch (IOException e) {
+            log.warn("Error closing MAVLink channel", e);
+        }
+    }
+    
+    /**
+     * Register or update a drone; called whenever a Drone is created or changed
+     */
+    public synchronized void register(Drone drone) {
+        if (drone.getId() == null) {
+            return;
+        }
+        
+        Drone previous = drones.put(drone.getId(), drone);
+        if (previous != null) {
+            detach(previous);
+        }
+        if (drone.getSystemId() != null) {
+            drones.values().stream()
+                .filter(other -> !other.getId().equals(drone.getId()) && drone.getSystemId().equals(other.getSystemId()))
+                .forEach(other -> log.warn("Drones {} and {} share MAVLink system id {}",
+                    other.getId(), drone.getId(), drone.getSystemId()));
+        }
+        attach(drone);
+    }
+    
+    public synchronized void unregister(Long droneId) {
+        Drone previous = drones.remove(droneId);
+        if (previous != null) {
+            detach(previous);
+        }
+    }
+    
+    /**
+     * Connection for a frame received from systemId at source, created on first contact.
+     * Called on the receive thread for every frame.
+     */
+    public VehicleConnection onTraffic(int systemId, InetSocketAddress source) {
+        VehicleConnection connection = connections.get(systemId);
+        if (connection == null) {
+            connection = getOrCreate(systemId, source);
+            if (connection == null) {
+                return null;
+            }
+            log.info("Discovered vehicle with MAVLink system id {} at {}", systemId, source);
+        }
+        
+        MAVLinkLink link = connection.getLink();
+        if (!source.equals(link.getTarget())) {
+            link.setTarget(source);
+            log.info("MAVLink traffic for system id {} from {}", systemId, source);
+        }
+        return connection;
+    }
+    
+    /**
+     * Record that the vehicle's autopilot has been heard; the first one becomes the default target
+     */
+    public void onAutopilotHeartbeat(VehicleConnection connection, int componentId) {
+        MAVLinkLink link = connection.getLink();
+        if (link.getTargetComponent() == 0) {
+            link.setTargetComponent(componentId);
+            log.info("Targeting vehicle system id {} component {}", connection.getSystemId(), componentId);
+        }
+        if (primary == null) {
+            primary = connection;
+        }
+    }
+    
+    /**
+     * Connection used to address a drone, or the default vehicle when droneId is null
+     */
+    public VehicleConnection resolve(Long droneId) {
+        if (channel == null) {
+            throw new RuntimeException("Not connected to MAVProxy");
+        }
+        
+        if (droneId == null) {
+            VehicleConnection connection = primary;
+            return connection != null ? connection : defaultConnection;
+        }
+        
+        Drone drone = drones.get(droneId);
+        if (drone == null) {
+            throw new RuntimeException("Drone not registered: " + droneId);
+        }
+        if (drone.getSystemId() == null) {
+            throw new RuntimeException("Drone " + droneId + " has no MAVLink system id");
+        }
+        if (!isValidSystemId(drone.getSystemId())) {
+            throw new RuntimeException("Drone " + droneId + " has MAVLink system id " + drone.getSystemId() +
+                ", outside 1 to " + (MAX_SYSTEMS - 1));
+        }
+        VehicleConnection connection;
+        synchronized (this) {
+            connection = attach(drone);
+        }
+        if (connection == null) {
+            throw new RuntimeException("Not connected to MAVProxy");
+        }
+        return connection;
+    }
+    
+    /**
+     * Connection without a known system id, whose uploads accept replies from any vehicle
+     */
+    public VehicleConnection getDefaultConnection() {
+        return defaultConnection;
+    }
+    
+    /**
+     * Whether a drone's system id can address a vehicle: 1 to 255, 0 being broadcast
+     */
+    public static boolean isValidSystemId(Integer systemId) {
+        return systemId != null && systemId >= 1 && systemId < MAX_SYSTEMS;
+    }
+    
+    public List<VehicleConnection> getConnections() {
+        List<VehicleConnection> result = new ArrayList<>();
+        for (int i = 0; i < MAX_SYSTEMS; i++) {
+            VehicleConnection connection = connections.get(i);
+            if (connection != null) {
+                result.add(connection);
+            }
+        }
+        return result;
+    }
+    
+    private VehicleConnection attach(Drone drone) {
+        Integer systemId = drone.getSystemId();
+        if (!isValidSystemId(systemId)) {
+            return null;
+        }
+        
+        VehicleConnection connection = getOrCreate(systemId, targetOf(drone));
+        if (connection != null) {
+            connection.setDrone(drone);
+        }
+        return connection;
+    }
+    
+    private void detach(Drone drone) {
+        Integer systemId = drone.getSystemId();
+        if (!isValidSystemId(systemId)) {
+            return;
+        }
+        
+        VehicleConnection connection = connections.get(systemId);
+        if (connection != null && drone.getId().equals(connection.getDroneId())) {
+            connection.setDrone(null);
+        }
+    }
+    
+    private VehicleConnection getOrCreate(int systemId, InetSocketAddress target) {
+        VehicleConnection existing = connections.get(systemId);
+        if (existing != null) {
+            return existing;
+        }
+        
+        VehicleConnection fallback = defaultConnection;
+        if (fallback == null) {
+            return null;
+        }
+        
+        MAVLinkLink link = new MAVLinkLink(fallback.getLink().getChannel(),
+            target != null ? target : fallback.getLink().getTarget());
+        link.setTargetSystem(systemId);
+        VehicleConnection created = new VehicleConnection(systemId, link);
+        for (Drone drone : drones.values()) {
+            if (Integer.valueOf(systemId).equals(drone.getSystemId())) {
+                created.setDrone(drone);
+            }
+        }
+        
+        return connections.compareAndSet(systemId, null, created) ? created : connections.get(systemId);
+    }
+    
+    private InetSocketAddress targetOf(Drone drone) {
+        if (drone.getMavproxyHost() == null || drone.getMavproxyPort() == null) {
+            return null;
+        }
+        return new InetSocketAddress(drone.getMavproxyHost(), drone.getMavproxyPort());
+    }
+}
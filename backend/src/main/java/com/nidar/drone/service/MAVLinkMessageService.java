@@ -1,48 +1,31 @@
 package com.nidar.drone.service;
 
+import com.nidar.drone.mavlink.MAVLinkCrc;
+import com.nidar.drone.mavlink.MAVLinkFrameEncoder;
+import com.nidar.drone.mavlink.MAVLinkLink;
+import com.nidar.drone.mavlink.MAVLinkMessages;
 import com.nidar.drone.model.*;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
-import java.io.DataOutputStream;
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.InetAddress;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.util.List;
 
 /**
  * Service for creating and sending MAVLink messages to Mission Planner/QGC
- * 
- * IMPORTANT PRODUCTION NOTE:
- * This implementation uses simplified CRC (value 0) for demonstration purposes.
- * For production use with real Mission Planner/QGC, you MUST:
- * 
- * 1. Implement proper CRC-16-CCITT calculation for each message type
- * 2. Include the CRC_EXTRA byte specific to each message ID
- * 3. Use a proper MAVLink library (e.g., mavlink-java) for production
- * 
- * Without proper CRC, Mission Planner/QGC will reject messages as corrupted.
- * The current implementation is suitable for testing the message structure
- * and understanding the MAVLink protocol flow.
+ *
+ * Frames are MAVLink 2.0 with the payload laid out in wire order (fields sorted by
+ * type size, as generated by mavgen) and a CRC-16/MCRF4XX checksum seeded with the
+ * message's CRC_EXTRA, see {@link MAVLinkCrc} and {@link MAVLinkMessages}.
+ *
+ * Payloads are written straight into the calling thread's direct frame buffer from
+ * {@link MAVLinkFrameEncoder} and sent through the link's DatagramChannel, so sending
+ * does not allocate intermediate arrays or packets.
  */
 @Service
 @Slf4j
 public class MAVLinkMessageService {
     
-    // MAVLink message IDs
-    private static final int MAVLINK_MSG_ID_MISSION_COUNT = 44;
-    private static final int MAVLINK_MSG_ID_MISSION_ITEM = 39;
-    private static final int MAVLINK_MSG_ID_MISSION_ITEM_INT = 73;
-    private static final int MAVLINK_MSG_ID_MISSION_CLEAR_ALL = 45;
-    private static final int MAVLINK_MSG_ID_MISSION_REQUEST = 40;
-    private static final int MAVLINK_MSG_ID_PARAM_SET = 23;
-    private static final int MAVLINK_MSG_ID_COMMAND_LONG = 76;
-    private static final int MAVLINK_MSG_ID_FENCE_POINT = 160;
-    private static final int MAVLINK_MSG_ID_RALLY_POINT = 175;
-    
     // MAVLink commands
     private static final int MAV_CMD_NAV_WAYPOINT = 16;
     private static final int MAV_CMD_NAV_TAKEOFF = 22;
@@ -50,44 +33,25 @@ public class MAVLinkMessageService {
     private static final int MAV_CMD_NAV_LOITER_UNLIM = 17;
     private static final int MAV_CMD_NAV_LOITER_TIME = 19;
     private static final int MAV_CMD_NAV_RETURN_TO_LAUNCH = 20;
+    private static final int MAV_CMD_COMPONENT_ARM_DISARM = 400;
+    private static final int MAV_CMD_DO_SET_MODE = 176;
+    private static final int MAV_MODE_FLAG_CUSTOM_MODE_ENABLED = 1;
+    private static final int COPTER_MODE_BRAKE = 17;
     
-    private static final byte MAVLINK_STX = (byte) 0xFD; // MAVLink 2.0
-    private byte sequenceNumber = 0;
+    private static final int MAV_FRAME_GLOBAL_RELATIVE_ALT = 3;
+    private static final int MAV_PARAM_TYPE_REAL32 = 9;
+    private static final int PARAM_ID_LENGTH = 16;
     
     /**
      * Send mission count to Mission Planner/QGC
      */
-    public boolean sendMissionCount(DatagramSocket socket, InetAddress address, int port, int count) {
+    public boolean sendMissionCount(MAVLinkLink link, int count) {
         try {
-            ByteBuffer buffer = ByteBuffer.allocate(280);
-            buffer.order(ByteOrder.LITTLE_ENDIAN);
-            
-            // MAVLink header
-            buffer.put(MAVLINK_STX);
-            buffer.put((byte) 4); // Payload length
-            buffer.put((byte) 0); // Incompat flags
-            buffer.put((byte) 0); // Compat flags
-            buffer.put(sequenceNumber++);
-            buffer.put((byte) 1); // System ID
-            buffer.put((byte) 1); // Component ID
-            buffer.put((byte) (MAVLINK_MSG_ID_MISSION_COUNT & 0xFF));
-            buffer.put((byte) ((MAVLINK_MSG_ID_MISSION_COUNT >> 8) & 0xFF));
-            buffer.put((byte) ((MAVLINK_MSG_ID_MISSION_COUNT >> 16) & 0xFF));
-            
-            // Payload
-            buffer.putShort((short) count); // Mission count
-            buffer.put((byte) 0); // Target system
-            buffer.put((byte) 0); // Target component
-            
-            // CRC (simplified - in production use proper CRC calculation)
-            buffer.putShort((short) 0);
-            
-            byte[] message = new byte[buffer.position()];
-            buffer.rewind();
-            buffer.get(message);
-            
-            DatagramPacket packet = new DatagramPacket(message, message.length, address, port);
-            socket.send(packet);
+            ByteBuffer payload = MAVLinkFrameEncoder.begin();
+            payload.putShort((short) count); // count
+            payload.put((byte) link.getTargetSystem()); // target_system
+            payload.put((byte) link.getTargetComponent()); // target_component
+            link.send(MAVLinkMessages.MISSION_COUNT, payload);
             
             log.info("Sent MISSION_COUNT: {} items", count);
             return true;
@@ -101,53 +65,30 @@ public class MAVLinkMessageService {
     /**
      * Send mission item to Mission Planner/QGC
      */
-    public boolean sendMissionItem(DatagramSocket socket, InetAddress address, int port, 
-                                   Waypoint waypoint, int sequence) {
+    public boolean sendMissionItem(MAVLinkLink link, Waypoint waypoint, int sequence) {
         try {
-            ByteBuffer buffer = ByteBuffer.allocate(280);
-            buffer.order(ByteOrder.LITTLE_ENDIAN);
-            
-            // MAVLink header
-            buffer.put(MAVLINK_STX);
-            buffer.put((byte) 37); // Payload length for MISSION_ITEM_INT
-            buffer.put((byte) 0); // Incompat flags
-            buffer.put((byte) 0); // Compat flags
-            buffer.put(sequenceNumber++);
-            buffer.put((byte) 1); // System ID
-            buffer.put((byte) 1); // Component ID
-            buffer.put((byte) (MAVLINK_MSG_ID_MISSION_ITEM_INT & 0xFF));
-            buffer.put((byte) ((MAVLINK_MSG_ID_MISSION_ITEM_INT >> 8) & 0xFF));
-            buffer.put((byte) ((MAVLINK_MSG_ID_MISSION_ITEM_INT >> 16) & 0xFF));
-            
-            // Payload - MISSION_ITEM_INT
-            buffer.putFloat(waypoint.getSpeed() != null ? waypoint.getSpeed().floatValue() : 0f); // param1
-            buffer.putFloat(waypoint.getAcceptanceRadius() != null ? waypoint.getAcceptanceRadius().floatValue() : 0f); // param2
-            buffer.putFloat(waypoint.getPassRadius() != null ? waypoint.getPassRadius().floatValue() : 0f); // param3
-            buffer.putFloat(waypoint.getYaw() != null ? waypoint.getYaw().floatValue() : 0f); // param4
-            buffer.putInt((int) (waypoint.getLatitude() * 1e7)); // x (latitude as int)
-            buffer.putInt((int) (waypoint.getLongitude() * 1e7)); // y (longitude as int)
-            buffer.putFloat(waypoint.getAltitude().floatValue()); // z (altitude)
-            buffer.putShort((short) sequence); // seq
-            buffer.putShort((short) getCommandId(waypoint.getCommand())); // command
-            buffer.put((byte) 0); // target_system
-            buffer.put((byte) 0); // target_component
-            buffer.put((byte) (waypoint.getFrame() != null ? waypoint.getFrame() : 3)); // frame (3 = MAV_FRAME_GLOBAL_RELATIVE_ALT)
-            buffer.put((byte) (sequence == 0 ? 1 : 0)); // current (1 for first waypoint)
-            buffer.put((byte) (waypoint.getAutocontinue() != null ? waypoint.getAutocontinue() : 1)); // autocontinue
-            
-            // CRC (simplified)
-            buffer.putShort((short) 0);
-            
-            byte[] message = new byte[buffer.position()];
-            buffer.rewind();
-            buffer.get(message);
-            
-            DatagramPacket packet = new DatagramPacket(message, message.length, address, port);
-            socket.send(packet);
-            
-            log.info("Sent MISSION_ITEM {}: {} at {},{},{}", 
-                sequence, waypoint.getCommand(), waypoint.getLatitude(), 
-                waypoint.getLongitude(), waypoint.getAltitude());
+            ByteBuffer payload = MAVLinkFrameEncoder.begin();
+            payload.putFloat(waypoint.getSpeed() != null ? waypoint.getSpeed().floatValue() : 0f); // param1
+            payload.putFloat(waypoint.getAcceptanceRadius() != null ? waypoint.getAcceptanceRadius().floatValue() : 0f); // param2
+            payload.putFloat(waypoint.getPassRadius() != null ? waypoint.getPassRadius().floatValue() : 0f); // param3
+            payload.putFloat(waypoint.getYaw() != null ? waypoint.getYaw().floatValue() : 0f); // param4
+            payload.putInt((int) (waypoint.getLatitude() * 1e7)); // x (latitude as int)
+            payload.putInt((int) (waypoint.getLongitude() * 1e7)); // y (longitude as int)
+            payload.putFloat(waypoint.getAltitude().floatValue()); // z (altitude)
+            payload.putShort((short) sequence); // seq
+            payload.putShort((short) getCommandId(waypoint.getCommand())); // command
+            payload.put((byte) link.getTargetSystem()); // target_system
+            payload.put((byte) link.getTargetComponent()); // target_component
+            payload.put((byte) (waypoint.getFrame() != null ? waypoint.getFrame() : MAV_FRAME_GLOBAL_RELATIVE_ALT)); // frame
+            payload.put((byte) (sequence == 0 ? 1 : 0)); // current (1 for first waypoint)
+            payload.put((byte) (waypoint.getAutocontinue() != null ? waypoint.getAutocontinue() : 1)); // autocontinue
+            link.send(MAVLinkMessages.MISSION_ITEM_INT, payload);
+            
+            if (log.isDebugEnabled()) {
+                log.debug("Sent MISSION_ITEM_INT {}: {} at {},{},{}",
+                    sequence, waypoint.getCommand(), waypoint.getLatitude(),
+                    waypoint.getLongitude(), waypoint.getAltitude());
+            }
             return true;
             
         } catch (IOException e) {
@@ -159,46 +100,20 @@ public class MAVLinkMessageService {
     /**
      * Send parameter value to Mission Planner/QGC
      */
-    public boolean sendParameter(DatagramSocket socket, InetAddress address, int port, 
-                                 String paramName, float paramValue) {
+    public boolean sendParameter(MAVLinkLink link, String paramName, float paramValue) {
         try {
-            ByteBuffer buffer = ByteBuffer.allocate(280);
-            buffer.order(ByteOrder.LITTLE_ENDIAN);
-            
-            // MAVLink header
-            buffer.put(MAVLINK_STX);
-            buffer.put((byte) 23); // Payload length for PARAM_SET
-            buffer.put((byte) 0);
-            buffer.put((byte) 0);
-            buffer.put(sequenceNumber++);
-            buffer.put((byte) 1);
-            buffer.put((byte) 1);
-            buffer.put((byte) (MAVLINK_MSG_ID_PARAM_SET & 0xFF));
-            buffer.put((byte) ((MAVLINK_MSG_ID_PARAM_SET >> 8) & 0xFF));
-            buffer.put((byte) ((MAVLINK_MSG_ID_PARAM_SET >> 16) & 0xFF));
-            
-            // Payload
-            buffer.put((byte) 0); // target_system
-            buffer.put((byte) 0); // target_component
-            
-            // param_id (16 chars, null-padded)
-            byte[] paramBytes = new byte[16];
-            byte[] nameBytes = paramName.getBytes();
-            System.arraycopy(nameBytes, 0, paramBytes, 0, Math.min(nameBytes.length, 16));
-            buffer.put(paramBytes);
+            ByteBuffer payload = MAVLinkFrameEncoder.begin();
+            payload.putFloat(paramValue); // param_value
+            payload.put((byte) link.getTargetSystem()); // target_system
+            payload.put((byte) link.getTargetComponent()); // target_component
             
-            buffer.putFloat(paramValue); // param_value
-            buffer.put((byte) 1); // param_type (1 = MAV_PARAM_TYPE_REAL32)
+            // param_id (16 ASCII chars, null-padded)
+            for (int i = 0; i < PARAM_ID_LENGTH; i++) {
+                payload.put(i < paramName.length() ? (byte) paramName.charAt(i) : 0);
+            }
             
-            // CRC
-            buffer.putShort((short) 0);
-            
-            byte[] message = new byte[buffer.position()];
-            buffer.rewind();
-            buffer.get(message);
-            
-            DatagramPacket packet = new DatagramPacket(message, message.length, address, port);
-            socket.send(packet);
+            payload.put((byte) MAV_PARAM_TYPE_REAL32); // param_type
+            link.send(MAVLinkMessages.PARAM_SET, payload);
             
             log.info("Sent PARAM_SET: {}={}", paramName, paramValue);
             return true;
@@ -212,41 +127,16 @@ public class MAVLinkMessageService {
     /**
      * Send geofence point to Mission Planner/QGC
      */
-    public boolean sendGeofencePoint(DatagramSocket socket, InetAddress address, int port,
-                                    GeofencePoint point, int sequence, int totalPoints) {
+    public boolean sendGeofencePoint(MAVLinkLink link, GeofencePoint point, int sequence, int totalPoints) {
         try {
-            ByteBuffer buffer = ByteBuffer.allocate(280);
-            buffer.order(ByteOrder.LITTLE_ENDIAN);
-            
-            // MAVLink header
-            buffer.put(MAVLINK_STX);
-            buffer.put((byte) 12); // Payload length
-            buffer.put((byte) 0);
-            buffer.put((byte) 0);
-            buffer.put(sequenceNumber++);
-            buffer.put((byte) 1);
-            buffer.put((byte) 1);
-            buffer.put((byte) (MAVLINK_MSG_ID_FENCE_POINT & 0xFF));
-            buffer.put((byte) ((MAVLINK_MSG_ID_FENCE_POINT >> 8) & 0xFF));
-            buffer.put((byte) ((MAVLINK_MSG_ID_FENCE_POINT >> 16) & 0xFF));
-            
-            // Payload
-            buffer.put((byte) 0); // target_system
-            buffer.put((byte) 0); // target_component
-            buffer.put((byte) sequence); // idx
-            buffer.put((byte) totalPoints); // count
-            buffer.putFloat(point.getLatitude().floatValue()); // lat
-            buffer.putFloat(point.getLongitude().floatValue()); // lng
-            
-            // CRC
-            buffer.putShort((short) 0);
-            
-            byte[] message = new byte[buffer.position()];
-            buffer.rewind();
-            buffer.get(message);
-            
-            DatagramPacket packet = new DatagramPacket(message, message.length, address, port);
-            socket.send(packet);
+            ByteBuffer payload = MAVLinkFrameEncoder.begin();
+            payload.putFloat(point.getLatitude().floatValue()); // lat
+            payload.putFloat(point.getLongitude().floatValue()); // lng
+            payload.put((byte) link.getTargetSystem()); // target_system
+            payload.put((byte) link.getTargetComponent()); // target_component
+            payload.put((byte) sequence); // idx
+            payload.put((byte) totalPoints); // count
+            link.send(MAVLinkMessages.FENCE_POINT, payload);
             
             log.info("Sent FENCE_POINT {}/{}", sequence, totalPoints);
             return true;
@@ -260,45 +150,20 @@ public class MAVLinkMessageService {
     /**
      * Send rally point to Mission Planner/QGC
      */
-    public boolean sendRallyPoint(DatagramSocket socket, InetAddress address, int port,
-                                 RallyPoint point, int sequence, int totalPoints) {
+    public boolean sendRallyPoint(MAVLinkLink link, RallyPoint point, int sequence, int totalPoints) {
         try {
-            ByteBuffer buffer = ByteBuffer.allocate(280);
-            buffer.order(ByteOrder.LITTLE_ENDIAN);
-            
-            // MAVLink header
-            buffer.put(MAVLINK_STX);
-            buffer.put((byte) 19); // Payload length
-            buffer.put((byte) 0);
-            buffer.put((byte) 0);
-            buffer.put(sequenceNumber++);
-            buffer.put((byte) 1);
-            buffer.put((byte) 1);
-            buffer.put((byte) (MAVLINK_MSG_ID_RALLY_POINT & 0xFF));
-            buffer.put((byte) ((MAVLINK_MSG_ID_RALLY_POINT >> 8) & 0xFF));
-            buffer.put((byte) ((MAVLINK_MSG_ID_RALLY_POINT >> 16) & 0xFF));
-            
-            // Payload
-            buffer.put((byte) 0); // target_system
-            buffer.put((byte) 0); // target_component
-            buffer.put((byte) sequence); // idx
-            buffer.put((byte) totalPoints); // count
-            buffer.putInt((int) (point.getLatitude() * 1e7)); // lat
-            buffer.putInt((int) (point.getLongitude() * 1e7)); // lng
-            buffer.putShort(point.getAltitude().shortValue()); // alt
-            buffer.putShort(point.getBreakAltitude() != null ? point.getBreakAltitude().shortValue() : 0); // break_alt
-            buffer.putShort(point.getLandDirection() != null ? point.getLandDirection().shortValue() : 0); // land_dir
-            buffer.put((byte) 0); // flags
-            
-            // CRC
-            buffer.putShort((short) 0);
-            
-            byte[] message = new byte[buffer.position()];
-            buffer.rewind();
-            buffer.get(message);
-            
-            DatagramPacket packet = new DatagramPacket(message, message.length, address, port);
-            socket.send(packet);
+            ByteBuffer payload = MAVLinkFrameEncoder.begin();
+            payload.putInt((int) (point.getLatitude() * 1e7)); // lat
+            payload.putInt((int) (point.getLongitude() * 1e7)); // lng
+            payload.putShort(point.getAltitude().shortValue()); // alt
+            payload.putShort(point.getBreakAltitude() != null ? point.getBreakAltitude().shortValue() : 0); // break_alt
+            payload.putShort(point.getLandDirection() != null ? (short) (point.getLandDirection() * 100) : 0); // land_dir (cdeg)
+            payload.put((byte) link.getTargetSystem()); // target_system
+            payload.put((byte) link.getTargetComponent()); // target_component
+            payload.put((byte) sequence); // idx
+            payload.put((byte) totalPoints); // count
+            payload.put((byte) 0); // flags
+            link.send(MAVLinkMessages.RALLY_POINT, payload);
             
             log.info("Sent RALLY_POINT {}/{}", sequence, totalPoints);
             return true;
@@ -312,47 +177,22 @@ public class MAVLinkMessageService {
     /**
      * Send command (ARM, TAKEOFF, etc) to Mission Planner/QGC
      */
-    public boolean sendCommand(DatagramSocket socket, InetAddress address, int port,
-                              int command, float param1, float param2, float param3, 
+    public boolean sendCommand(MAVLinkLink link, int command, float param1, float param2, float param3,
                               float param4, float param5, float param6, float param7) {
         try {
-            ByteBuffer buffer = ByteBuffer.allocate(280);
-            buffer.order(ByteOrder.LITTLE_ENDIAN);
-            
-            // MAVLink header
-            buffer.put(MAVLINK_STX);
-            buffer.put((byte) 33); // Payload length for COMMAND_LONG
-            buffer.put((byte) 0);
-            buffer.put((byte) 0);
-            buffer.put(sequenceNumber++);
-            buffer.put((byte) 1);
-            buffer.put((byte) 1);
-            buffer.put((byte) (MAVLINK_MSG_ID_COMMAND_LONG & 0xFF));
-            buffer.put((byte) ((MAVLINK_MSG_ID_COMMAND_LONG >> 8) & 0xFF));
-            buffer.put((byte) ((MAVLINK_MSG_ID_COMMAND_LONG >> 16) & 0xFF));
-            
-            // Payload
-            buffer.put((byte) 0); // target_system
-            buffer.put((byte) 0); // target_component
-            buffer.putShort((short) command); // command
-            buffer.put((byte) 0); // confirmation
-            buffer.putFloat(param1);
-            buffer.putFloat(param2);
-            buffer.putFloat(param3);
-            buffer.putFloat(param4);
-            buffer.putFloat(param5);
-            buffer.putFloat(param6);
-            buffer.putFloat(param7);
-            
-            // CRC
-            buffer.putShort((short) 0);
-            
-            byte[] message = new byte[buffer.position()];
-            buffer.rewind();
-            buffer.get(message);
-            
-            DatagramPacket packet = new DatagramPacket(message, message.length, address, port);
-            socket.send(packet);
+            ByteBuffer payload = MAVLinkFrameEncoder.begin();
+            payload.putFloat(param1);
+            payload.putFloat(param2);
+            payload.putFloat(param3);
+            payload.putFloat(param4);
+            payload.putFloat(param5);
+            payload.putFloat(param6);
+            payload.putFloat(param7);
+            payload.putShort((short) command); // command
+            payload.put((byte) link.getTargetSystem()); // target_system
+            payload.put((byte) link.getTargetComponent()); // target_component
+            payload.put((byte) 0); // confirmation
+            link.send(MAVLinkMessages.COMMAND_LONG, payload);
             
             log.info("Sent COMMAND_LONG: command={}", command);
             return true;
@@ -363,6 +203,24 @@ public class MAVLinkMessageService {
         }
     }
     
+    /**
+     * Send a named vehicle command: ARM, DISARM, RTL, LAND or BRAKE (ArduCopter BRAKE mode)
+     */
+    public boolean sendNamedCommand(MAVLinkLink link, String command) {
+        switch (command.toUpperCase()) {
+            case "ARM": return sendCommand(link, MAV_CMD_COMPONENT_ARM_DISARM, 1, 0, 0, 0, 0, 0, 0);
+            case "DISARM": return sendCommand(link, MAV_CMD_COMPONENT_ARM_DISARM, 0, 0, 0, 0, 0, 0, 0);
+            case "RTL":
+            case "RETURN_TO_LAUNCH": return sendCommand(link, MAV_CMD_NAV_RETURN_TO_LAUNCH, 0, 0, 0, 0, 0, 0, 0);
+            case "LAND": return sendCommand(link, MAV_CMD_NAV_LAND, 0, 0, 0, 0, 0, 0, 0);
+            case "BRAKE": return sendCommand(link, MAV_CMD_DO_SET_MODE,
+                MAV_MODE_FLAG_CUSTOM_MODE_ENABLED, COPTER_MODE_BRAKE, 0, 0, 0, 0, 0);
+            default:
+                log.warn("Unsupported command: {}", command);
+                return false;
+        }
+    }
+    
     /**
      * Convert command string to MAVLink command ID
      */
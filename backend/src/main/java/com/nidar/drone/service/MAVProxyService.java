@@ -1,99 +1,306 @@
 package com.nidar.drone.service;
 
+import com.nidar.drone.config.SchedulingConfig;
+import com.nidar.drone.mavlink.MAVLinkFrameEncoder;
+import com.nidar.drone.mavlink.MAVLinkFrameHandler;
+import com.nidar.drone.mavlink.MAVLinkFrameParser;
+import com.nidar.drone.mavlink.MAVLinkLink;
+import com.nidar.drone.mavlink.MAVLinkMessages;
+import com.nidar.drone.mavlink.VehicleState;
 import com.nidar.drone.model.*;
+import com.nidar.drone.repository.DroneRepository;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledFuture;
+
+import static com.nidar.drone.mavlink.MAVLinkFrameParser.uint16;
+import static com.nidar.drone.mavlink.MAVLinkFrameParser.uint8;
 
 @Service
 @Slf4j
 public class MAVProxyService {
     
+    private static final int RECEIVE_BUFFER_SIZE = 64 * 1024;
+    
     @Value("${mavproxy.host}")
     private String mavproxyHost;
     
     @Value("${mavproxy.port}")
     private int mavproxyPort;
     
+    @Value("${mavproxy.simulation.enabled:false}")
+    private boolean simulationEnabled;
+    
+    @Value("${mavproxy.mission.item-timeout-ms:1500}")
+    private long missionItemTimeoutMs;
+    
+    @Value("${mavproxy.mission.max-retries:5}")
+    private int missionMaxRetries;
+    
     private final SimpMessagingTemplate messagingTemplate;
     private final TelemetryService telemetryService;
     private final MAVLinkMessageService mavLinkMessageService;
+    private final MAVLinkLinkManager linkManager;
+    private final DroneRepository droneRepository;
+    private final TaskScheduler taskScheduler;
+    private final FlightLogRecorder flightLogRecorder;
+    private final GeofenceMonitor geofenceMonitor;
     
-    private DatagramSocket udpSocket;
-    private InetAddress mavproxyAddress;
-    private boolean connected = false;
+    private DatagramChannel channel;
+    private Thread receiveThread;
+    private volatile boolean connected = false;
     private Random random = new Random();
     
+    // Source of the datagram being parsed; only touched by the receive thread
+    private InetSocketAddress currentSource;
+    private final MAVLinkFrameHandler frameHandler = this::onFrame;
+    
     public MAVProxyService(SimpMessagingTemplate messagingTemplate, 
                           TelemetryService telemetryService,
-                          MAVLinkMessageService mavLinkMessageService) {
+                          MAVLinkMessageService mavLinkMessageService,
+                          MAVLinkLinkManager linkManager,
+                          DroneRepository droneRepository,
+                          @Qualifier(SchedulingConfig.TASK_SCHEDULER) TaskScheduler taskScheduler,
+                          FlightLogRecorder flightLogRecorder,
+                          GeofenceMonitor geofenceMonitor) {
         this.messagingTemplate = messagingTemplate;
         this.telemetryService = telemetryService;
         this.mavLinkMessageService = mavLinkMessageService;
+        this.linkManager = linkManager;
+        this.droneRepository = droneRepository;
+        this.taskScheduler = taskScheduler;
+        this.flightLogRecorder = flightLogRecorder;
+        this.geofenceMonitor = geofenceMonitor;
     }
     
-    public boolean connect() {
+    /**
+     * Open the UDP link to MAVProxy.
+     * 
+     * Each MAVProxy instance is started with --out=udp:host:port and pushes MAVLink to that port,
+     * so we bind the configured port locally and route frames by MAVLink system id through
+     * {@link MAVLinkLinkManager}. Registered drones are matched by Drone.systemId.
+     */
+    public synchronized boolean connect() {
+        if (connected) {
+            return true;
+        }
+        
         try {
-            // In a real implementation, this would connect to MAVProxy
-            // For now, we'll simulate the connection
             log.info("Attempting to connect to MAVProxy at {}:{}", mavproxyHost, mavproxyPort);
+            
+            droneRepository.findAll().forEach(linkManager::register);
+            channel = linkManager.open(mavproxyPort,
+                new InetSocketAddress(InetAddress.getByName(mavproxyHost), mavproxyPort));
+            
             connected = true;
-            log.info("Successfully connected to MAVProxy");
+            receiveThread = new Thread(this::receiveLoop, "mavlink-receiver");
+            receiveThread.setDaemon(true);
+            receiveThread.start();
+            
+            log.info("Successfully connected to MAVProxy, listening on UDP port {}", mavproxyPort);
             return true;
         } catch (Exception e) {
             log.error("Failed to connect to MAVProxy", e);
             connected = false;
+            linkManager.close();
             return false;
         }
     }
     
-    public void disconnect() {
+    @PreDestroy
+    public synchronized void disconnect() {
         try {
-            if (udpSocket != null && !udpSocket.isClosed()) {
-                udpSocket.close();
-            }
             connected = false;
+            VehicleConnection defaultConnection = linkManager.getDefaultConnection();
+            if (defaultConnection != null) {
+                cancelUpload(defaultConnection);
+            }
+            linkManager.getConnections().forEach(this::cancelUpload);
+            linkManager.close();
+            if (receiveThread != null) {
+                receiveThread.join(1000);
+                receiveThread = null;
+            }
             log.info("Disconnected from MAVProxy");
         } catch (Exception e) {
             log.error("Error disconnecting from MAVProxy", e);
         }
     }
     
+    private void cancelUpload(VehicleConnection connection) {
+        MissionUploadSession upload = connection.getActiveUpload();
+        if (upload != null) {
+            upload.cancel("Disconnected from MAVProxy");
+        }
+    }
+    
     public boolean isConnected() {
         return connected;
     }
     
     /**
-     * Update telemetry data every second
-     * NOTE: Currently uses simulated data for testing without hardware.
+     * Vehicles seen on the link or registered with a MAVLink system id
+     */
+    public List<VehicleConnection> getVehicles() {
+        return linkManager.getConnections();
+    }
+    
+    /**
+     * Receive loop for the MAVLink link.
      * 
-     * To use real MAVProxy data:
-     * 1. Create a separate thread to listen on UDP socket
-     * 2. Parse incoming MAVLink messages (GLOBAL_POSITION_INT, ATTITUDE, VFR_HUD, etc.)
-     * 3. Update telemetry object with parsed values
-     * 4. Replace generateSimulatedTelemetry() call with real data
+     * Runs on its own thread and reuses a single direct buffer for every datagram; frames are
+     * decoded in place into the per-vehicle {@link VehicleState}, so steady-state reception
+     * does not allocate. A Telemetry sample is published whenever a new position arrives.
      */
-    @Scheduled(fixedRate = 1000) // Update every second
-    public void updateTelemetry() {
-        if (!connected) {
+    private void receiveLoop() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(RECEIVE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        
+        while (connected) {
+            try {
+                buffer.clear();
+                SocketAddress source = channel.receive(buffer);
+                if (source == null) {
+                    continue;
+                }
+                
+                currentSource = (InetSocketAddress) source;
+                buffer.flip();
+                MAVLinkFrameParser.parse(buffer, frameHandler);
+            } catch (ClosedChannelException e) {
+                break;
+            } catch (Exception e) {
+                log.warn("Error processing MAVLink datagram", e);
+            }
+        }
+        
+        log.info("MAVLink receive loop stopped");
+    }
+    
+    private void onFrame(int systemId, int componentId, int messageId,
+                         ByteBuffer buffer, int payloadOffset, int payloadLength) {
+        if (systemId == MAVLinkFrameEncoder.SYSTEM_ID) {
             return;
         }
         
-        // SIMULATION MODE: Generate fake telemetry for testing
-        // In production with real MAVProxy, this would parse actual MAVLink messages
-        Telemetry telemetry = generateSimulatedTelemetry();
-        telemetryService.saveTelemetry(telemetry);
+        VehicleConnection connection = linkManager.onTraffic(systemId, currentSource);
+        if (connection == null) {
+            return;
+        }
+        
+        switch (messageId) {
+            case MAVLinkMessages.MISSION_REQUEST_INT, MAVLinkMessages.MISSION_REQUEST -> {
+                MissionUploadSession upload = uploadFor(connection);
+                if (upload != null && isAddressedToUs(uint8(buffer, payloadOffset, payloadLength, 2))) {
+                    upload.onMissionRequest(uint16(buffer, payloadOffset, payloadLength, 0),
+                        uint8(buffer, payloadOffset, payloadLength, 4));
+                }
+                return;
+            }
+            case MAVLinkMessages.MISSION_ACK -> {
+                MissionUploadSession upload = uploadFor(connection);
+                if (upload != null && isAddressedToUs(uint8(buffer, payloadOffset, payloadLength, 0))) {
+                    upload.onMissionAck(uint8(buffer, payloadOffset, payloadLength, 2),
+                        uint8(buffer, payloadOffset, payloadLength, 3));
+                }
+                return;
+            }
+            default -> {
+            }
+        }
         
+        VehicleState state = connection.getState();
+        if (state.apply(messageId, buffer, payloadOffset, payloadLength)) {
+            publishPosition(connection, null);
+        }
+        
+        if (messageId == MAVLinkMessages.HEARTBEAT && state.isHeartbeatReceived()) {
+            linkManager.onAutopilotHeartbeat(connection, componentId);
+        }
+    }
+    
+    /**
+     * Publish the position fix just decoded into a vehicle's state: live telemetry, flight log
+     * and geofence monitoring. Called on the receive thread for real vehicles and by
+     * {@link SimulatedFlightService} for simulated ones, which pass their simulated clock as
+     * the timestamp (null means now). Simulated samples are only sent to the live topics and
+     * the geofence monitor; they are not stored, logged as flights or counted in statistics.
+     */
+    public void publishPosition(VehicleConnection connection, LocalDateTime timestamp) {
+        Telemetry telemetry = connection.getState().toTelemetry();
+        if (timestamp != null) {
+            telemetry.setTimestamp(timestamp);
+        }
+        telemetry.setDrone(connection.getDrone());
+        telemetry.setMission(connection.getMission());
+        if (connection.isSimulated()) {
+            sendTelemetry(telemetry);
+        } else {
+            // The recorder opens the mission's live statistics, so the arming sample is counted
+            flightLogRecorder.onPosition(connection, telemetry);
+            publishTelemetry(telemetry);
+        }
+        geofenceMonitor.onPosition(connection, telemetry);
+    }
+    
+    /**
+     * Upload waiting on this vehicle; an upload started before any vehicle was identified
+     * accepts the first vehicle that answers.
+     */
+    private MissionUploadSession uploadFor(VehicleConnection connection) {
+        MissionUploadSession upload = connection.getActiveUpload();
+        if (upload == null) {
+            VehicleConnection defaultConnection = linkManager.getDefaultConnection();
+            upload = defaultConnection != null ? defaultConnection.getActiveUpload() : null;
+        }
+        return upload;
+    }
+    
+    private boolean isAddressedToUs(int targetSystem) {
+        return targetSystem == MAVLinkFrameEncoder.SYSTEM_ID || targetSystem == 0;
+    }
+    
+    private void publishTelemetry(Telemetry telemetry) {
+        telemetryService.saveTelemetry(telemetry);
+        sendTelemetry(telemetry);
+    }
+    
+    private void sendTelemetry(Telemetry telemetry) {
         // Send telemetry via WebSocket to frontend
         messagingTemplate.convertAndSend("/topic/telemetry", telemetry);
+        if (telemetry.getDrone() != null) {
+            messagingTemplate.convertAndSend("/topic/telemetry/" + telemetry.getDrone().getId(), telemetry);
+        }
+    }
+    
+    /**
+     * Generate simulated telemetry every second when mavproxy.simulation.enabled is set,
+     * for testing the UI without a vehicle or SITL instance.
+     */
+    @Scheduled(fixedRate = 1000) // Update every second
+    public void updateTelemetry() {
+        if (!connected || !simulationEnabled) {
+            return;
+        }
+        
+        publishTelemetry(generateSimulatedTelemetry());
     }
     
     private Telemetry generateSimulatedTelemetry() {
@@ -112,41 +319,47 @@ public class MAVProxyService {
     }
     
     public boolean uploadMission(List<Waypoint> waypoints) {
+        return uploadMission(waypoints, null, null);
+    }
+    
+    /**
+     * Upload waypoints using the MAVLink mission protocol (see {@link MissionUploadSession}).
+     * Blocks until the vehicle acknowledges the mission or the upload times out.
+     * A null droneId targets the default vehicle.
+     */
+    public boolean uploadMission(List<Waypoint> waypoints, Long droneId,
+                                 MissionUploadSession.ProgressListener progressListener) {
         if (!connected) {
             log.error("Cannot upload mission: Not connected to MAVProxy");
             return false;
         }
         
-        try {
-            log.info("Uploading mission with {} waypoints to Mission Planner/QGC", waypoints.size());
-            
-            // Step 1: Send mission count
-            if (!mavLinkMessageService.sendMissionCount(udpSocket, mavproxyAddress, mavproxyPort, waypoints.size())) {
-                throw new RuntimeException("Failed to send mission count");
-            }
+        return uploadMission(linkManager.resolve(droneId), waypoints, progressListener);
+    }
+    
+    private boolean uploadMission(VehicleConnection connection, List<Waypoint> waypoints,
+                                  MissionUploadSession.ProgressListener progressListener) {
+        synchronized (connection.getUploadLock()) {
+            log.info("Uploading mission with {} waypoints to system id {}", waypoints.size(), connection.getSystemId());
             
-            // Small delay between messages
-            Thread.sleep(100);
+            MissionUploadSession upload = new MissionUploadSession(connection.getLink(), waypoints,
+                mavLinkMessageService, missionItemTimeoutMs, missionMaxRetries, progressListener);
+            connection.setActiveUpload(upload);
+            ScheduledFuture<?> timeoutCheck = taskScheduler.scheduleAtFixedRate(upload::checkTimeout,
+                Duration.ofMillis(Math.max(50, missionItemTimeoutMs / 4)));
             
-            // Step 2: Send each waypoint
-            for (int i = 0; i < waypoints.size(); i++) {
-                Waypoint wp = waypoints.get(i);
-                log.info("Sending waypoint {}: lat={}, lon={}, alt={}", 
-                    i, wp.getLatitude(), wp.getLongitude(), wp.getAltitude());
-                
-                if (!mavLinkMessageService.sendMissionItem(udpSocket, mavproxyAddress, mavproxyPort, wp, i)) {
-                    throw new RuntimeException("Failed to send waypoint " + i);
-                }
-                
-                // Small delay between waypoints
-                Thread.sleep(50);
+            try {
+                upload.start();
+                upload.getResult().join();
+                log.info("Mission uploaded successfully to Mission Planner/QGC");
+                return true;
+            } catch (CompletionException e) {
+                log.error("Failed to upload mission: {}", e.getCause().getMessage());
+                return false;
+            } finally {
+                timeoutCheck.cancel(false);
+                connection.setActiveUpload(null);
             }
-            
-            log.info("Mission uploaded successfully to Mission Planner/QGC");
-            return true;
-        } catch (Exception e) {
-            log.error("Failed to upload mission", e);
-            return false;
         }
     }
     
@@ -154,17 +367,27 @@ public class MAVProxyService {
      * Upload complete mission including waypoints, geofence, and rally points
      */
     public boolean uploadCompleteMission(Mission mission) {
+        return uploadCompleteMission(mission, null, null);
+    }
+    
+    /**
+     * Upload complete mission to a drone (null for the default vehicle),
+     * reporting waypoint upload progress to the listener
+     */
+    public boolean uploadCompleteMission(Mission mission, Long droneId,
+                                         MissionUploadSession.ProgressListener progressListener) {
         if (!connected) {
             log.error("Cannot upload mission: Not connected to MAVProxy");
             return false;
         }
         
         try {
-            log.info("Uploading complete mission '{}' to Mission Planner/QGC", mission.getName());
+            VehicleConnection connection = linkManager.resolve(droneId);
+            log.info("Uploading complete mission '{}' to system id {}", mission.getName(), connection.getSystemId());
             
             // Upload waypoints
             if (mission.getWaypoints() != null && !mission.getWaypoints().isEmpty()) {
-                if (!uploadMission(mission.getWaypoints())) {
+                if (!uploadMission(connection, mission.getWaypoints(), progressListener)) {
                     return false;
                 }
             }
@@ -172,14 +395,22 @@ public class MAVProxyService {
             // Upload geofence points
             if (mission.getGeofenceEnabled() && mission.getGeofencePoints() != null && 
                 !mission.getGeofencePoints().isEmpty()) {
-                uploadGeofence(mission.getGeofencePoints());
+                uploadGeofence(connection.getLink(), mission.getGeofencePoints());
             }
             
             // Upload rally points
             if (mission.getRallyPoints() != null && !mission.getRallyPoints().isEmpty()) {
-                uploadRallyPoints(mission.getRallyPoints());
+                uploadRallyPoints(connection.getLink(), mission.getRallyPoints());
             }
             
+            // Record the vehicle's telemetry against this mission from now on
+            Mission reference = new Mission();
+            reference.setId(mission.getId());
+            reference.setName(mission.getName());
+            geofenceMonitor.prepare(mission.getId());
+            connection.setMission(reference);
+            connection.setMissionWaypointCount(mission.getWaypoints() != null ? mission.getWaypoints().size() : 0);
+            
             log.info("Complete mission uploaded to Mission Planner/QGC");
             return true;
         } catch (Exception e) {
@@ -192,13 +423,16 @@ public class MAVProxyService {
      * Upload geofence points to Mission Planner/QGC
      */
     public boolean uploadGeofence(List<GeofencePoint> points) {
+        return uploadGeofence(linkManager.resolve(null).getLink(), points);
+    }
+    
+    private boolean uploadGeofence(MAVLinkLink link, List<GeofencePoint> points) {
         try {
             log.info("Uploading {} geofence points to Mission Planner/QGC", points.size());
             
             for (int i = 0; i < points.size(); i++) {
                 GeofencePoint point = points.get(i);
-                mavLinkMessageService.sendGeofencePoint(udpSocket, mavproxyAddress, mavproxyPort, 
-                    point, i, points.size());
+                mavLinkMessageService.sendGeofencePoint(link, point, i, points.size());
                 Thread.sleep(50);
             }
             
@@ -214,13 +448,16 @@ public class MAVProxyService {
      * Upload rally points to Mission Planner/QGC
      */
     public boolean uploadRallyPoints(List<RallyPoint> points) {
+        return uploadRallyPoints(linkManager.resolve(null).getLink(), points);
+    }
+    
+    private boolean uploadRallyPoints(MAVLinkLink link, List<RallyPoint> points) {
         try {
             log.info("Uploading {} rally points to Mission Planner/QGC", points.size());
             
             for (int i = 0; i < points.size(); i++) {
                 RallyPoint point = points.get(i);
-                mavLinkMessageService.sendRallyPoint(udpSocket, mavproxyAddress, mavproxyPort, 
-                    point, i, points.size());
+                mavLinkMessageService.sendRallyPoint(link, point, i, points.size());
                 Thread.sleep(50);
             }
             
@@ -232,22 +469,26 @@ public class MAVProxyService {
         }
     }
     
+    public boolean uploadParameters(List<VehicleParameter> parameters) {
+        return uploadParameters(parameters, null);
+    }
+    
     /**
-     * Upload vehicle parameters to Mission Planner/QGC
+     * Upload vehicle parameters to a drone (null for the default vehicle)
      */
-    public boolean uploadParameters(List<VehicleParameter> parameters) {
+    public boolean uploadParameters(List<VehicleParameter> parameters, Long droneId) {
         if (!connected) {
             log.error("Cannot upload parameters: Not connected to MAVProxy");
             return false;
         }
         
         try {
+            MAVLinkLink link = linkManager.resolve(droneId).getLink();
             log.info("Uploading {} parameters to Mission Planner/QGC", parameters.size());
             
             for (VehicleParameter param : parameters) {
                 float value = Float.parseFloat(param.getParameterValue());
-                mavLinkMessageService.sendParameter(udpSocket, mavproxyAddress, mavproxyPort, 
-                    param.getParameterName(), value);
+                mavLinkMessageService.sendParameter(link, param.getParameterName(), value);
                 Thread.sleep(50);
             }
             
@@ -260,15 +501,21 @@ public class MAVProxyService {
     }
     
     public boolean sendCommand(String command) {
+        return sendCommand(command, null);
+    }
+    
+    /**
+     * Send a named command (ARM, DISARM, RTL, LAND) to a drone (null for the default vehicle)
+     */
+    public boolean sendCommand(String command, Long droneId) {
         if (!connected) {
             log.error("Cannot send command: Not connected to MAVProxy");
             return false;
         }
         
         try {
-            // In a real implementation, this would send commands to MAVProxy
             log.info("Sending command: {}", command);
-            return true;
+            return mavLinkMessageService.sendNamedCommand(linkManager.resolve(droneId).getLink(), command);
         } catch (Exception e) {
             log.error("Failed to send command", e);
             return false;
@@ -0,0 +1,154 @@
+package com.nidar.drone.service;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.nidar.drone.model.Mission;
+import jakarta.annotation.PreDestroy;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Asynchronous mission deployment.
+ *
+ * Deploys run on a dedicated upload pool instead of the HTTP request thread. The mission is
+ * loaded in a short read-only transaction, uploaded with no transaction open, and only the
+ * final status change to DEPLOYED opens a (short) write transaction. Progress is published
+ * to /topic/upload/{missionId} as the vehicle pulls waypoints.
+ */
+@Service
+@Slf4j
+public class MissionDeploymentService {
+    
+    private static final Duration FINISHED_JOB_RETENTION = Duration.ofHours(1);
+    
+    public enum DeploymentStatus { QUEUED, UPLOADING, DEPLOYED, FAILED }
+    
+    @Data
+    public static class DeploymentJob {
+        private final String jobId;
+        private final Long missionId;
+        private final Long droneId;
+        private volatile DeploymentStatus status = DeploymentStatus.QUEUED;
+        private volatile int itemsSent;
+        private volatile int totalItems;
+        private volatile String message;
+        private final LocalDateTime createdAt = LocalDateTime.now();
+        private volatile LocalDateTime completedAt;
+        
+        @JsonIgnore
+        private final CompletableFuture<Mission> future = new CompletableFuture<>();
+    }
+    
+    private final MissionService missionService;
+    private final MAVProxyService mavProxyService;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ThreadPoolExecutor uploadExecutor;
+    private final Map<String, DeploymentJob> jobs = new ConcurrentHashMap<>();
+    
+    public MissionDeploymentService(MissionService missionService,
+                                    MAVProxyService mavProxyService,
+                                    SimpMessagingTemplate messagingTemplate,
+                                    @Value("${mission.deploy.pool-size:4}") int poolSize,
+                                    @Value("${mission.deploy.queue-capacity:100}") int queueCapacity) {
+        this.missionService = missionService;
+        this.mavProxyService = mavProxyService;
+        this.messagingTemplate = messagingTemplate;
+        this.uploadExecutor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("mission-upload-"));
+    }
+    
+    /**
+     * Queue a mission for upload to a drone (null for the default vehicle) and return immediately.
+     * The job's future completes with the DEPLOYED mission, or exceptionally on failure.
+     */
+    public DeploymentJob deployMissionAsync(Long missionId, Long droneId) {
+        if (!mavProxyService.isConnected()) {
+            throw new RuntimeException("Not connected to drone");
+        }
+        
+        DeploymentJob job = new DeploymentJob(UUID.randomUUID().toString(), missionId, droneId);
+        jobs.put(job.getJobId(), job);
+        
+        try {
+            uploadExecutor.execute(() -> runDeployment(job));
+        } catch (RejectedExecutionException e) {
+            finish(job, DeploymentStatus.FAILED, "Too many deployments in progress, try again later");
+            job.getFuture().completeExceptionally(new RuntimeException(job.getMessage()));
+        }
+        
+        log.info("Queued deployment {} for mission {}", job.getJobId(), missionId);
+        return job;
+    }
+    
+    public DeploymentJob getJob(String jobId) {
+        return jobs.get(jobId);
+    }
+    
+    private void runDeployment(DeploymentJob job) {
+        try {
+            Mission mission = missionService.getMissionForDeployment(job.getMissionId());
+            job.setTotalItems(mission.getWaypoints().size());
+            job.setStatus(DeploymentStatus.UPLOADING);
+            publish(job);
+            
+            int[] lastPercent = {-1};
+            boolean success = mavProxyService.uploadCompleteMission(mission, job.getDroneId(), (itemsSent, totalItems) -> {
+                job.setItemsSent(itemsSent);
+                int percent = itemsSent * 100 / totalItems;
+                if (percent != lastPercent[0]) {
+                    lastPercent[0] = percent;
+                    publish(job);
+                }
+            });
+            
+            if (!success) {
+                throw new RuntimeException("Failed to deploy mission to Mission Planner/QGC");
+            }
+            
+            Mission deployed = missionService.markDeployed(job.getMissionId());
+            finish(job, DeploymentStatus.DEPLOYED, "Mission deployed successfully");
+            job.getFuture().complete(deployed);
+        } catch (Exception e) {
+            log.error("Deployment {} of mission {} failed", job.getJobId(), job.getMissionId(), e);
+            finish(job, DeploymentStatus.FAILED, e.getMessage());
+            job.getFuture().completeExceptionally(e);
+        }
+    }
+    
+    private void finish(DeploymentJob job, DeploymentStatus status, String message) {
+        job.setStatus(status);
+        job.setMessage(message);
+        job.setCompletedAt(LocalDateTime.now());
+        publish(job);
+    }
+    
+    private void publish(DeploymentJob job) {
+        messagingTemplate.convertAndSend("/topic/upload/" + job.getMissionId(), job);
+    }
+    
+    @Scheduled(fixedRate = 60000)
+    public void purgeFinishedJobs() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(FINISHED_JOB_RETENTION);
+        jobs.values().removeIf(job -> job.getCompletedAt() != null && job.getCompletedAt().isBefore(cutoff));
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        uploadExecutor.shutdownNow();
+    }
+}
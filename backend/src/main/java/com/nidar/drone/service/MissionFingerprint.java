@@ -0,0 +1,126 @@
+package com.nidar.drone.service;
+
+import com.nidar.drone.energy.EnergyModel;
+import com.nidar.drone.model.Mission;
+import com.nidar.drone.model.Waypoint;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Hashes of everything a mission simulation reads.
+ *
+ * The content hash is a SHA-256 over the mission parameters the simulator uses, the energy model
+ * and each waypoint's position, speed, delay and acceptance radius in order, so it is the same
+ * for the same content across restarts and different for any change that can change a result.
+ * Each waypoint also gets a 64-bit hash of its own fields, which lets a later simulation find the
+ * waypoints (and legs) an edit left unchanged.
+ */
+final class MissionFingerprint {
+    
+    private static final byte VERSION = 1;
+    private static final long NULL = 0x7ff0_dead_0000_0001L; // a NaN pattern doubleToLongBits never returns
+    
+    private final String contentHash;
+    private final long flightParametersHash;
+    private final long[] waypointHashes;
+    
+    private MissionFingerprint(String contentHash, long flightParametersHash, long[] waypointHashes) {
+        this.contentHash = contentHash;
+        this.flightParametersHash = flightParametersHash;
+        this.waypointHashes = waypointHashes;
+    }
+    
+    static MissionFingerprint of(Mission mission, EnergyModel energyModel) {
+        MessageDigest digest = sha256();
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        
+        // Everything besides the waypoints that the flight itself depends on
+        long flight = mix(VERSION, bits(mission.getDefaultSpeed()));
+        flight = mix(flight, energyModel.getModel() != null ? energyModel.getModel().hashCode() : 0);
+        for (double coefficient : new double[] {
+                energyModel.getHoverDrain(), energyModel.getLinearSpeedDrain(), energyModel.getQuadraticSpeedDrain(),
+                energyModel.getClimbCostPerMeter(), energyModel.getDescentCostPerMeter(), energyModel.getDischargeSlope()}) {
+            flight = mix(flight, Double.doubleToLongBits(coefficient));
+        }
+        
+        buffer.put(VERSION)
+            .putLong(mission.getId() != null ? mission.getId() : Long.MIN_VALUE)
+            .putLong(bits(mission.getMaxAltitude()))
+            .putLong(bits(mission.getMaxDistance()))
+            .put((byte) (Boolean.TRUE.equals(mission.getGeofenceEnabled()) ? 1 : 0))
+            .putLong(flight);
+        digest.update(buffer.array(), 0, buffer.position());
+        if (energyModel.getModel() != null) {
+            digest.update(energyModel.getModel().getBytes(StandardCharsets.UTF_8));
+        }
+        
+        List<Waypoint> waypoints = mission.getWaypoints() != null ? mission.getWaypoints() : List.of();
+        long[] hashes = new long[waypoints.size()];
+        for (int i = 0; i < hashes.length; i++) {
+            Waypoint wp = waypoints.get(i);
+            buffer.clear();
+            buffer.putLong(bits(wp.getLatitude()))
+                .putLong(bits(wp.getLongitude()))
+                .putLong(bits(wp.getAltitude()))
+                .putLong(bits(wp.getSpeed()))
+                .putLong(bits(wp.getDelay()))
+                .putLong(bits(wp.getAcceptanceRadius()));
+            digest.update(buffer.array(), 0, buffer.position());
+            long hash = VERSION;
+            for (int offset = 0; offset < buffer.position(); offset += Long.BYTES) {
+                hash = mix(hash, buffer.getLong(offset));
+            }
+            hashes[i] = hash;
+        }
+        return new MissionFingerprint(HexFormat.of().formatHex(digest.digest()), flight, hashes);
+    }
+    
+    String getContentHash() {
+        return contentHash;
+    }
+    
+    /**
+     * Hash of the default speed and energy model; flights with equal hashes fly equal waypoints the same
+     */
+    long getFlightParametersHash() {
+        return flightParametersHash;
+    }
+    
+    long[] getWaypointHashes() {
+        return waypointHashes;
+    }
+    
+    private static long bits(Double value) {
+        return value != null ? Double.doubleToLongBits(value) : NULL;
+    }
+    
+    private static long bits(Integer value) {
+        return value != null ? value : NULL;
+    }
+    
+    /**
+     * Fold a value into a running hash (the MurmurHash3 64-bit finalizer after a multiply-add)
+     */
+    private static long mix(long hash, long value) {
+        long h = hash * 0x9E3779B97F4A7C15L + value;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+    
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
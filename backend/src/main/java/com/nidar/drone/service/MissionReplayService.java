@@ -1,27 +1,54 @@
 package com.nidar.drone.service;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.nidar.drone.dto.TelemetryPoint;
 import com.nidar.drone.model.Mission;
 import com.nidar.drone.model.Telemetry;
 import com.nidar.drone.repository.MissionRepository;
 import com.nidar.drone.repository.TelemetryRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class MissionReplayService {
     
+    // Bounds used when a time range is left open (within the MySQL DATETIME range)
+    private static final LocalDateTime EARLIEST = LocalDateTime.of(1970, 1, 1, 0, 0);
+    private static final LocalDateTime LATEST = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+    private static final int MAX_PAGE_SIZE = 5000;
+    private static final int STREAM_FLUSH_INTERVAL = 500;
+    
     private final MissionRepository missionRepository;
     private final TelemetryRepository telemetryRepository;
+    private final TelemetryService telemetryService;
+    private final ObjectMapper objectMapper;
     
-    public Map<String, Object> getMissionReplayData(Long missionId) {
+    /**
+     * Mission, its telemetry and statistics. When tolerance (meters) or resolution is given the
+     * returned track is downsampled with {@link TrackSimplifier}: rows are then streamed once into
+     * both a {@link TrackBuffer} and the statistics, so the full track is never materialized.
+     * Statistics always use every sample.
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Object> getMissionReplayData(Long missionId, Double tolerance, Integer resolution) {
         Map<String, Object> result = new HashMap<>();
         
         Mission mission = missionRepository.findById(missionId).orElse(null);
@@ -29,108 +56,186 @@ public class MissionReplayService {
             result.put("error", "Mission not found");
             return result;
         }
-        
-        // Get all telemetry data for the mission sorted by timestamp
-        List<Telemetry> telemetryData = telemetryRepository.findAll(Sort.by(Sort.Direction.ASC, "timestamp"));
-        
-        // Filter telemetry for this mission if mission reference exists
-        List<Telemetry> missionTelemetry = telemetryData.stream()
-            .filter(t -> t.getMission() != null && t.getMission().getId().equals(missionId))
-            .toList();
-        
         result.put("mission", mission);
-        result.put("telemetry", missionTelemetry);
-        result.put("totalPoints", missionTelemetry.size());
         
-        // Calculate mission statistics
-        if (!missionTelemetry.isEmpty()) {
-            Map<String, Object> stats = calculateMissionStatistics(missionTelemetry);
-            result.put("statistics", stats);
+        MissionStatisticsAccumulator statistics = new MissionStatisticsAccumulator();
+        int totalPoints;
+        if (tolerance != null || resolution != null) {
+            checkSimplification(tolerance, resolution);
+            TrackBuffer track = new TrackBuffer();
+            try (Stream<TelemetryPoint> points = telemetryRepository.streamMissionPoints(missionId, EARLIEST, LATEST)) {
+                points.forEach(point -> {
+                    track.add(point);
+                    statistics.add(point);
+                });
+            }
+            totalPoints = track.size();
+            List<TelemetryPoint> simplified = simplify(track, tolerance, resolution);
+            result.put("telemetry", simplified);
+            result.put("simplifiedPoints", simplified.size());
+        } else {
+            // Telemetry recorded against this mission, sorted by timestamp
+            List<Telemetry> missionTelemetry = telemetryRepository
+                .findByMission_IdAndTimestampBetweenOrderByTimestampAscIdAsc(missionId, EARLIEST, LATEST);
+            missionTelemetry.forEach(statistics::add);
+            totalPoints = missionTelemetry.size();
+            result.put("telemetry", missionTelemetry);
+        }
+        
+        result.put("totalPoints", totalPoints);
+        if (totalPoints > 0) {
+            result.put("statistics", statistics.toMap());
         }
         
         return result;
     }
     
-    public List<Telemetry> getTelemetryByMission(Long missionId) {
-        Mission mission = missionRepository.findById(missionId).orElse(null);
-        if (mission == null) {
-            return List.of();
+    /**
+     * Statistics of a mission. While a vehicle is armed on the mission they are read from the
+     * live accumulator of the current flight (see {@link TelemetryService#getLiveMissionStatistics});
+     * otherwise the recorded track is streamed through a {@link MissionStatisticsAccumulator} once.
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Object> getMissionStatistics(Long missionId) {
+        Map<String, Object> live = telemetryService.getLiveMissionStatistics(missionId);
+        if (live != null) {
+            live.put("live", true);
+            return live;
         }
         
-        List<Telemetry> allTelemetry = telemetryRepository.findAll(Sort.by(Sort.Direction.ASC, "timestamp"));
-        return allTelemetry.stream()
-            .filter(t -> t.getMission() != null && t.getMission().getId().equals(missionId))
-            .toList();
+        MissionStatisticsAccumulator statistics = new MissionStatisticsAccumulator();
+        try (Stream<TelemetryPoint> points = telemetryRepository.streamMissionPoints(missionId, EARLIEST, LATEST)) {
+            points.forEach(statistics::add);
+        }
+        Map<String, Object> result = statistics.toMap();
+        result.put("live", false);
+        return result;
     }
     
-    private Map<String, Object> calculateMissionStatistics(List<Telemetry> telemetry) {
-        Map<String, Object> stats = new HashMap<>();
-        
-        if (telemetry.isEmpty()) {
-            return stats;
+    /**
+     * Telemetry of a mission, optionally limited to [from, to]
+     */
+    public List<Telemetry> getTelemetryByMission(Long missionId, LocalDateTime from, LocalDateTime to) {
+        return telemetryRepository.findByMission_IdAndTimestampBetweenOrderByTimestampAscIdAsc(
+            missionId, from != null ? from : EARLIEST, to != null ? to : LATEST);
+    }
+    
+    /**
+     * Mission telemetry in [from, to] downsampled with {@link TrackSimplifier}. Rows are streamed
+     * into a {@link TrackBuffer} in one pass, so only the primitive columns and the kept samples
+     * are held in memory.
+     */
+    @Transactional(readOnly = true)
+    public List<TelemetryPoint> getSimplifiedTelemetry(Long missionId, LocalDateTime from, LocalDateTime to,
+                                                       Double tolerance, Integer resolution) {
+        TrackBuffer track = new TrackBuffer();
+        try (Stream<TelemetryPoint> points = telemetryRepository.streamMissionPoints(
+                 missionId, from != null ? from : EARLIEST, to != null ? to : LATEST)) {
+            points.forEach(track::add);
         }
-        
-        // Calculate max altitude
-        double maxAltitude = telemetry.stream()
-            .mapToDouble(t -> t.getAltitude() != null ? t.getAltitude() : 0.0)
-            .max()
-            .orElse(0.0);
-        
-        // Calculate max speed
-        double maxSpeed = telemetry.stream()
-            .mapToDouble(t -> t.getSpeed() != null ? t.getSpeed() : 0.0)
-            .max()
-            .orElse(0.0);
-        
-        // Calculate average speed
-        double avgSpeed = telemetry.stream()
-            .mapToDouble(t -> t.getSpeed() != null ? t.getSpeed() : 0.0)
-            .average()
-            .orElse(0.0);
-        
-        // Calculate total distance (simplified)
-        double totalDistance = 0.0;
-        for (int i = 1; i < telemetry.size(); i++) {
-            Telemetry prev = telemetry.get(i - 1);
-            Telemetry curr = telemetry.get(i);
+        List<TelemetryPoint> simplified = simplify(track, tolerance, resolution);
+        log.debug("Simplified mission {} track from {} to {} points", missionId, track.size(), simplified.size());
+        return simplified;
+    }
+    
+    /**
+     * Write a mission's telemetry to out as newline-delimited JSON, one {@link TelemetryPoint} per line.
+     * Rows are streamed from the database and written as they arrive, so memory use does not
+     * depend on the length of the mission and the client can start rendering immediately.
+     */
+    @Transactional(readOnly = true)
+    public void streamMissionTelemetry(Long missionId, LocalDateTime from, LocalDateTime to,
+                                       OutputStream out) throws IOException {
+        try (Stream<TelemetryPoint> points = telemetryRepository.streamMissionPoints(
+                 missionId, from != null ? from : EARLIEST, to != null ? to : LATEST)) {
+            int count = writeNdjson(points.iterator(), out);
+            log.debug("Streamed {} telemetry points for mission {}", count, missionId);
+        }
+    }
+    
+    /**
+     * Write points to out as newline-delimited JSON, flushing every STREAM_FLUSH_INTERVAL lines
+     */
+    public int writeNdjson(Iterator<TelemetryPoint> points, OutputStream out) throws IOException {
+        ObjectWriter writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.setRootValueSeparator(null);
             
-            if (prev.getLatitude() != null && prev.getLongitude() != null &&
-                curr.getLatitude() != null && curr.getLongitude() != null) {
-                totalDistance += calculateDistance(
-                    prev.getLatitude(), prev.getLongitude(),
-                    curr.getLatitude(), curr.getLongitude()
-                );
+            int count = 0;
+            while (points.hasNext()) {
+                writer.writeValue(generator, points.next());
+                generator.writeRaw('\n');
+                if (++count % STREAM_FLUSH_INTERVAL == 0) {
+                    generator.flush();
+                }
             }
+            generator.flush();
+            return count;
         }
-        
-        // Battery usage
-        Telemetry first = telemetry.get(0);
-        Telemetry last = telemetry.get(telemetry.size() - 1);
-        double batteryUsed = (first.getBattery() != null && last.getBattery() != null) 
-            ? first.getBattery() - last.getBattery() 
-            : 0.0;
-        
-        stats.put("maxAltitude", maxAltitude);
-        stats.put("maxSpeed", maxSpeed);
-        stats.put("avgSpeed", avgSpeed);
-        stats.put("totalDistance", totalDistance);
-        stats.put("batteryUsed", batteryUsed);
-        stats.put("duration", telemetry.size()); // in seconds (assuming 1Hz telemetry)
-        stats.put("startTime", first.getTimestamp());
-        stats.put("endTime", last.getTimestamp());
-        
-        return stats;
     }
     
-    private double calculateDistance(double lat1, double lon1, double lat2, double lon2) {
-        // Haversine formula to calculate distance between two GPS coordinates
-        double R = 6371000; // Earth radius in meters
-        double dLat = Math.toRadians(lat2 - lat1);
-        double dLon = Math.toRadians(lon2 - lon1);
-        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) +
-                   Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) *
-                   Math.sin(dLon / 2) * Math.sin(dLon / 2);
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-        return R * c;
+    /**
+     * One keyset page of a mission's telemetry. Pass the returned nextCursor back as
+     * afterTimestamp/afterId to get the following page; it is null after the last page.
+     */
+    public Map<String, Object> getMissionTelemetryPage(Long missionId, LocalDateTime from, LocalDateTime to,
+                                                       LocalDateTime afterTimestamp, Long afterId, int limit) {
+        int size = pageSize(limit);
+        List<Telemetry> page = telemetryRepository.findMissionPage(missionId,
+            afterTimestamp != null ? afterTimestamp : (from != null ? from : EARLIEST),
+            afterId != null ? afterId : 0L, to != null ? to : LATEST, PageRequest.of(0, size));
+        return toPage(page, size);
+    }
+    
+    /**
+     * One keyset page of a drone's telemetry, as {@link #getMissionTelemetryPage}
+     */
+    public Map<String, Object> getDroneTelemetryPage(Long droneId, LocalDateTime from, LocalDateTime to,
+                                                     LocalDateTime afterTimestamp, Long afterId, int limit) {
+        int size = pageSize(limit);
+        List<Telemetry> page = telemetryRepository.findDronePage(droneId,
+            afterTimestamp != null ? afterTimestamp : (from != null ? from : EARLIEST),
+            afterId != null ? afterId : 0L, to != null ? to : LATEST, PageRequest.of(0, size));
+        return toPage(page, size);
+    }
+    
+    private List<TelemetryPoint> simplify(TrackBuffer track, Double tolerance, Integer resolution) {
+        checkSimplification(tolerance, resolution);
+        int[] kept = TrackSimplifier.simplify(track, tolerance, resolution);
+        List<TelemetryPoint> points = new ArrayList<>(kept.length);
+        for (int i : kept) {
+            points.add(track.toPoint(i));
+        }
+        return points;
+    }
+    
+    private void checkSimplification(Double tolerance, Integer resolution) {
+        if (tolerance != null && tolerance <= 0) {
+            throw new RuntimeException("tolerance must be positive");
+        }
+        if (resolution != null && resolution < 3) {
+            throw new RuntimeException("resolution must be at least 3");
+        }
+    }
+    
+    private int pageSize(int limit) {
+        return Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+    }
+    
+    private Map<String, Object> toPage(List<Telemetry> page, int size) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("telemetry", page);
+        result.put("count", page.size());
+        
+        if (page.size() == size) {
+            Telemetry last = page.get(page.size() - 1);
+            Map<String, Object> cursor = new HashMap<>();
+            cursor.put("afterTimestamp", last.getTimestamp());
+            cursor.put("afterId", last.getId());
+            result.put("nextCursor", cursor);
+        } else {
+            result.put("nextCursor", null);
+        }
+        return result;
     }
 }
@@ -27,7 +27,7 @@ public class MissionService {
     
     private final MissionRepository missionRepository;
     private final WaypointRepository waypointRepository;
-    private final MAVProxyService mavProxyService;
+    private final GeofenceService geofenceService;
     
     @Transactional
     public Mission createMission(Mission mission) {
@@ -44,6 +44,8 @@ public class MissionService {
             waypointRepository.saveAll(mission.getWaypoints());
         }
         
+        // The id may have been looked up, and cached as missing, before the mission existed
+        geofenceService.invalidate(savedMission.getId());
         return savedMission;
     }
     
@@ -55,25 +57,29 @@ public class MissionService {
         return missionRepository.findById(id).orElse(null);
     }
     
-    @Transactional
-    public Mission deployMission(Long missionId) {
+    /**
+     * Load a mission with everything the uploader needs, so the upload itself can run
+     * outside of any transaction
+     */
+    @Transactional(readOnly = true)
+    public Mission getMissionForDeployment(Long missionId) {
         Mission mission = missionRepository.findById(missionId)
             .orElseThrow(() -> new RuntimeException("Mission not found"));
         
-        if (!mavProxyService.isConnected()) {
-            throw new RuntimeException("Not connected to drone");
-        }
-        
-        // Upload complete mission including waypoints, geofence, and rally points
-        boolean success = mavProxyService.uploadCompleteMission(mission);
+        mission.getWaypoints().size();
+        mission.getGeofencePoints().size();
+        mission.getRallyPoints().size();
+        return mission;
+    }
+    
+    @Transactional
+    public Mission markDeployed(Long missionId) {
+        Mission mission = missionRepository.findById(missionId)
+            .orElseThrow(() -> new RuntimeException("Mission not found"));
         
-        if (success) {
-            mission.setStatus("DEPLOYED");
-            mission.setDeployedAt(LocalDateTime.now());
-            return missionRepository.save(mission);
-        } else {
-            throw new RuntimeException("Failed to deploy mission to Mission Planner/QGC");
-        }
+        mission.setStatus("DEPLOYED");
+        mission.setDeployedAt(LocalDateTime.now());
+        return missionRepository.save(mission);
     }
     
     @Transactional
@@ -1,8 +1,12 @@
 package com.nidar.drone.service;
 
+import com.nidar.drone.energy.EnergyModel;
+import com.nidar.drone.geofence.CompiledGeofence;
+import com.nidar.drone.geofence.GeofenceViolation;
 import com.nidar.drone.model.Mission;
 import com.nidar.drone.model.Waypoint;
 import lombok.Data;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
@@ -13,14 +17,16 @@ import java.util.List;
  * Service for simulating and validating missions before deployment
  */
 @Service
+@RequiredArgsConstructor
 @Slf4j
 public class MissionSimulatorService {
     
-    private static final double EARTH_RADIUS_KM = 6371.0;
     private static final double MAX_SAFE_ALTITUDE = 120.0; // meters (FAA limit)
     private static final double MIN_WAYPOINT_DISTANCE = 5.0; // meters
-    private static final double MAX_CLIMB_RATE = 5.0; // m/s
-    private static final double MAX_DESCENT_RATE = 3.0; // m/s
+    static final double MAX_CLIMB_RATE = 5.0; // m/s
+    static final double MAX_DESCENT_RATE = 3.0; // m/s
+    
+    private final GeofenceService geofenceService;
     
     @Data
     public static class SimulationResult {
@@ -29,7 +35,11 @@ public class MissionSimulatorService {
         private List<String> warnings;
         private double totalDistance; // meters
         private double estimatedFlightTime; // seconds
+        private double simulatedFlightTime; // seconds, take-off to landing on the kinematic simulator
         private double estimatedBatteryUsage; // percentage
+        private String contentHash; // of the mission content simulated, when cached (see SimulationResultCache)
+        private String energyModel; // drone model whose energy model was used, null for the default
+        private boolean energyModelFitted; // fitted from telemetry rather than the default model
         private double maxAltitude; // meters
         private double avgSpeed; // m/s
         private int waypointCount;
@@ -38,13 +48,53 @@ public class MissionSimulatorService {
             this.errors = new ArrayList<>();
             this.warnings = new ArrayList<>();
         }
+        
+        /**
+         * A copy with its own error and warning lists
+         */
+        public SimulationResult copy() {
+            SimulationResult copy = new SimulationResult();
+            copy.valid = valid;
+            copy.errors.addAll(errors);
+            copy.warnings.addAll(warnings);
+            copy.contentHash = contentHash;
+            copy.energyModel = energyModel;
+            copy.energyModelFitted = energyModelFitted;
+            copy.totalDistance = totalDistance;
+            copy.estimatedFlightTime = estimatedFlightTime;
+            copy.simulatedFlightTime = simulatedFlightTime;
+            copy.estimatedBatteryUsage = estimatedBatteryUsage;
+            copy.maxAltitude = maxAltitude;
+            copy.avgSpeed = avgSpeed;
+            copy.waypointCount = waypointCount;
+            return copy;
+        }
     }
     
     /**
-     * Simulate and validate a mission
+     * Simulate and validate a mission with the default energy model
      */
     public SimulationResult simulateMission(Mission mission) {
+        return simulateMission(mission, EnergyModel.DEFAULT);
+    }
+    
+    /**
+     * Simulate and validate a mission, predicting battery usage with the given energy model
+     */
+    public SimulationResult simulateMission(Mission mission, EnergyModel energyModel) {
+        return simulateMission(mission, energyModel, null, null);
+    }
+    
+    /**
+     * Simulate a mission, reusing what the previous simulation of an earlier version of it computed
+     * for unchanged waypoints and legs (previous may be null), and recording the same in trace
+     * (may be null) for the next one
+     */
+    SimulationResult simulateMission(Mission mission, EnergyModel energyModel,
+                                     SimulationTrace previous, SimulationTrace trace) {
         SimulationResult result = new SimulationResult();
+        result.setEnergyModel(energyModel.getModel());
+        result.setEnergyModelFitted(energyModel.isFitted());
         
         List<Waypoint> waypoints = mission.getWaypoints();
         if (waypoints == null || waypoints.isEmpty()) {
@@ -61,13 +111,15 @@ public class MissionSimulatorService {
             validateWaypoint(wp, i, result);
         }
         
-        // Calculate mission metrics
-        calculateDistance(waypoints, result);
-        calculateFlightTime(waypoints, mission, result);
-        calculateBatteryUsage(result);
-        checkAltitudeChanges(waypoints, result);
-        checkWaypointSpacing(waypoints, result);
-        checkGeofence(waypoints, mission, result);
+        // Calculate mission metrics over legs measured once
+        MissionGeometry geometry = MissionGeometry.of(waypoints);
+        calculateDistance(geometry, result);
+        calculateFlightTime(waypoints, geometry, mission, result);
+        simulateFlightTime(waypoints, mission, energyModel, previous, trace, result);
+        calculateBatteryUsage(waypoints, geometry, mission, energyModel, result);
+        checkAltitudeChanges(geometry, result);
+        checkWaypointSpacing(geometry, result);
+        checkGeofence(geometry, mission, previous, trace, result);
         
         // Determine if valid
         result.setValid(result.getErrors().isEmpty());
@@ -108,66 +160,29 @@ public class MissionSimulatorService {
     /**
      * Calculate total mission distance
      */
-    private void calculateDistance(List<Waypoint> waypoints, SimulationResult result) {
+    private void calculateDistance(MissionGeometry geometry, SimulationResult result) {
         double totalDistance = 0;
         
-        for (int i = 0; i < waypoints.size() - 1; i++) {
-            Waypoint wp1 = waypoints.get(i);
-            Waypoint wp2 = waypoints.get(i + 1);
-            
-            double distance = calculateDistance(
-                wp1.getLatitude(), wp1.getLongitude(), wp1.getAltitude(),
-                wp2.getLatitude(), wp2.getLongitude(), wp2.getAltitude()
-            );
-            
-            totalDistance += distance;
+        for (int i = 0; i < geometry.legCount(); i++) {
+            totalDistance += geometry.lengths[i];
         }
         
         result.setTotalDistance(totalDistance);
     }
     
-    /**
-     * Calculate distance between two points (including altitude difference)
-     */
-    private double calculateDistance(double lat1, double lon1, double alt1,
-                                     double lat2, double lon2, double alt2) {
-        // Haversine formula for horizontal distance
-        double dLat = Math.toRadians(lat2 - lat1);
-        double dLon = Math.toRadians(lon2 - lon1);
-        
-        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) +
-                   Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) *
-                   Math.sin(dLon / 2) * Math.sin(dLon / 2);
-        
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-        double horizontalDistance = EARTH_RADIUS_KM * c * 1000; // Convert to meters
-        
-        // Include altitude difference
-        double altitudeDiff = alt2 - alt1;
-        double totalDistance = Math.sqrt(horizontalDistance * horizontalDistance + 
-                                        altitudeDiff * altitudeDiff);
-        
-        return totalDistance;
-    }
-    
     /**
      * Calculate estimated flight time
      */
-    private void calculateFlightTime(List<Waypoint> waypoints, Mission mission, SimulationResult result) {
+    private void calculateFlightTime(List<Waypoint> waypoints, MissionGeometry geometry, Mission mission,
+                                     SimulationResult result) {
         double totalTime = 0;
         double defaultSpeed = mission.getDefaultSpeed() != null ? mission.getDefaultSpeed() : 10.0;
         
-        for (int i = 0; i < waypoints.size() - 1; i++) {
-            Waypoint wp1 = waypoints.get(i);
+        for (int i = 0; i < geometry.legCount(); i++) {
             Waypoint wp2 = waypoints.get(i + 1);
             
-            double distance = calculateDistance(
-                wp1.getLatitude(), wp1.getLongitude(), wp1.getAltitude(),
-                wp2.getLatitude(), wp2.getLongitude(), wp2.getAltitude()
-            );
-            
             double speed = wp2.getSpeed() != null ? wp2.getSpeed() : defaultSpeed;
-            totalTime += distance / speed;
+            totalTime += geometry.lengths[i] / speed;
             
             // Add delay at waypoint
             if (wp2.getDelay() != null) {
@@ -180,30 +195,56 @@ public class MissionSimulatorService {
     }
     
     /**
-     * Calculate estimated battery usage
-     * 
-     * SIMPLIFIED MODEL - Assumptions:
-     * - 20 minutes max flight time = 100% battery (typical for consumer drones)
-     * - 20% overhead for altitude changes and wind resistance
-     * - Linear discharge rate (real batteries have non-linear curves)
-     * - Does not account for: payload weight, temperature, battery age, wind, aggressive maneuvers
-     * 
-     * For production use, consider:
-     * - Drone-specific battery models
-     * - Environmental factors (temperature, wind)
-     * - Battery health/age factor
-     * - Non-linear discharge curves
-     * - Configurable parameters per drone type
+     * Fly the mission on the kinematic simulator: unlike distance over speed, this includes
+     * take-off and landing, acceleration, slowing for turns and climb/descent limits
+     */
+    private void simulateFlightTime(List<Waypoint> waypoints, Mission mission, EnergyModel energyModel,
+                                    SimulationTrace previous, SimulationTrace trace, SimulationResult result) {
+        if (!result.getErrors().isEmpty()) {
+            return; // invalid coordinates or altitudes
+        }
+        KinematicFlightSimulator simulator = new KinematicFlightSimulator(waypoints, mission.getDefaultSpeed(), energyModel);
+        if (trace != null) {
+            simulator.recordCheckpoints();
+            List<KinematicFlightSimulator.Checkpoint> reusable = previous != null
+                ? previous.reusableCheckpoints(trace.getFingerprint()) : List.of();
+            if (!reusable.isEmpty()) {
+                simulator.restore(reusable);
+            }
+        }
+        result.setSimulatedFlightTime(simulator.run(KinematicFlightSimulator.DEFAULT_STEP));
+        if (trace != null) {
+            trace.checkpoints = simulator.getCheckpoints();
+        }
+        if (simulator.getPhase() != KinematicFlightSimulator.Phase.LANDED) {
+            result.getWarnings().add(String.format(
+                "Flight simulation stopped after %.0f hours without finishing the mission", result.getSimulatedFlightTime() / 3600));
+        }
+    }
+    
+    /**
+     * Calculate estimated battery usage, leg by leg with the energy model: each leg is flown at
+     * its speed for its distance over speed and climbs or descends its altitude change, a delay
+     * is a hover, and the battery level carried from leg to leg drives the discharge curve.
+     * The default model is the simplified one (20 minutes of flight = 100%, plus 20% overhead).
      */
-    private void calculateBatteryUsage(SimulationResult result) {
-        // Simplified battery model
-        // Assumes: 20 minutes flight time = 100% battery
-        double maxFlightTime = 20 * 60; // 20 minutes in seconds
-        double batteryUsage = (result.getEstimatedFlightTime() / maxFlightTime) * 100;
+    private void calculateBatteryUsage(List<Waypoint> waypoints, MissionGeometry geometry, Mission mission,
+                                       EnergyModel energyModel, SimulationResult result) {
+        double defaultSpeed = mission.getDefaultSpeed() != null ? mission.getDefaultSpeed() : 10.0;
+        double battery = 100;
         
-        // Add overhead for altitude changes (climbing uses more power)
-        batteryUsage *= 1.2; // 20% overhead
+        for (int i = 0; i < geometry.legCount(); i++) {
+            Waypoint wp2 = waypoints.get(i + 1);
+            
+            double speed = wp2.getSpeed() != null ? wp2.getSpeed() : defaultSpeed;
+            battery -= energyModel.legDrain(geometry.lengths[i] / speed, speed, geometry.climb(i), battery);
+            
+            if (wp2.getDelay() != null) {
+                battery -= energyModel.legDrain(wp2.getDelay(), 0, 0, battery);
+            }
+        }
         
+        double batteryUsage = 100 - battery;
         result.setEstimatedBatteryUsage(Math.min(batteryUsage, 100));
         
         if (batteryUsage > 80) {
@@ -217,19 +258,10 @@ public class MissionSimulatorService {
     /**
      * Check for dangerous altitude changes
      */
-    private void checkAltitudeChanges(List<Waypoint> waypoints, SimulationResult result) {
-        for (int i = 0; i < waypoints.size() - 1; i++) {
-            Waypoint wp1 = waypoints.get(i);
-            Waypoint wp2 = waypoints.get(i + 1);
-            
-            double altChange = wp2.getAltitude() - wp1.getAltitude();
-            double horizontalDist = calculateDistance(
-                wp1.getLatitude(), wp1.getLongitude(), 0,
-                wp2.getLatitude(), wp2.getLongitude(), 0
-            );
-            
-            if (horizontalDist > 0) {
-                double climbAngle = Math.toDegrees(Math.atan(Math.abs(altChange) / horizontalDist));
+    private void checkAltitudeChanges(MissionGeometry geometry, SimulationResult result) {
+        for (int i = 0; i < geometry.legCount(); i++) {
+            if (geometry.horizontalLengths[i] > 0) {
+                double climbAngle = Math.abs(geometry.climbAngles[i]);
                 
                 if (climbAngle > 45) {
                     result.getWarnings().add(String.format(
@@ -244,15 +276,9 @@ public class MissionSimulatorService {
     /**
      * Check waypoint spacing
      */
-    private void checkWaypointSpacing(List<Waypoint> waypoints, SimulationResult result) {
-        for (int i = 0; i < waypoints.size() - 1; i++) {
-            Waypoint wp1 = waypoints.get(i);
-            Waypoint wp2 = waypoints.get(i + 1);
-            
-            double distance = calculateDistance(
-                wp1.getLatitude(), wp1.getLongitude(), 0,
-                wp2.getLatitude(), wp2.getLongitude(), 0
-            );
+    private void checkWaypointSpacing(MissionGeometry geometry, SimulationResult result) {
+        for (int i = 0; i < geometry.legCount(); i++) {
+            double distance = geometry.horizontalLengths[i];
             
             if (distance < MIN_WAYPOINT_DISTANCE) {
                 result.getWarnings().add(String.format(
@@ -264,25 +290,81 @@ public class MissionSimulatorService {
     }
     
     /**
-     * Check geofence violations
+     * Check geofence violations: the mission's altitude and distance-from-home limits when its
+     * geofence is enabled, then every waypoint and every leg against the mission's zones (taken
+     * from the previous simulation for waypoints and legs it checked against the same zones)
      */
-    private void checkGeofence(List<Waypoint> waypoints, Mission mission, SimulationResult result) {
-        if (!Boolean.TRUE.equals(mission.getGeofenceEnabled())) {
+    private void checkGeofence(MissionGeometry geometry, Mission mission,
+                               SimulationTrace previous, SimulationTrace trace, SimulationResult result) {
+        if (Boolean.TRUE.equals(mission.getGeofenceEnabled())) {
+            Double maxAlt = mission.getMaxAltitude();
+            if (maxAlt != null) {
+                for (int i = 0; i < geometry.count; i++) {
+                    if (geometry.altitudes[i] > maxAlt) {
+                        result.getErrors().add(String.format(
+                            "WP%d: Altitude %.1fm exceeds geofence limit %.1fm",
+                            i, geometry.altitudes[i], maxAlt
+                        ));
+                    }
+                }
+            }
+            
+            // Home is the first waypoint; distance from it is largest at one end of a straight leg
+            Double maxDistance = mission.getMaxDistance();
+            if (maxDistance != null) {
+                for (int i = 1; i < geometry.count; i++) {
+                    double distance = MissionStatisticsAccumulator.distance(
+                        geometry.latitudes[0], geometry.longitudes[0],
+                        geometry.latitudes[i], geometry.longitudes[i]
+                    );
+                    if (distance > maxDistance) {
+                        result.getErrors().add(String.format(
+                            "WP%d: Distance from home %.1fm exceeds geofence limit %.1fm",
+                            i, distance, maxDistance
+                        ));
+                    }
+                }
+            }
+        }
+        
+        // Zones apply whenever the mission has them, as they do to live telemetry
+        CompiledGeofence geofence = mission.getId() != null
+            ? geofenceService.getCompiledGeofence(mission.getId()) : null;
+        if (trace != null) {
+            trace.geofence = geofence;
+        }
+        if (geofence == null || geofence.size() == 0) {
             return;
         }
         
-        Double maxAlt = mission.getMaxAltitude();
-        if (maxAlt != null) {
-            for (int i = 0; i < waypoints.size(); i++) {
-                if (waypoints.get(i).getAltitude() > maxAlt) {
-                    result.getErrors().add(String.format(
-                        "WP%d: Altitude %.1fm exceeds geofence limit %.1fm",
-                        i, waypoints.get(i).getAltitude(), maxAlt
-                    ));
-                }
+        long[] hashes = trace != null ? trace.getFingerprint().getWaypointHashes() : null;
+        boolean reuse = hashes != null && previous != null && previous.geofence == geofence
+            && previous.waypointViolations != null;
+        GeofenceViolation[] waypointViolations = new GeofenceViolation[geometry.count];
+        GeofenceViolation[] legViolations = new GeofenceViolation[geometry.legCount()];
+        
+        for (int i = 0; i < geometry.count; i++) {
+            int before = reuse ? previous.indexOf(hashes[i]) : -1;
+            GeofenceViolation violation = before >= 0 ? previous.waypointViolations[before]
+                : geofence.check(geometry.latitudes[i], geometry.longitudes[i], geometry.altitudes[i]);
+            waypointViolations[i] = violation;
+            if (violation != null) {
+                result.getErrors().add(String.format("WP%d: %s", i, violation.getMessage()));
             }
         }
-        
-        // Could add more geofence checks (distance from home, inclusion/exclusion zones)
+        for (int i = 0; i < geometry.legCount(); i++) {
+            int before = reuse ? previous.legIndexOf(hashes[i], hashes[i + 1]) : -1;
+            GeofenceViolation violation = before >= 0 ? previous.legViolations[before]
+                : geofence.checkLeg(geometry.latitudes[i], geometry.longitudes[i],
+                    geometry.latitudes[i + 1], geometry.longitudes[i + 1]);
+            legViolations[i] = violation;
+            if (violation != null) {
+                result.getErrors().add(String.format("WP%d to WP%d: %s", i, i + 1, violation.getMessage()));
+            }
+        }
+        if (trace != null) {
+            trace.waypointViolations = waypointViolations;
+            trace.legViolations = legViolations;
+        }
     }
 }
@@ -0,0 +1,128 @@
+package com.nidar.drone.service;
+
+import com.nidar.drone.dto.TelemetryPoint;
+import com.nidar.drone.model.FlightLog;
+import com.nidar.drone.model.Telemetry;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Running statistics of a mission's telemetry.
+ *
+ * Each sample updates the maxima, sums and distance in constant time, so statistics are built
+ * in a single pass over a recorded track, and for an in-flight mission (see
+ * {@link TelemetryService}) they are kept current as samples arrive and read without touching
+ * the track. Duration comes from the sample timestamps, not the sample count.
+ */
+public class MissionStatisticsAccumulator {
+    
+    private static final double EARTH_RADIUS = 6371000; // meters
+    
+    private long samples;
+    private double maxAltitude = Double.NEGATIVE_INFINITY;
+    private double maxSpeed = Double.NEGATIVE_INFINITY;
+    private double speedSum;
+    private long speedSamples;
+    private double totalDistance;
+    private double previousLatitude = Double.NaN;
+    private double previousLongitude = Double.NaN;
+    private Double firstBattery;
+    private Double lastBattery;
+    private LocalDateTime startTime;
+    private LocalDateTime endTime;
+    
+    public void add(Telemetry t) {
+        add(t.getTimestamp(), t.getLatitude(), t.getLongitude(), t.getAltitude(), t.getSpeed(), t.getBattery());
+    }
+    
+    public void add(TelemetryPoint p) {
+        add(p.getTimestamp(), p.getLatitude(), p.getLongitude(), p.getAltitude(), p.getSpeed(), p.getBattery());
+    }
+    
+    public synchronized void add(LocalDateTime timestamp, Double latitude, Double longitude,
+                                 Double altitude, Double speed, Double battery) {
+        samples++;
+        if (altitude != null) {
+            maxAltitude = Math.max(maxAltitude, altitude);
+        }
+        if (speed != null) {
+            maxSpeed = Math.max(maxSpeed, speed);
+            speedSum += speed;
+            speedSamples++;
+        }
+        
+        // Distance between consecutive positioned samples (0, 0 is a vehicle without a fix)
+        if (latitude != null && longitude != null && (latitude != 0 || longitude != 0)) {
+            if (!Double.isNaN(previousLatitude)) {
+                totalDistance += distance(previousLatitude, previousLongitude, latitude, longitude);
+            }
+            previousLatitude = latitude;
+            previousLongitude = longitude;
+        }
+        
+        if (battery != null) {
+            if (firstBattery == null) {
+                firstBattery = battery;
+            }
+            lastBattery = battery;
+        }
+        
+        if (timestamp != null) {
+            if (startTime == null || timestamp.isBefore(startTime)) {
+                startTime = timestamp;
+            }
+            if (endTime == null || timestamp.isAfter(endTime)) {
+                endTime = timestamp;
+            }
+        }
+    }
+    
+    /**
+     * Statistics in the shape the replay API returns; duration is in seconds
+     */
+    public synchronized Map<String, Object> toMap() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("samples", samples);
+        stats.put("maxAltitude", maxAltitude != Double.NEGATIVE_INFINITY ? maxAltitude : 0.0);
+        stats.put("maxSpeed", speedSamples > 0 ? maxSpeed : 0.0);
+        stats.put("avgSpeed", speedSamples > 0 ? speedSum / speedSamples : 0.0);
+        stats.put("totalDistance", totalDistance);
+        stats.put("batteryUsed", firstBattery != null ? firstBattery - lastBattery : 0.0);
+        stats.put("duration", startTime != null ? Duration.between(startTime, endTime).toMillis() / 1000.0 : 0.0);
+        stats.put("startTime", startTime);
+        stats.put("endTime", endTime);
+        return stats;
+    }
+    
+    /**
+     * Copy the flight statistics (times, maxima, distance, battery) into a flight log
+     */
+    public synchronized void fill(FlightLog flightLog) {
+        flightLog.setStartTime(startTime);
+        flightLog.setEndTime(endTime);
+        flightLog.setDurationSeconds(startTime != null ? (int) Duration.between(startTime, endTime).getSeconds() : 0);
+        flightLog.setMaxAltitude(maxAltitude != Double.NEGATIVE_INFINITY ? maxAltitude : null);
+        flightLog.setMaxSpeed(speedSamples > 0 ? maxSpeed : null);
+        flightLog.setAvgSpeed(speedSamples > 0 ? speedSum / speedSamples : null);
+        flightLog.setTotalDistance(totalDistance);
+        flightLog.setStartBattery(firstBattery);
+        flightLog.setEndBattery(lastBattery);
+        flightLog.setBatteryUsed(firstBattery != null ? firstBattery - lastBattery : null);
+    }
+    
+    /**
+     * Haversine distance in meters
+     */
+    static double distance(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) +
+                   Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) *
+                   Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+        return EARTH_RADIUS * c;
+    }
+}
@@ -0,0 +1,176 @@
+package com.nidar.drone.service;
+
+import com.nidar.drone.mavlink.MAVLinkLink;
+import com.nidar.drone.model.Waypoint;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * GCS side of the MAVLink mission upload protocol for one upload.
+ *
+ * MISSION_COUNT is sent first; the vehicle then pulls each item with MISSION_REQUEST_INT
+ * (or the legacy MISSION_REQUEST) and we answer by sequence number straight from the
+ * receive thread, so the upload runs at link round-trip speed. The vehicle finishes with
+ * MISSION_ACK. If it goes quiet for longer than the item timeout, the last message is
+ * retransmitted; after maxRetries consecutive timeouts the upload fails.
+ */
+@Slf4j
+public class MissionUploadSession {
+    
+    private static final int MAV_MISSION_TYPE_MISSION = 0;
+    private static final int MAV_MISSION_ACCEPTED = 0;
+    
+    private static final String[] MISSION_RESULTS = {
+        "ACCEPTED", "ERROR", "UNSUPPORTED_FRAME", "UNSUPPORTED", "NO_SPACE", "INVALID",
+        "INVALID_PARAM1", "INVALID_PARAM2", "INVALID_PARAM3", "INVALID_PARAM4",
+        "INVALID_PARAM5_X", "INVALID_PARAM6_Y", "INVALID_PARAM7", "INVALID_SEQUENCE",
+        "DENIED", "OPERATION_CANCELLED"
+    };
+    
+    public enum State { SENDING_COUNT, SENDING_ITEMS, COMPLETED, FAILED }
+    
+    /**
+     * Notified on the receive thread each time the vehicle requests a new item
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+        void onProgress(int itemsSent, int totalItems);
+    }
+    
+    private final MAVLinkLink link;
+    private final List<Waypoint> waypoints;
+    private final MAVLinkMessageService mavLinkMessageService;
+    private final long itemTimeoutNanos;
+    private final int maxRetries;
+    private final ProgressListener progressListener;
+    private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+    
+    private State state = State.SENDING_COUNT;
+    private int lastRequested = -1;
+    private int highestRequested = -1;
+    private int retries;
+    private long lastActivityNanos;
+    
+    public MissionUploadSession(MAVLinkLink link, List<Waypoint> waypoints,
+                                MAVLinkMessageService mavLinkMessageService,
+                                long itemTimeoutMillis, int maxRetries,
+                                ProgressListener progressListener) {
+        this.link = link;
+        this.waypoints = waypoints;
+        this.mavLinkMessageService = mavLinkMessageService;
+        this.itemTimeoutNanos = itemTimeoutMillis * 1_000_000L;
+        this.maxRetries = maxRetries;
+        this.progressListener = progressListener;
+    }
+    
+    public synchronized void start() {
+        lastActivityNanos = System.nanoTime();
+        if (!mavLinkMessageService.sendMissionCount(link, waypoints.size())) {
+            fail("Failed to send mission count");
+        }
+    }
+    
+    /**
+     * MISSION_REQUEST_INT / MISSION_REQUEST from the vehicle
+     */
+    public synchronized void onMissionRequest(int sequence, int missionType) {
+        if (isDone() || missionType != MAV_MISSION_TYPE_MISSION) {
+            return;
+        }
+        if (sequence < 0 || sequence >= waypoints.size()) {
+            log.warn("Vehicle requested mission item {} of {}", sequence, waypoints.size());
+            return;
+        }
+        
+        state = State.SENDING_ITEMS;
+        lastActivityNanos = System.nanoTime();
+        if (sequence > highestRequested) {
+            highestRequested = sequence;
+            retries = 0;
+        }
+        lastRequested = sequence;
+        
+        if (!mavLinkMessageService.sendMissionItem(link, waypoints.get(sequence), sequence)) {
+            fail("Failed to send waypoint " + sequence);
+            return;
+        }
+        if (progressListener != null && sequence == highestRequested) {
+            progressListener.onProgress(sequence + 1, waypoints.size());
+        }
+    }
+    
+    /**
+     * MISSION_ACK from the vehicle
+     */
+    public synchronized void onMissionAck(int resultType, int missionType) {
+        if (isDone() || missionType != MAV_MISSION_TYPE_MISSION) {
+            return;
+        }
+        if (resultType == MAV_MISSION_ACCEPTED) {
+            state = State.COMPLETED;
+            log.info("Mission upload accepted by vehicle ({} items)", waypoints.size());
+            result.complete(true);
+        } else {
+            String reason = resultType < MISSION_RESULTS.length ? MISSION_RESULTS[resultType] : String.valueOf(resultType);
+            fail("Vehicle rejected mission: " + reason);
+        }
+    }
+    
+    /**
+     * Retransmit the last message if the vehicle has been silent for longer than the item timeout
+     */
+    public synchronized void checkTimeout() {
+        if (isDone() || System.nanoTime() - lastActivityNanos < itemTimeoutNanos) {
+            return;
+        }
+        if (retries >= maxRetries) {
+            fail(state == State.SENDING_COUNT
+                ? "No response to MISSION_COUNT"
+                : "Timed out waiting for vehicle after item " + lastRequested);
+            return;
+        }
+        
+        retries++;
+        lastActivityNanos = System.nanoTime();
+        if (state == State.SENDING_COUNT) {
+            log.warn("Retransmitting MISSION_COUNT (attempt {})", retries);
+            mavLinkMessageService.sendMissionCount(link, waypoints.size());
+        } else {
+            log.warn("Retransmitting mission item {} (attempt {})", lastRequested, retries);
+            mavLinkMessageService.sendMissionItem(link, waypoints.get(lastRequested), lastRequested);
+        }
+    }
+    
+    public synchronized void cancel(String reason) {
+        if (!isDone()) {
+            fail(reason);
+        }
+    }
+    
+    public synchronized State getState() {
+        return state;
+    }
+    
+    /**
+     * Index of the highest item the vehicle has asked for, i.e. upload progress
+     */
+    public synchronized int getHighestRequested() {
+        return highestRequested;
+    }
+    
+    public CompletableFuture<Boolean> getResult() {
+        return result;
+    }
+    
+    private boolean isDone() {
+        return state == State.COMPLETED || state == State.FAILED;
+    }
+    
+    private void fail(String reason) {
+        state = State.FAILED;
+        log.error("Mission upload failed: {}", reason);
+        result.completeExceptionally(new RuntimeException(reason));
+    }
+}
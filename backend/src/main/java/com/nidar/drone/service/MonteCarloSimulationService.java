@@ -0,0 +1,295 @@
+package com.nidar.drone.service;
+
+import com.nidar.drone.energy.EnergyModel;
+import com.nidar.drone.model.Mission;
+import com.nidar.drone.model.Waypoint;
+import jakarta.annotation.PreDestroy;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Monte-Carlo mission simulation: flies the mission thousands of times under perturbed wind,
+ * per-leg speed and battery health, and reports percentiles instead of a single estimate.
+ *
+ * Legs are reduced to primitive arrays once; each run then only draws its own wind vector
+ * and battery health and walks those arrays, writing its flight time and battery at landing
+ * into a slot of two result arrays. Runs are split across a dedicated ForkJoinPool, each
+ * batch with its own SplittableRandom, so a seeded simulation gives the same answer however
+ * the batches are scheduled. Each leg drains the battery by the same {@link EnergyModel} the
+ * deterministic simulator is given, at the drawn airspeed and divided by the drawn battery
+ * health, so with the same model the two estimates are comparable.
+ */
+@Service
+@Slf4j
+public class MonteCarloSimulationService {
+    
+    private static final int MAX_RUNS = 100_000;
+    private static final int RUNS_PER_TASK = 64;
+    private static final double MIN_GROUND_SPEED = 0.5; // m/s, below this a leg cannot be flown against the wind
+    private static final double DEFAULT_SPEED = 10.0; // m/s
+    
+    // Per-leg noise is drawn from a fixed table of standard normal samples: one random long
+    // indexes two entries, which is several times cheaper than a log and sqrt per draw
+    private static final int NORMAL_TABLE_BITS = 12;
+    private static final int NORMAL_TABLE_MASK = (1 << NORMAL_TABLE_BITS) - 1;
+    private static final double[] NORMAL_TABLE = normalTable();
+    
+    @Data
+    public static class MonteCarloOptions {
+        private int runs = 2000;
+        private double windSpeed = 4.0; // mean, m/s
+        private double windSpeedStdDev = 2.0;
+        private Double windDirection; // degrees the wind blows from; null draws a direction per run
+        private double windDirectionStdDev = 30.0; // degrees
+        private double gustFactor = 0.2; // per-leg standard deviation of the wind speed, relative
+        private double speedStdDev = 0.1; // per-leg standard deviation of the airspeed, relative
+        private double batteryHealth = 0.95;
+        private double batteryHealthStdDev = 0.05;
+        private double startBattery = 100.0; // percent
+        private double reservePercent = 20.0;
+        private Long seed;
+    }
+    
+    private final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    
+    public Map<String, Object> simulate(Mission mission, MonteCarloOptions options) {
+        return simulate(mission, options, EnergyModel.DEFAULT);
+    }
+    
+    /**
+     * Simulate with the energy model of a drone model (see {@link EnergyModelService})
+     */
+    public Map<String, Object> simulate(Mission mission, MonteCarloOptions options, EnergyModel energyModel) {
+        if (options.getRuns() < 1 || options.getRuns() > MAX_RUNS) {
+            throw new RuntimeException("runs must be between 1 and " + MAX_RUNS);
+        }
+        List<Waypoint> waypoints = mission.getWaypoints();
+        if (waypoints == null || waypoints.size() < 2) {
+            throw new RuntimeException("Mission needs at least two waypoints");
+        }
+        
+        long started = System.nanoTime();
+        Legs legs = new Legs(MissionGeometry.of(waypoints), waypoints,
+            mission.getDefaultSpeed() != null ? mission.getDefaultSpeed() : DEFAULT_SPEED);
+        int runs = options.getRuns();
+        double[] flightTimes = new double[runs];
+        double[] landingBattery = new double[runs];
+        boolean[] unreachable = new boolean[runs];
+        SplittableRandom random = options.getSeed() != null ? new SplittableRandom(options.getSeed()) : new SplittableRandom();
+        pool.invoke(new RunBatch(legs, options, energyModel, flightTimes, landingBattery, unreachable, 0, runs, random));
+        
+        int breaches = 0;
+        int stranded = 0;
+        for (int i = 0; i < runs; i++) {
+            if (landingBattery[i] < options.getReservePercent()) {
+                breaches++;
+            }
+            if (unreachable[i]) {
+                stranded++;
+            }
+        }
+        
+        Map<String, Object> result = new HashMap<>();
+        result.put("missionId", mission.getId());
+        result.put("runs", runs);
+        result.put("legs", legs.count);
+        result.put("energyModel", energyModel.getModel());
+        result.put("energyModelFitted", energyModel.isFitted());
+        result.put("flightTime", percentiles(flightTimes));
+        result.put("batteryAtLanding", percentiles(landingBattery));
+        result.put("reservePercent", options.getReservePercent());
+        result.put("reserveBreachProbability", (double) breaches / runs);
+        result.put("windLimitedProbability", (double) stranded / runs);
+        result.put("computeMillis", (System.nanoTime() - started) / 1_000_000.0);
+        log.info("Monte-Carlo simulation of mission {}: {} runs, {} legs, reserve breached in {} runs",
+            mission.getId(), runs, legs.count, breaches);
+        return result;
+    }
+    
+    private static Map<String, Object> percentiles(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        double sum = 0;
+        for (double value : sorted) {
+            sum += value;
+        }
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("min", sorted[0]);
+        stats.put("p5", percentile(sorted, 0.05));
+        stats.put("p50", percentile(sorted, 0.50));
+        stats.put("p95", percentile(sorted, 0.95));
+        stats.put("max", sorted[sorted.length - 1]);
+        stats.put("mean", sum / sorted.length);
+        return stats;
+    }
+    
+    private static double percentile(double[] sorted, double fraction) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.round(fraction * (sorted.length - 1)))];
+    }
+    
+    private static double[] normalTable() {
+        Random random = new Random(0);
+        double[] table = new double[1 << NORMAL_TABLE_BITS];
+        for (int i = 0; i < table.length; i++) {
+            table[i] = random.nextGaussian();
+        }
+        return table;
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+    
+    /**
+     * Per-leg geometry and commanded speed of a mission, as primitive arrays
+     */
+    private static final class Legs {
+        final int count;
+        final double[] length; // horizontal, meters
+        final double[] bearingCos; // track direction, bearing from north as cos/sin
+        final double[] bearingSin;
+        final double[] climb; // meters, negative when descending
+        final double[] speed; // commanded, m/s
+        final double[] delay; // seconds held at the leg's end
+        
+        Legs(MissionGeometry geometry, List<Waypoint> waypoints, double defaultSpeed) {
+            count = geometry.legCount();
+            length = geometry.horizontalLengths;
+            bearingCos = new double[count];
+            bearingSin = new double[count];
+            climb = new double[count];
+            speed = new double[count];
+            delay = new double[count];
+            for (int i = 0; i < count; i++) {
+                Waypoint to = waypoints.get(i + 1);
+                bearingCos[i] = Math.cos(geometry.bearings[i]);
+                bearingSin[i] = Math.sin(geometry.bearings[i]);
+                climb[i] = geometry.climb(i);
+                speed[i] = to.getSpeed() != null && to.getSpeed() > 0 ? to.getSpeed() : defaultSpeed;
+                delay[i] = to.getDelay() != null ? to.getDelay() : 0;
+            }
+        }
+    }
+    
+    /**
+     * A range of runs; splits in half until small enough, giving each half its own generator
+     */
+    private static final class RunBatch extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        
+        private final Legs legs;
+        private final MonteCarloOptions options;
+        private final EnergyModel energyModel;
+        private final double[] flightTimes;
+        private final double[] landingBattery;
+        private final boolean[] unreachable;
+        private final int from;
+        private final int to;
+        private final SplittableRandom random;
+        
+        RunBatch(Legs legs, MonteCarloOptions options, EnergyModel energyModel, double[] flightTimes,
+                 double[] landingBattery, boolean[] unreachable, int from, int to, SplittableRandom random) {
+            this.legs = legs;
+            this.options = options;
+            this.energyModel = energyModel;
+            this.flightTimes = flightTimes;
+            this.landingBattery = landingBattery;
+            this.unreachable = unreachable;
+            this.from = from;
+            this.to = to;
+            this.random = random;
+        }
+        
+        @Override
+        protected void compute() {
+            if (to - from <= RUNS_PER_TASK) {
+                for (int run = from; run < to; run++) {
+                    fly(run);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(
+                new RunBatch(legs, options, energyModel, flightTimes, landingBattery, unreachable, from, middle,
+                    random.split()),
+                new RunBatch(legs, options, energyModel, flightTimes, landingBattery, unreachable, middle, to,
+                    random));
+        }
+        
+        private void fly(int run) {
+            double windMean = Math.max(0, options.getWindSpeed() + options.getWindSpeedStdDev() * gaussian());
+            double windFrom = options.getWindDirection() != null
+                ? Math.toRadians(options.getWindDirection() + options.getWindDirectionStdDev() * gaussian())
+                : random.nextDouble(2 * Math.PI);
+            double windCos = -Math.cos(windFrom); // the wind blows towards windFrom + 180 degrees
+            double windSin = -Math.sin(windFrom);
+            double health = clamp(options.getBatteryHealth() + options.getBatteryHealthStdDev() * gaussian(), 0.5, 1.0);
+            
+            double time = 0;
+            double battery = options.getStartBattery();
+            boolean limited = false;
+            for (int i = 0; i < legs.count; i++) {
+                long bits = random.nextLong();
+                double gust = NORMAL_TABLE[(int) bits & NORMAL_TABLE_MASK];
+                double speedNoise = NORMAL_TABLE[(int) (bits >>> 32) & NORMAL_TABLE_MASK];
+                double wind = windMean * Math.max(0, 1 + options.getGustFactor() * gust);
+                double airspeed = legs.speed[i] * clamp(1 + options.getSpeedStdDev() * speedNoise, 0.5, 1.5);
+                // Wind components along and across the track
+                double along = wind * (windCos * legs.bearingCos[i] + windSin * legs.bearingSin[i]);
+                double cross = wind * (windSin * legs.bearingCos[i] - windCos * legs.bearingSin[i]);
+                
+                // Crab into the crosswind to hold the track; what is left of the airspeed plus
+                // the tailwind component is the speed over the ground
+                double groundSpeed = Math.abs(cross) < airspeed
+                    ? along + Math.sqrt(airspeed * airspeed - cross * cross) : 0;
+                if (groundSpeed < MIN_GROUND_SPEED) {
+                    groundSpeed = MIN_GROUND_SPEED;
+                    limited = true;
+                }
+                double horizontalTime = legs.length[i] / groundSpeed;
+                double verticalTime = legs.climb[i] >= 0
+                    ? legs.climb[i] / MissionSimulatorService.MAX_CLIMB_RATE
+                    : -legs.climb[i] / MissionSimulatorService.MAX_DESCENT_RATE;
+                double legTime = Math.max(horizontalTime, verticalTime);
+                time += legTime + legs.delay[i];
+                // A worn pack holds less charge, so the same energy is a larger share of it
+                battery -= energyModel.legDrain(legTime, airspeed, legs.climb[i], battery) / health;
+                if (legs.delay[i] > 0) {
+                    battery -= energyModel.legDrain(legs.delay[i], 0, 0, battery) / health;
+                }
+            }
+            
+            flightTimes[run] = time;
+            landingBattery[run] = battery;
+            unreachable[run] = limited;
+        }
+        
+        private double gaussian() {
+            // Marsaglia polar method; SplittableRandom has no nextGaussian
+            double u;
+            double v;
+            double s;
+            do {
+                u = random.nextDouble(-1, 1);
+                v = random.nextDouble(-1, 1);
+                s = u * u + v * v;
+            } while (s >= 1 || s == 0);
+            return u * Math.sqrt(-2 * Math.log(s) / s);
+        }
+        
+        private static double clamp(double value, double min, double max) {
+            return Math.max(min, Math.min(max, value));
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.nidar.drone.service;
+
+import com.nidar.drone.dto.TelemetryPoint;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Server-side playback of one mission's recorded telemetry.
+ *
+ * A virtual playhead advances at speed times wall-clock time; each {@link #advance()} returns
+ * the samples whose timestamps the playhead has passed since the last call. Samples are read
+ * a page at a time through the {@link PageLoader} as the playhead approaches them, so a session
+ * only holds one page of the track regardless of the mission's length. Seeking discards the
+ * buffered page and resumes reading from the new position.
+ */
+public class ReplaySession {
+    
+    public enum State { PLAYING, PAUSED, FINISHED }
+    
+    /**
+     * Loads up to limit samples after (afterTimestamp, afterId) in (timestamp, id) order
+     */
+    @FunctionalInterface
+    public interface PageLoader {
+        List<TelemetryPoint> load(LocalDateTime afterTimestamp, long afterId, int limit);
+    }
+    
+    private final String sessionId;
+    private final Long missionId;
+    private final PageLoader pageLoader;
+    private final int pageSize;
+    private final int maxPointsPerTick;
+    private final ArrayDeque<TelemetryPoint> buffer = new ArrayDeque<>();
+    
+    private ScheduledFuture<?> ticker;
+    private State state = State.PLAYING;
+    private double speed;
+    private LocalDateTime playhead;
+    private long lastAdvanceNanos;
+    private long lastActivityNanos;
+    private LocalDateTime cursorTimestamp;
+    private long cursorId;
+    private boolean exhausted;
+    
+    public ReplaySession(String sessionId, Long missionId, LocalDateTime start, double speed,
+                         PageLoader pageLoader, int pageSize, int maxPointsPerTick) {
+        this.sessionId = sessionId;
+        this.missionId = missionId;
+        this.pageLoader = pageLoader;
+        this.pageSize = pageSize;
+        this.maxPointsPerTick = maxPointsPerTick;
+        this.speed = speed;
+        this.lastAdvanceNanos = System.nanoTime();
+        this.lastActivityNanos = lastAdvanceNanos;
+        reposition(start);
+    }
+    
+    public String getSessionId() {
+        return sessionId;
+    }
+    
+    public Long getMissionId() {
+        return missionId;
+    }
+    
+    /**
+     * Move the playhead forward and return the samples it passed, in order.
+     * Sets the state to FINISHED once the recorded track is exhausted.
+     */
+    public synchronized List<TelemetryPoint> advance() {
+        long now = System.nanoTime();
+        long elapsed = now - lastAdvanceNanos;
+        lastAdvanceNanos = now;
+        if (state != State.PLAYING) {
+            return List.of();
+        }
+        
+        playhead = playhead.plusNanos((long) (elapsed * speed));
+        List<TelemetryPoint> due = new ArrayList<>();
+        while (due.size() < maxPointsPerTick) {
+            if (buffer.isEmpty() && !exhausted) {
+                loadPage();
+            }
+            TelemetryPoint next = buffer.peek();
+            if (next == null) {
+                state = State.FINISHED;
+                break;
+            }
+            if (next.getTimestamp().isAfter(playhead)) {
+                break;
+            }
+            due.add(buffer.poll());
+        }
+        return due;
+    }
+    
+    public synchronized void pause() {
+        touch();
+        if (state == State.PLAYING) {
+            state = State.PAUSED;
+        }
+    }
+    
+    public synchronized void resume() {
+        touch();
+        if (state == State.PAUSED) {
+            state = State.PLAYING;
+            lastAdvanceNanos = System.nanoTime();
+        }
+    }
+    
+    public synchronized void setSpeed(double speed) {
+        touch();
+        this.speed = speed;
+    }
+    
+    /**
+     * Jump to a recorded time; playback continues in the current (or, after the end, playing) state
+     */
+    public synchronized void seek(LocalDateTime timestamp) {
+        touch();
+        reposition(timestamp);
+        if (state == State.FINISHED) {
+            state = State.PLAYING;
+        }
+        lastAdvanceNanos = System.nanoTime();
+    }
+    
+    public synchronized State getState() {
+        return state;
+    }
+    
+    public synchronized LocalDateTime getPlayhead() {
+        return playhead;
+    }
+    
+    public synchronized long getIdleNanos() {
+        return System.nanoTime() - lastActivityNanos;
+    }
+    
+    public synchronized void setTicker(ScheduledFuture<?> ticker) {
+        this.ticker = ticker;
+    }
+    
+    public synchronized void stop() {
+        if (ticker != null) {
+            ticker.cancel(false);
+        }
+    }
+    
+    public synchronized Map<String, Object> getStatus() {
+        Map<String, Object> status = new HashMap<>();
+        status.put("type", "STATUS");
+        status.put("sessionId", sessionId);
+        status.put("missionId", missionId);
+        status.put("state", state);
+        status.put("speed", speed);
+        status.put("playhead", playhead);
+        return status;
+    }
+    
+    private void reposition(LocalDateTime timestamp) {
+        buffer.clear();
+        playhead = timestamp;
+        cursorTimestamp = timestamp;
+        cursorId = 0;
+        exhausted = false;
+    }
+    
+    private void loadPage() {
+        List<TelemetryPoint> page = pageLoader.load(cursorTimestamp, cursorId, pageSize);
+        if (page.size() < pageSize) {
+            exhausted = true;
+        }
+        if (!page.isEmpty()) {
+            TelemetryPoint last = page.get(page.size() - 1);
+            cursorTimestamp = last.getTimestamp();
+            cursorId = last.getId();
+            buffer.addAll(page);
+        }
+    }
+    
+    private void touch() {
+        lastActivityNanos = System.nanoTime();
+    }
+}
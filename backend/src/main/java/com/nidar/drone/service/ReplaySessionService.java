@@ -0,0 +1,183 @@
+package com.nidar.drone.service;
+
+import com.nidar.drone.config.SchedulingConfig;
+import com.nidar.drone.dto.TelemetryPoint;
+import com.nidar.drone.repository.TelemetryRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server-driven mission replay.
+ *
+ * Each session plays a mission's recorded telemetry to /topic/replay/{sessionId} in recorded
+ * time scaled by the session speed, so operators can watch long flights without downloading
+ * the track. Sessions read the store a page at a time (see {@link ReplaySession}) and are
+ * controlled over REST: pause, resume, speed and seek. Paused or finished sessions nobody has
+ * controlled for replay.session.idle-timeout-minutes are closed.
+ */
+@Service
+@Slf4j
+public class ReplaySessionService {
+    
+    public static final double MIN_SPEED = 0.25;
+    public static final double MAX_SPEED = 64;
+    
+    private static final int PAGE_SIZE = 500;
+    private static final int MAX_POINTS_PER_TICK = 1000;
+    
+    private final TelemetryRepository telemetryRepository;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final TaskScheduler taskScheduler;
+    private final Map<String, ReplaySession> sessions = new ConcurrentHashMap<>();
+    
+    @Value("${replay.session.tick-ms:100}")
+    private long tickMs;
+    
+    @Value("${replay.session.max-sessions:20}")
+    private int maxSessions;
+    
+    @Value("${replay.session.idle-timeout-minutes:30}")
+    private long idleTimeoutMinutes;
+    
+    public ReplaySessionService(TelemetryRepository telemetryRepository,
+                                SimpMessagingTemplate messagingTemplate,
+                                @Qualifier(SchedulingConfig.SIMULATION_SCHEDULER) TaskScheduler taskScheduler) {
+        this.telemetryRepository = telemetryRepository;
+        this.messagingTemplate = messagingTemplate;
+        this.taskScheduler = taskScheduler;
+    }
+    
+    /**
+     * Start playing a mission from its first recorded sample
+     */
+    public synchronized ReplaySession createSession(Long missionId, double speed) {
+        if (sessions.size() >= maxSessions) {
+            throw new RuntimeException("Too many replay sessions, close one and try again");
+        }
+        LocalDateTime start = telemetryRepository.findFirstTimestampByMission(missionId);
+        if (start == null) {
+            throw new RuntimeException("No telemetry recorded for mission " + missionId);
+        }
+        
+        ReplaySession.PageLoader pageLoader = (afterTimestamp, afterId, limit) ->
+            telemetryRepository.findMissionPointPage(missionId, afterTimestamp, afterId, PageRequest.of(0, limit));
+        ReplaySession session = new ReplaySession(UUID.randomUUID().toString(), missionId, start,
+            checkSpeed(speed), pageLoader, PAGE_SIZE, MAX_POINTS_PER_TICK);
+        sessions.put(session.getSessionId(), session);
+        session.setTicker(taskScheduler.scheduleAtFixedRate(() -> tick(session), Duration.ofMillis(tickMs)));
+        
+        log.info("Started replay session {} for mission {} at {}x", session.getSessionId(), missionId, speed);
+        return session;
+    }
+    
+    public ReplaySession getSession(String sessionId) {
+        ReplaySession session = sessions.get(sessionId);
+        if (session == null) {
+            throw new RuntimeException("Replay session not found: " + sessionId);
+        }
+        return session;
+    }
+    
+    public ReplaySession pause(String sessionId) {
+        ReplaySession session = getSession(sessionId);
+        session.pause();
+        publishStatus(session);
+        return session;
+    }
+    
+    public ReplaySession resume(String sessionId) {
+        ReplaySession session = getSession(sessionId);
+        session.resume();
+        publishStatus(session);
+        return session;
+    }
+    
+    public ReplaySession setSpeed(String sessionId, double speed) {
+        ReplaySession session = getSession(sessionId);
+        session.setSpeed(checkSpeed(speed));
+        publishStatus(session);
+        return session;
+    }
+    
+    public ReplaySession seek(String sessionId, LocalDateTime timestamp) {
+        ReplaySession session = getSession(sessionId);
+        session.seek(timestamp);
+        publishStatus(session);
+        return session;
+    }
+    
+    public void closeSession(String sessionId) {
+        ReplaySession session = sessions.remove(sessionId);
+        if (session != null) {
+            session.stop();
+            log.info("Closed replay session {}", sessionId);
+        }
+    }
+    
+    @Scheduled(fixedRate = 60000)
+    public void closeIdleSessions() {
+        long idleLimit = TimeUnit.MINUTES.toNanos(idleTimeoutMinutes);
+        sessions.values().stream()
+            .filter(session -> session.getState() != ReplaySession.State.PLAYING && session.getIdleNanos() > idleLimit)
+            .map(ReplaySession::getSessionId)
+            .toList()
+            .forEach(this::closeSession);
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        List.copyOf(sessions.keySet()).forEach(this::closeSession);
+    }
+    
+    private void tick(ReplaySession session) {
+        try {
+            ReplaySession.State before = session.getState();
+            List<TelemetryPoint> due = session.advance();
+            if (!due.isEmpty()) {
+                Map<String, Object> message = new HashMap<>();
+                message.put("type", "TELEMETRY");
+                message.put("sessionId", session.getSessionId());
+                message.put("playhead", session.getPlayhead());
+                message.put("points", due);
+                messagingTemplate.convertAndSend(topic(session), message);
+            }
+            if (before != ReplaySession.State.FINISHED && session.getState() == ReplaySession.State.FINISHED) {
+                publishStatus(session);
+            }
+        } catch (Exception e) {
+            log.error("Replay session {} failed", session.getSessionId(), e);
+            closeSession(session.getSessionId());
+        }
+    }
+    
+    private void publishStatus(ReplaySession session) {
+        messagingTemplate.convertAndSend(topic(session), session.getStatus());
+    }
+    
+    private String topic(ReplaySession session) {
+        return "/topic/replay/" + session.getSessionId();
+    }
+    
+    private double checkSpeed(double speed) {
+        if (speed < MIN_SPEED || speed > MAX_SPEED) {
+            throw new RuntimeException("Replay speed must be between " + MIN_SPEED + " and " + MAX_SPEED);
+        }
+        return speed;
+    }
+}
@@ -0,0 +1,234 @@
+package com.nidar.drone.service;
+
+import com.nidar.drone.mavlink.MAVLinkMessages;
+import com.nidar.drone.mavlink.VehicleState;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * One simulated vehicle flying a mission on a {@link KinematicFlightSimulator}.
+ *
+ * At every sample the simulator state is encoded as the MAVLink payloads an ArduCopter sends
+ * (HEARTBEAT, SYS_STATUS, GPS_RAW_INT, VFR_HUD, MISSION_CURRENT, MISSION_ITEM_REACHED and
+ * GLOBAL_POSITION_INT) and decoded into the vehicle's {@link VehicleState} exactly as received
+ * frames are, then published through the same path as a real vehicle's position fix. Sample
+ * timestamps follow the simulated clock, so a flight run at 50x still records its true duration.
+ * Advanced by one scheduler task at a time; status reads lock out a tick in progress.
+ */
+public class SimulatedFlight {
+    
+    public enum State { FLYING, FINISHED, STOPPED }
+    
+    /**
+     * Publishes the position just decoded into a vehicle's state at the given time
+     */
+    @FunctionalInterface
+    public interface Publisher {
+        void publish(VehicleConnection connection, LocalDateTime timestamp);
+    }
+    
+    private static final int MAV_TYPE_QUADROTOR = 2;
+    private static final int MAV_AUTOPILOT_ARDUPILOTMEGA = 3;
+    private static final int MAV_MODE_FLAG_CUSTOM_MODE_ENABLED = 0x01;
+    private static final int MAV_MODE_FLAG_SAFETY_ARMED = 0x80;
+    private static final int MAV_STATE_STANDBY = 3;
+    private static final int MAV_STATE_ACTIVE = 4;
+    private static final int COPTER_MODE_AUTO = 3;
+    private static final int COPTER_MODE_LAND = 9;
+    private static final int GPS_FIX_3D = 3;
+    private static final int SATELLITES = 14;
+    private static final double FULL_VOLTAGE = 16.8; // 4S pack
+    private static final double EMPTY_VOLTAGE = 14.0;
+    private static final double HOVER_CURRENT = 18.0; // amps
+    
+    private final String sessionId;
+    private final Long missionId;
+    private final Long droneId;
+    private final double timeScale;
+    private final double rateHz;
+    private final LocalDateTime startTime = LocalDateTime.now();
+    private volatile State state = State.FLYING;
+    private volatile long samples;
+    private volatile long finishedNanos;
+    
+    private final VehicleConnection connection;
+    private final KinematicFlightSimulator simulator;
+    private final double step;
+    private final Publisher publisher;
+    private final ByteBuffer payload = ByteBuffer.allocate(64).order(ByteOrder.LITTLE_ENDIAN);
+    private double nextSampleAt;
+    private int reportedReached = -1;
+    
+    private ScheduledFuture<?> ticker;
+    
+    public SimulatedFlight(String sessionId, Long missionId, Long droneId, VehicleConnection connection,
+                           KinematicFlightSimulator simulator, double step, double timeScale, double rateHz,
+                           Publisher publisher) {
+        this.sessionId = sessionId;
+        this.missionId = missionId;
+        this.droneId = droneId;
+        this.connection = connection;
+        this.simulator = simulator;
+        this.step = step;
+        this.timeScale = timeScale;
+        this.rateHz = rateHz;
+        this.publisher = publisher;
+    }
+    
+    void setTicker(ScheduledFuture<?> ticker) {
+        this.ticker = ticker;
+    }
+    
+    /**
+     * Fly on for the simulated equivalent of the given wall-clock time, emitting every sample due
+     */
+    synchronized void advance(double wallSeconds) {
+        if (state != State.FLYING) {
+            return;
+        }
+        double until = simulator.getElapsed() + wallSeconds * timeScale;
+        while (!simulator.isFinished() && simulator.getElapsed() < until) {
+            simulator.step(step);
+            if (simulator.getElapsed() >= nextSampleAt) {
+                emit(true);
+                nextSampleAt += 1 / rateHz;
+            }
+        }
+        if (simulator.isFinished()) {
+            emit(false);
+            finish(State.FINISHED);
+        }
+    }
+    
+    /**
+     * Stop flying; the vehicle reports itself disarmed and landed
+     */
+    synchronized void stop() {
+        if (state == State.FLYING) {
+            emit(false);
+            finish(State.STOPPED);
+        } else if (ticker != null) {
+            ticker.cancel(false);
+        }
+    }
+    
+    private void finish(State end) {
+        state = end;
+        finishedNanos = System.nanoTime();
+        if (ticker != null) {
+            ticker.cancel(false);
+        }
+    }
+    
+    public String getSessionId() {
+        return sessionId;
+    }
+    
+    public State getState() {
+        return state;
+    }
+    
+    public long getFinishedAgeNanos() {
+        return state == State.FLYING ? 0 : System.nanoTime() - finishedNanos;
+    }
+    
+    public int getSystemId() {
+        return connection.getSystemId();
+    }
+    
+    public synchronized Map<String, Object> getStatus() {
+        Map<String, Object> status = new HashMap<>();
+        status.put("sessionId", sessionId);
+        status.put("missionId", missionId);
+        status.put("droneId", droneId);
+        status.put("systemId", connection.getSystemId());
+        status.put("state", state);
+        status.put("phase", simulator.getPhase());
+        status.put("timeScale", timeScale);
+        status.put("rateHz", rateHz);
+        status.put("elapsedSeconds", simulator.getElapsed());
+        status.put("distance", simulator.getDistance());
+        status.put("currentWaypoint", simulator.getCurrentWaypoint());
+        status.put("waypointCount", simulator.getWaypointCount());
+        status.put("latitude", simulator.getLatitude());
+        status.put("longitude", simulator.getLongitude());
+        status.put("altitude", simulator.getAltitude());
+        status.put("battery", simulator.getBattery());
+        status.put("samples", samples);
+        status.put("startTime", startTime);
+        return status;
+    }
+    
+    private void emit(boolean armed) {
+        VehicleState vehicle = connection.getState();
+        
+        begin();
+        payload.putInt(0, armed ? COPTER_MODE_AUTO : COPTER_MODE_LAND);
+        payload.put(4, (byte) MAV_TYPE_QUADROTOR);
+        payload.put(5, (byte) MAV_AUTOPILOT_ARDUPILOTMEGA);
+        payload.put(6, (byte) (MAV_MODE_FLAG_CUSTOM_MODE_ENABLED | (armed ? MAV_MODE_FLAG_SAFETY_ARMED : 0)));
+        payload.put(7, (byte) (armed ? MAV_STATE_ACTIVE : MAV_STATE_STANDBY));
+        apply(vehicle, MAVLinkMessages.HEARTBEAT, 9);
+        
+        double battery = simulator.getBattery();
+        begin();
+        payload.putShort(14, (short) ((EMPTY_VOLTAGE + (FULL_VOLTAGE - EMPTY_VOLTAGE) * battery / 100) * 1000));
+        payload.putShort(16, (short) (armed ? HOVER_CURRENT * 100 : 0));
+        payload.put(30, (byte) Math.round(battery));
+        apply(vehicle, MAVLinkMessages.SYS_STATUS, 31);
+        
+        begin();
+        payload.put(28, (byte) GPS_FIX_3D);
+        payload.put(29, (byte) SATELLITES);
+        apply(vehicle, MAVLinkMessages.GPS_RAW_INT, 30);
+        
+        begin();
+        payload.putFloat(0, (float) simulator.getGroundSpeed());
+        payload.putFloat(4, (float) simulator.getGroundSpeed());
+        payload.putFloat(8, (float) simulator.getAltitude());
+        payload.putFloat(12, (float) simulator.getClimbRate());
+        payload.putShort(16, (short) Math.round(simulator.getHeading()));
+        payload.putShort(18, (short) (armed ? 50 : 0));
+        apply(vehicle, MAVLinkMessages.VFR_HUD, 20);
+        
+        begin();
+        payload.putShort(0, (short) simulator.getCurrentWaypoint());
+        apply(vehicle, MAVLinkMessages.MISSION_CURRENT, 2);
+        
+        if (simulator.getLastReachedWaypoint() != reportedReached) {
+            reportedReached = simulator.getLastReachedWaypoint();
+            begin();
+            payload.putShort(0, (short) reportedReached);
+            apply(vehicle, MAVLinkMessages.MISSION_ITEM_REACHED, 2);
+        }
+        
+        begin();
+        payload.putInt(0, (int) (simulator.getElapsed() * 1000)); // time_boot_ms
+        payload.putInt(4, (int) Math.round(simulator.getLatitude() * 1e7));
+        payload.putInt(8, (int) Math.round(simulator.getLongitude() * 1e7));
+        payload.putInt(12, (int) Math.round(simulator.getAltitude() * 1000));
+        payload.putInt(16, (int) Math.round(simulator.getAltitude() * 1000));
+        payload.putShort(20, (short) Math.round(simulator.getVelocityNorth() * 100));
+        payload.putShort(22, (short) Math.round(simulator.getVelocityEast() * 100));
+        payload.putShort(24, (short) Math.round(-simulator.getClimbRate() * 100));
+        payload.putShort(26, (short) Math.round(simulator.getHeading() * 100));
+        if (apply(vehicle, MAVLinkMessages.GLOBAL_POSITION_INT, 28)) {
+            publisher.publish(connection, startTime.plusNanos((long) (simulator.getElapsed() * 1e9)));
+            samples++;
+        }
+    }
+    
+    private void begin() {
+        Arrays.fill(payload.array(), (byte) 0);
+    }
+    
+    private boolean apply(VehicleState vehicle, int messageId, int length) {
+        return vehicle.apply(messageId, payload, 0, length);
+    }
+}
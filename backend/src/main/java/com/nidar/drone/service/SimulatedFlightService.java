@@ -0,0 +1,172 @@
+package com.nidar.drone.service;
+
+import com.nidar.drone.config.SchedulingConfig;
+import com.nidar.drone.energy.EnergyModel;
+import com.nidar.drone.mavlink.MAVLinkFrameEncoder;
+import com.nidar.drone.model.Drone;
+import com.nidar.drone.model.Mission;
+import com.nidar.drone.repository.DroneRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Simulated vehicles flying missions on the kinematic simulator.
+ *
+ * Each flight gets its own MAVLink system id (from simulation.flight.system-id-base up, skipping
+ * ids of connected vehicles) and publishes through {@link MAVProxyService#publishPosition}, so
+ * its samples reach the live telemetry topics and geofence monitoring like a real vehicle's.
+ * They are never stored or logged as flights, so a simulation cannot show up in mission replay,
+ * fleet statistics or the energy models fitted from recorded telemetry. Flights can run faster
+ * than real time (timeScale) for a quick preview of a long mission.
+ */
+@Service
+@Slf4j
+public class SimulatedFlightService {
+    
+    public static final double MAX_TIME_SCALE = 1000;
+    public static final double MAX_RATE_HZ = 50;
+    
+    private static final long FINISHED_RETENTION_MINUTES = 10;
+    
+    private final MissionService missionService;
+    private final DroneRepository droneRepository;
+    private final MAVProxyService mavProxyService;
+    private final TaskScheduler taskScheduler;
+    private final EnergyModelService energyModelService;
+    private final Map<String, SimulatedFlight> flights = new ConcurrentHashMap<>();
+    
+    @Value("${simulation.flight.tick-ms:100}")
+    private long tickMs;
+    
+    @Value("${simulation.flight.max-flights:20}")
+    private int maxFlights;
+    
+    @Value("${simulation.flight.system-id-base:200}")
+    private int systemIdBase;
+    
+    public SimulatedFlightService(MissionService missionService,
+                                  DroneRepository droneRepository,
+                                  MAVProxyService mavProxyService,
+                                  @Qualifier(SchedulingConfig.SIMULATION_SCHEDULER) TaskScheduler taskScheduler,
+                                  EnergyModelService energyModelService) {
+        this.missionService = missionService;
+        this.droneRepository = droneRepository;
+        this.mavProxyService = mavProxyService;
+        this.taskScheduler = taskScheduler;
+        this.energyModelService = energyModelService;
+    }
+    
+    /**
+     * Take off and fly a mission; droneId (optional) attributes the telemetry to a registered drone
+     * and drains the battery with the energy model of its drone model
+     */
+    public synchronized SimulatedFlight start(Long missionId, Long droneId, double timeScale, double rateHz) {
+        if (timeScale <= 0 || timeScale > MAX_TIME_SCALE) {
+            throw new RuntimeException("timeScale must be greater than 0 and at most " + MAX_TIME_SCALE);
+        }
+        if (rateHz <= 0 || rateHz > MAX_RATE_HZ) {
+            throw new RuntimeException("rateHz must be greater than 0 and at most " + MAX_RATE_HZ);
+        }
+        if (flights.values().stream().filter(f -> f.getState() == SimulatedFlight.State.FLYING).count() >= maxFlights) {
+            throw new RuntimeException("Too many simulated flights, stop one and try again");
+        }
+        Mission mission = missionService.getMissionForDeployment(missionId);
+        if (mission.getWaypoints().isEmpty()) {
+            throw new RuntimeException("Mission has no waypoints");
+        }
+        
+        VehicleConnection connection = new VehicleConnection(nextSystemId(), null);
+        EnergyModel energyModel = EnergyModel.DEFAULT;
+        if (droneId != null) {
+            Drone drone = droneRepository.findById(droneId)
+                .orElseThrow(() -> new RuntimeException("Drone not found"));
+            connection.setDrone(drone);
+            energyModel = energyModelService.getModel(drone.getModel());
+        }
+        Mission reference = new Mission();
+        reference.setId(mission.getId());
+        reference.setName(mission.getName());
+        connection.setMission(reference);
+        connection.setMissionWaypointCount(mission.getWaypoints().size());
+        
+        KinematicFlightSimulator simulator = new KinematicFlightSimulator(
+            mission.getWaypoints(), mission.getDefaultSpeed(), energyModel);
+        // Samples are emitted between steps, so rates above 1 / DEFAULT_STEP need a finer step
+        double step = Math.min(KinematicFlightSimulator.DEFAULT_STEP, 1 / rateHz);
+        SimulatedFlight flight = new SimulatedFlight(UUID.randomUUID().toString(), missionId, droneId, connection,
+            simulator, step, timeScale, rateHz, mavProxyService::publishPosition);
+        flights.put(flight.getSessionId(), flight);
+        flight.setTicker(taskScheduler.scheduleAtFixedRate(() -> tick(flight), Duration.ofMillis(tickMs)));
+        
+        log.info("Started simulated flight {} of mission {} as system id {} at {}x",
+            flight.getSessionId(), missionId, connection.getSystemId(), timeScale);
+        return flight;
+    }
+    
+    public SimulatedFlight getFlight(String sessionId) {
+        SimulatedFlight flight = flights.get(sessionId);
+        if (flight == null) {
+            throw new RuntimeException("Simulated flight not found: " + sessionId);
+        }
+        return flight;
+    }
+    
+    public List<SimulatedFlight> getFlights() {
+        return List.copyOf(flights.values());
+    }
+    
+    public void stop(String sessionId) {
+        SimulatedFlight flight = flights.remove(sessionId);
+        if (flight != null) {
+            flight.stop();
+            log.info("Stopped simulated flight {}", sessionId);
+        }
+    }
+    
+    @Scheduled(fixedRate = 60000)
+    public void purgeFinishedFlights() {
+        long retention = TimeUnit.MINUTES.toNanos(FINISHED_RETENTION_MINUTES);
+        flights.values().removeIf(flight -> flight.getFinishedAgeNanos() > retention);
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        List.copyOf(flights.keySet()).forEach(this::stop);
+    }
+    
+    private void tick(SimulatedFlight flight) {
+        try {
+            flight.advance(tickMs / 1000.0);
+        } catch (Exception e) {
+            log.error("Simulated flight {} failed", flight.getSessionId(), e);
+            stop(flight.getSessionId());
+        }
+    }
+    
+    private int nextSystemId() {
+        Set<Integer> used = mavProxyService.getVehicles().stream()
+            .map(VehicleConnection::getSystemId)
+            .collect(Collectors.toSet());
+        flights.values().forEach(flight -> used.add(flight.getSystemId()));
+        for (int systemId = systemIdBase; systemId < MAVLinkFrameEncoder.SYSTEM_ID; systemId++) {
+            if (!used.contains(systemId)) {
+                return systemId;
+            }
+        }
+        throw new RuntimeException("No free MAVLink system id for a simulated vehicle");
+    }
+}
@@ -0,0 +1,132 @@
+package com.nidar.drone.service;
+
+import com.nidar.drone.energy.EnergyModel;
+import com.nidar.drone.geofence.CompiledGeofence;
+import com.nidar.drone.model.Mission;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Simulation results cached by mission content, for validation requests that repeat (the
+ * planner re-validates on every edit preview).
+ *
+ * Results are keyed by the {@link MissionFingerprint} content hash, so an unchanged mission is
+ * answered from the cache whoever asks and however it was saved; a hit also needs the mission's
+ * geofence zones to be the ones the result was checked against. The cache is least recently
+ * used first out and bounded both in entries (simulator.cache.max-entries) and in the waypoints
+ * they hold (simulator.cache.max-waypoints), since a survey grid weighs far more than a short
+ * mission. On a miss, the latest cached simulation of the same mission is handed to the
+ * simulator as a base, so an edit only recomputes the waypoints and legs next to it (see
+ * {@link SimulationTrace}).
+ */
+@Service
+@Slf4j
+public class SimulationResultCache {
+    
+    private final MissionSimulatorService simulatorService;
+    private final GeofenceService geofenceService;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Long, Entry> latestByMission = new HashMap<>();
+    private long cachedWaypoints;
+    private long hits;
+    private long misses;
+    
+    @Value("${simulator.cache.max-entries:256}")
+    private int maxEntries;
+    
+    @Value("${simulator.cache.max-waypoints:200000}")
+    private long maxWaypoints;
+    
+    public SimulationResultCache(MissionSimulatorService simulatorService, GeofenceService geofenceService) {
+        this.simulatorService = simulatorService;
+        this.geofenceService = geofenceService;
+    }
+    
+    /**
+     * The simulation result of a mission with an energy model, from the cache when its content
+     * has been simulated before
+     */
+    public MissionSimulatorService.SimulationResult simulate(Mission mission, EnergyModel energyModel) {
+        MissionFingerprint fingerprint = MissionFingerprint.of(mission, energyModel);
+        CompiledGeofence geofence = mission.getId() != null ? geofenceService.getCompiledGeofence(mission.getId()) : null;
+        
+        SimulationTrace previous = null;
+        synchronized (this) {
+            Entry cached = entries.get(fingerprint.getContentHash());
+            if (cached != null && cached.trace.geofence == geofence) {
+                hits++;
+                if (mission.getId() != null) {
+                    latestByMission.put(mission.getId(), cached);
+                }
+                return cached.result.copy();
+            }
+            misses++;
+            Entry latest = mission.getId() != null ? latestByMission.get(mission.getId()) : null;
+            if (latest != null) {
+                previous = latest.trace;
+            }
+        }
+        
+        log.debug("Simulating mission {} ({} waypoints){}", mission.getId(), fingerprint.getWaypointHashes().length,
+            previous != null ? " from its previous version" : "");
+        SimulationTrace trace = new SimulationTrace(fingerprint);
+        MissionSimulatorService.SimulationResult result = simulatorService.simulateMission(
+            mission, energyModel, previous, trace);
+        result.setContentHash(fingerprint.getContentHash());
+        put(mission.getId(), new Entry(result, trace));
+        return result.copy();
+    }
+    
+    public synchronized Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("entries", entries.size());
+        stats.put("waypoints", cachedWaypoints);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("maxEntries", maxEntries);
+        stats.put("maxWaypoints", maxWaypoints);
+        return stats;
+    }
+    
+    private synchronized void put(Long missionId, Entry entry) {
+        Entry replaced = entries.put(entry.trace.getFingerprint().getContentHash(), entry);
+        if (replaced != null) {
+            cachedWaypoints -= replaced.weight();
+        }
+        cachedWaypoints += entry.weight();
+        if (missionId != null) {
+            latestByMission.put(missionId, entry);
+        }
+        
+        Iterator<Entry> eldest = entries.values().iterator();
+        while ((entries.size() > maxEntries || cachedWaypoints > maxWaypoints) && eldest.hasNext()) {
+            Entry evicted = eldest.next();
+            eldest.remove();
+            cachedWaypoints -= evicted.weight();
+            latestByMission.values().remove(evicted);
+        }
+    }
+    
+    private static final class Entry {
+        private final MissionSimulatorService.SimulationResult result;
+        private final SimulationTrace trace;
+        
+        Entry(MissionSimulatorService.SimulationResult result, SimulationTrace trace) {
+            this.result = result;
+            this.trace = trace;
+        }
+        
+        /**
+         * Waypoints held; the result's messages, geofence checks and flight checkpoints scale with them
+         */
+        long weight() {
+            return trace.getFingerprint().getWaypointHashes().length + 1L;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.nidar.drone.service;
+
+import com.nidar.drone.geofence.CompiledGeofence;
+import com.nidar.drone.geofence.GeofenceViolation;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What one simulation of a mission computed per waypoint and per leg, kept with its cached
+ * result so that simulating an edited version of the mission only recomputes what the edit
+ * touched: geofence checks of unchanged waypoints and legs (found by content, so inserted and
+ * removed waypoints do not shift them) and the flight up to the last checkpoint before the first
+ * changed waypoint. Filled in by {@link MissionSimulatorService} and not changed once cached.
+ */
+final class SimulationTrace {
+    
+    private final MissionFingerprint fingerprint;
+    private Map<Long, Integer> waypointIndex;
+    
+    CompiledGeofence geofence; // the zones checked against, null when the mission has none
+    GeofenceViolation[] waypointViolations;
+    GeofenceViolation[] legViolations;
+    List<KinematicFlightSimulator.Checkpoint> checkpoints;
+    
+    SimulationTrace(MissionFingerprint fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+    
+    MissionFingerprint getFingerprint() {
+        return fingerprint;
+    }
+    
+    /**
+     * Index of a waypoint with the given content hash, or -1
+     */
+    synchronized int indexOf(long waypointHash) {
+        if (waypointIndex == null) {
+            long[] hashes = fingerprint.getWaypointHashes();
+            waypointIndex = new HashMap<>(hashes.length * 2);
+            for (int i = 0; i < hashes.length; i++) {
+                waypointIndex.put(hashes[i], i);
+            }
+        }
+        return waypointIndex.getOrDefault(waypointHash, -1);
+    }
+    
+    /**
+     * Index of a leg between waypoints with the given content hashes, or -1
+     */
+    int legIndexOf(long fromHash, long toHash) {
+        int from = indexOf(fromHash);
+        long[] hashes = fingerprint.getWaypointHashes();
+        return from >= 0 && from + 1 < hashes.length && hashes[from + 1] == toHash ? from : -1;
+    }
+    
+    /**
+     * The longest run of checkpoints that a flight of the given mission can resume from: those up
+     * to a waypoint i where waypoints 0 to i+1 are unchanged, with the same flight parameters
+     */
+    List<KinematicFlightSimulator.Checkpoint> reusableCheckpoints(MissionFingerprint next) {
+        if (checkpoints == null || checkpoints.isEmpty()
+                || fingerprint.getFlightParametersHash() != next.getFlightParametersHash()) {
+            return List.of();
+        }
+        long[] previous = fingerprint.getWaypointHashes();
+        long[] current = next.getWaypointHashes();
+        int firstChanged = 0;
+        int common = Math.min(previous.length, current.length);
+        while (firstChanged < common && previous[firstChanged] == current[firstChanged]) {
+            firstChanged++;
+        }
+        // A checkpoint at waypoint i needs waypoints 0 to i+1 unchanged and still in the mission
+        int lastUsable = Math.min(firstChanged - 2, current.length - 2);
+        int count = 0;
+        while (count < checkpoints.size() && checkpoints.get(count).getWaypoint() <= lastUsable) {
+            count++;
+        }
+        return checkpoints.subList(0, count);
+    }
+}
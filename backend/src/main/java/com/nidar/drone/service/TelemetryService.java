@@ -2,27 +2,193 @@ package com.nidar.drone.service;
 
 import com.nidar.drone.model.Telemetry;
 import com.nidar.drone.repository.TelemetryRepository;
-import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Live telemetry.
+ *
+ * Every ingested sample updates an in-memory ring of recent samples, one for the whole fleet
+ * and one per drone, so live queries (latest position, last N samples) never touch the
+ * database. Persistence is handed to {@link TelemetryWriter}. The rings are seeded once from
+ * the database after a restart so the dashboard is not empty until the first sample arrives.
+ * A mission being flown also gets a {@link MissionStatisticsAccumulator}, opened and closed with
+ * the flight by {@link FlightLogRecorder}, that every sample recorded against it updates, so
+ * in-flight statistics are read in constant time.
+ */
 @Service
-@RequiredArgsConstructor
+@Slf4j
 public class TelemetryService {
     
     private final TelemetryRepository telemetryRepository;
+    private final TelemetryWriter telemetryWriter;
+    private final int recentSamples;
     
+    private final TelemetryRing fleetRecent;
+    private final Map<Long, TelemetryRing> droneRecent = new ConcurrentHashMap<>();
+    private final Map<Long, MissionStatisticsAccumulator> liveMissionStatistics = new ConcurrentHashMap<>();
+    private volatile boolean seeded;
+    
+    public TelemetryService(TelemetryRepository telemetryRepository,
+                            TelemetryWriter telemetryWriter,
+                            @Value("${telemetry.cache.recent-samples:100}") int recentSamples) {
+        this.telemetryRepository = telemetryRepository;
+        this.telemetryWriter = telemetryWriter;
+        if (recentSamples < 1) {
+            throw new IllegalArgumentException("telemetry.cache.recent-samples must be at least 1, got " + recentSamples);
+        }
+        this.recentSamples = recentSamples;
+        this.fleetRecent = new TelemetryRing(recentSamples);
+    }
+    
+    /**
+     * Record a live sample and queue it for batched persistence (see {@link TelemetryWriter});
+     * does not touch the database
+     */
     public Telemetry saveTelemetry(Telemetry telemetry) {
-        return telemetryRepository.save(telemetry);
+        remember(telemetry);
+        telemetryWriter.submit(telemetry);
+        return telemetry;
     }
     
+    public Map<String, Object> getPipelineStats() {
+        return telemetryWriter.getStats();
+    }
+    
+    /**
+     * Most recent samples across the fleet, newest first
+     */
     public List<Telemetry> getRecentTelemetry() {
-        return telemetryRepository.findTop100ByOrderByTimestampDesc();
+        seedIfNeeded();
+        return fleetRecent.newestFirst();
+    }
+    
+    /**
+     * Most recent samples of one drone, newest first
+     */
+    public List<Telemetry> getRecentTelemetry(Long droneId) {
+        seedIfNeeded();
+        TelemetryRing ring = droneRecent.get(droneId);
+        return ring != null ? ring.newestFirst() : List.of();
     }
     
     public Telemetry getLatestTelemetry() {
-        List<Telemetry> telemetryList = telemetryRepository.findTop100ByOrderByTimestampDesc();
-        return telemetryList.isEmpty() ? null : telemetryList.get(0);
+        seedIfNeeded();
+        return fleetRecent.latest();
+    }
+    
+    public Telemetry getLatestTelemetry(Long droneId) {
+        seedIfNeeded();
+        TelemetryRing ring = droneRecent.get(droneId);
+        return ring != null ? ring.latest() : null;
+    }
+    
+    /**
+     * Start accumulating statistics for a mission from the next sample recorded against it;
+     * called when a flight of the mission starts
+     */
+    public void startMissionStatistics(Long missionId) {
+        liveMissionStatistics.put(missionId, new MissionStatisticsAccumulator());
+    }
+    
+    /**
+     * Stop tracking a mission live; called when its flight ends
+     */
+    public void stopMissionStatistics(Long missionId) {
+        liveMissionStatistics.remove(missionId);
+    }
+    
+    /**
+     * Statistics of the mission's current flight, or null if it is not being flown
+     */
+    public Map<String, Object> getLiveMissionStatistics(Long missionId) {
+        MissionStatisticsAccumulator statistics = liveMissionStatistics.get(missionId);
+        return statistics != null ? statistics.toMap() : null;
+    }
+    
+    private void remember(Telemetry telemetry) {
+        addRecent(telemetry);
+        if (telemetry.getMission() != null && telemetry.getMission().getId() != null) {
+            MissionStatisticsAccumulator statistics = liveMissionStatistics.get(telemetry.getMission().getId());
+            if (statistics != null) {
+                statistics.add(telemetry);
+            }
+        }
+    }
+    
+    private void addRecent(Telemetry telemetry) {
+        fleetRecent.add(telemetry);
+        if (telemetry.getDrone() != null && telemetry.getDrone().getId() != null) {
+            droneRecent.computeIfAbsent(telemetry.getDrone().getId(), id -> new TelemetryRing(recentSamples))
+                .add(telemetry);
+        }
+    }
+    
+    private void seedIfNeeded() {
+        if (seeded) {
+            return;
+        }
+        synchronized (this) {
+            if (seeded) {
+                return;
+            }
+            seeded = true;
+            if (!fleetRecent.isEmpty()) {
+                return;
+            }
+            try {
+                List<Telemetry> stored = telemetryRepository.findTop100ByOrderByTimestampDesc();
+                // Stored samples only fill the rings; they are not part of a live flight
+                for (int i = stored.size() - 1; i >= 0; i--) {
+                    addRecent(stored.get(i));
+                }
+            } catch (Exception e) {
+                log.warn("Could not seed telemetry cache from the database", e);
+            }
+        }
+    }
+    
+    /**
+     * Fixed-size ring of the most recent samples
+     */
+    private static class TelemetryRing {
+        
+        private final Telemetry[] samples;
+        private int next;
+        private int size;
+        
+        TelemetryRing(int capacity) {
+            this.samples = new Telemetry[capacity];
+        }
+        
+        synchronized void add(Telemetry telemetry) {
+            samples[next] = telemetry;
+            next = (next + 1) % samples.length;
+            if (size < samples.length) {
+                size++;
+            }
+        }
+        
+        synchronized Telemetry latest() {
+            return size == 0 ? null : samples[(next - 1 + samples.length) % samples.length];
+        }
+        
+        synchronized boolean isEmpty() {
+            return size == 0;
+        }
+        
+        synchronized List<Telemetry> newestFirst() {
+            List<Telemetry> result = new ArrayList<>(size);
+            for (int i = 1; i <= size; i++) {
+                result.add(samples[(next - i + samples.length) % samples.length]);
+            }
+            return result;
+        }
     }
 }
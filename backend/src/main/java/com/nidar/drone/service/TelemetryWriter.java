@@ -0,0 +1,192 @@
+package com.nidar.drone.service;
+
+import com.nidar.drone.model.Telemetry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Asynchronous, batched telemetry persistence.
+ *
+ * The ingest path only offers samples to a bounded queue; a background writer drains it and
+ * inserts up to batch-size rows per JDBC batch (rewritten into multi-row INSERTs by the MySQL
+ * driver with rewriteBatchedStatements=true). Rows are written with plain JDBC because the
+ * telemetry id is IDENTITY, which makes Hibernate insert one row per round-trip.
+ *
+ * When the queue fills up the overload policy decides what is lost:
+ * DROP_NEWEST rejects incoming samples, DROP_OLDEST evicts the oldest queued sample, and
+ * SAMPLE keeps only one in sample-rate samples once the queue is past its high-water mark.
+ */
+@Service
+@Slf4j
+public class TelemetryWriter {
+    
+    public enum OverloadPolicy { DROP_NEWEST, DROP_OLDEST, SAMPLE }
+    
+    private static final String INSERT_SQL =
+        "INSERT INTO telemetry (latitude, longitude, altitude, speed, battery, heading, satellites, " +
+        "flight_mode, armed, timestamp, drone_id, mission_id) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final ArrayBlockingQueue<Telemetry> queue;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final OverloadPolicy overloadPolicy;
+    private final int sampleRate;
+    private final int highWaterMark;
+    
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong sampleCounter = new AtomicLong();
+    private volatile long lastBatchMillis;
+    private volatile int lastBatchSize;
+    
+    private Thread writerThread;
+    private volatile boolean running;
+    
+    public TelemetryWriter(JdbcTemplate jdbcTemplate,
+                           @Value("${telemetry.persistence.queue-capacity:10000}") int queueCapacity,
+                           @Value("${telemetry.persistence.batch-size:500}") int batchSize,
+                           @Value("${telemetry.persistence.flush-interval-ms:200}") long flushIntervalMs,
+                           @Value("${telemetry.persistence.overload-policy:DROP_OLDEST}") OverloadPolicy overloadPolicy,
+                           @Value("${telemetry.persistence.sample-rate:5}") int sampleRate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.overloadPolicy = overloadPolicy;
+        this.sampleRate = Math.max(1, sampleRate);
+        this.highWaterMark = queueCapacity * 3 / 4;
+    }
+    
+    @PostConstruct
+    public void start() {
+        running = true;
+        writerThread = new Thread(this::writeLoop, "telemetry-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+    
+    /**
+     * Flush what is queued and stop the writer
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (writerThread != null) {
+            writerThread.interrupt();
+            writerThread.join(5000);
+        }
+    }
+    
+    /**
+     * Queue a sample for persistence; never blocks.
+     * Returns false if the sample was dropped by the overload policy.
+     */
+    public boolean submit(Telemetry telemetry) {
+        if (overloadPolicy == OverloadPolicy.SAMPLE && queue.size() >= highWaterMark
+            && sampleCounter.getAndIncrement() % sampleRate != 0) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        
+        while (!queue.offer(telemetry)) {
+            if (overloadPolicy != OverloadPolicy.DROP_OLDEST) {
+                dropped.incrementAndGet();
+                return false;
+            }
+            if (queue.poll() != null) {
+                dropped.incrementAndGet();
+            }
+        }
+        
+        accepted.incrementAndGet();
+        return true;
+    }
+    
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("queued", queue.size());
+        stats.put("capacity", queue.size() + queue.remainingCapacity());
+        stats.put("overloadPolicy", overloadPolicy);
+        stats.put("accepted", accepted.get());
+        stats.put("dropped", dropped.get());
+        stats.put("written", written.get());
+        stats.put("failed", failed.get());
+        stats.put("batches", batches.get());
+        stats.put("lastBatchSize", lastBatchSize);
+        stats.put("lastBatchMillis", lastBatchMillis);
+        return stats;
+    }
+    
+    private void writeLoop() {
+        List<Telemetry> batch = new ArrayList<>(batchSize);
+        
+        while (running || !queue.isEmpty()) {
+            try {
+                Telemetry first = running ? queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS) : queue.poll();
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                // stop() was called; loop once more to flush what is left
+                running = false;
+            } finally {
+                batch.clear();
+            }
+        }
+        
+        log.info("Telemetry writer stopped ({} rows written, {} dropped)", written.get(), dropped.get());
+    }
+    
+    private void writeBatch(List<Telemetry> batch) {
+        long start = System.nanoTime();
+        try {
+            jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), this::bind);
+            written.addAndGet(batch.size());
+        } catch (Exception e) {
+            failed.addAndGet(batch.size());
+            log.error("Failed to write {} telemetry rows", batch.size(), e);
+        }
+        batches.incrementAndGet();
+        lastBatchSize = batch.size();
+        lastBatchMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+    
+    private void bind(PreparedStatement ps, Telemetry t) throws SQLException {
+        ps.setObject(1, t.getLatitude(), Types.DOUBLE);
+        ps.setObject(2, t.getLongitude(), Types.DOUBLE);
+        ps.setObject(3, t.getAltitude(), Types.DOUBLE);
+        ps.setObject(4, t.getSpeed(), Types.DOUBLE);
+        ps.setObject(5, t.getBattery(), Types.DOUBLE);
+        ps.setObject(6, t.getHeading(), Types.INTEGER);
+        ps.setObject(7, t.getSatellites(), Types.INTEGER);
+        ps.setString(8, t.getFlightMode());
+        ps.setObject(9, t.getArmed(), Types.BOOLEAN);
+        ps.setTimestamp(10, Timestamp.valueOf(t.getTimestamp() != null ? t.getTimestamp() : LocalDateTime.now()));
+        ps.setObject(11, t.getDrone() != null ? t.getDrone().getId() : null, Types.BIGINT);
+        ps.setObject(12, t.getMission() != null ? t.getMission().getId() : null, Types.BIGINT);
+    }
+}
@@ -0,0 +1,135 @@
+package com.nidar.drone.service;
+
+import com.nidar.drone.dto.TelemetryPoint;
+import com.nidar.drone.model.Telemetry;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Column store for a recorded track: one primitive array per field instead of one object per
+ * sample, so long tracks can be analyzed (see {@link TrackSimplifier}) in a fraction of the
+ * memory the entities would take. Missing values are stored as NaN (or -1 for integers).
+ */
+public class TrackBuffer {
+    
+    private static final int INITIAL_CAPACITY = 1024;
+    
+    private int size;
+    private long[] ids = new long[INITIAL_CAPACITY];
+    private long[] times = new long[INITIAL_CAPACITY];
+    private double[] latitudes = new double[INITIAL_CAPACITY];
+    private double[] longitudes = new double[INITIAL_CAPACITY];
+    private double[] altitudes = new double[INITIAL_CAPACITY];
+    private double[] speeds = new double[INITIAL_CAPACITY];
+    private double[] batteries = new double[INITIAL_CAPACITY];
+    private int[] headings = new int[INITIAL_CAPACITY];
+    private int[] satellites = new int[INITIAL_CAPACITY];
+    private byte[] armed = new byte[INITIAL_CAPACITY];
+    private String[] flightModes = new String[INITIAL_CAPACITY];
+    private final Map<String, String> modeNames = new HashMap<>();
+    
+    public void add(TelemetryPoint p) {
+        add(p.getId(), p.getTimestamp(), p.getLatitude(), p.getLongitude(), p.getAltitude(), p.getSpeed(),
+            p.getBattery(), p.getHeading(), p.getSatellites(), p.getFlightMode(), p.getArmed());
+    }
+    
+    public void add(Telemetry t) {
+        add(t.getId(), t.getTimestamp(), t.getLatitude(), t.getLongitude(), t.getAltitude(), t.getSpeed(),
+            t.getBattery(), t.getHeading(), t.getSatellites(), t.getFlightMode(), t.getArmed());
+    }
+    
+    private void add(Long id, LocalDateTime timestamp, Double latitude, Double longitude, Double altitude,
+                     Double speed, Double battery, Integer heading, Integer satelliteCount,
+                     String flightMode, Boolean isArmed) {
+        if (size == times.length) {
+            grow();
+        }
+        ids[size] = id != null ? id : -1;
+        times[size] = timestamp != null
+            ? timestamp.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + timestamp.getNano() / 1000
+            : Long.MIN_VALUE;
+        latitudes[size] = valueOf(latitude);
+        longitudes[size] = valueOf(longitude);
+        altitudes[size] = valueOf(altitude);
+        speeds[size] = valueOf(speed);
+        batteries[size] = valueOf(battery);
+        headings[size] = heading != null ? heading : -1;
+        satellites[size] = satelliteCount != null ? satelliteCount : -1;
+        armed[size] = isArmed == null ? -1 : (byte) (isArmed ? 1 : 0);
+        flightModes[size] = flightMode != null ? modeNames.computeIfAbsent(flightMode, mode -> mode) : null;
+        size++;
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Sample times in microseconds since the epoch (timestamps taken as UTC)
+     */
+    public long[] times() {
+        return times;
+    }
+    
+    public double[] latitudes() {
+        return latitudes;
+    }
+    
+    public double[] longitudes() {
+        return longitudes;
+    }
+    
+    public double[] altitudes() {
+        return altitudes;
+    }
+    
+    public double[] speeds() {
+        return speeds;
+    }
+    
+    public double[] batteries() {
+        return batteries;
+    }
+    
+    /**
+     * Rebuild sample i
+     */
+    public TelemetryPoint toPoint(int i) {
+        return new TelemetryPoint(
+            ids[i] >= 0 ? ids[i] : null,
+            times[i] != Long.MIN_VALUE ? LocalDateTime.ofEpochSecond(Math.floorDiv(times[i], 1_000_000),
+                Math.floorMod(times[i], 1_000_000) * 1000, ZoneOffset.UTC) : null,
+            boxed(latitudes[i]), boxed(longitudes[i]), boxed(altitudes[i]), boxed(speeds[i]), boxed(batteries[i]),
+            headings[i] >= 0 ? headings[i] : null,
+            satellites[i] >= 0 ? satellites[i] : null,
+            flightModes[i],
+            armed[i] < 0 ? null : armed[i] == 1);
+    }
+    
+    private void grow() {
+        int capacity = times.length * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        times = Arrays.copyOf(times, capacity);
+        latitudes = Arrays.copyOf(latitudes, capacity);
+        longitudes = Arrays.copyOf(longitudes, capacity);
+        altitudes = Arrays.copyOf(altitudes, capacity);
+        speeds = Arrays.copyOf(speeds, capacity);
+        batteries = Arrays.copyOf(batteries, capacity);
+        headings = Arrays.copyOf(headings, capacity);
+        satellites = Arrays.copyOf(satellites, capacity);
+        armed = Arrays.copyOf(armed, capacity);
+        flightModes = Arrays.copyOf(flightModes, capacity);
+    }
+    
+    private static double valueOf(Double value) {
+        return value != null ? value : Double.NaN;
+    }
+    
+    private static Double boxed(double value) {
+        return Double.isNaN(value) ? null : value;
+    }
+}
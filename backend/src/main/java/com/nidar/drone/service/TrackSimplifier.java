@@ -0,0 +1,212 @@
+package com.nidar.drone.service;
+
+/**
+ * Track downsampling for replay and map rendering.
+ *
+ * Geometry is simplified with Ramer-Douglas-Peucker on a local equirectangular projection, so
+ * the tolerance is in meters; the altitude, speed and battery series are reduced with
+ * Largest-Triangle-Three-Buckets, which keeps peaks and troughs that plain decimation drops.
+ * The result is the union of the samples each method keeps, in time order.
+ */
+public final class TrackSimplifier {
+    
+    private static final double EARTH_RADIUS = 6371000; // meters
+    
+    private TrackSimplifier() {
+    }
+    
+    /**
+     * Indices of the samples to keep.
+     *
+     * @param toleranceMeters RDP tolerance for the horizontal track, or null to skip
+     * @param resolution      number of samples LTTB keeps per series, or null to skip
+     */
+    public static int[] simplify(TrackBuffer track, Double toleranceMeters, Integer resolution) {
+        int n = track.size();
+        boolean[] keep = new boolean[n];
+        if (n == 0) {
+            return new int[0];
+        }
+        keep[0] = true;
+        keep[n - 1] = true;
+        
+        if (toleranceMeters != null) {
+            douglasPeucker(track.latitudes(), track.longitudes(), n, toleranceMeters, keep);
+        }
+        if (resolution != null) {
+            double[] x = new double[n];
+            long[] times = track.times();
+            for (int i = 0; i < n; i++) {
+                x[i] = times[i];
+            }
+            largestTriangleThreeBuckets(x, track.altitudes(), n, resolution, keep);
+            largestTriangleThreeBuckets(x, track.speeds(), n, resolution, keep);
+            largestTriangleThreeBuckets(x, track.batteries(), n, resolution, keep);
+        }
+        
+        int count = 0;
+        for (boolean k : keep) {
+            if (k) {
+                count++;
+            }
+        }
+        int[] indices = new int[count];
+        for (int i = 0, j = 0; i < n; i++) {
+            if (keep[i]) {
+                indices[j++] = i;
+            }
+        }
+        return indices;
+    }
+    
+    /**
+     * Mark the samples Ramer-Douglas-Peucker keeps at the given tolerance; samples without a position are skipped
+     */
+    static void douglasPeucker(double[] lat, double[] lon, int n, double toleranceMeters, boolean[] keep) {
+        int[] valid = validIndices(lat, lon, n);
+        int m = valid.length;
+        if (m < 3) {
+            for (int i : valid) {
+                keep[i] = true;
+            }
+            return;
+        }
+        
+        // Project to meters around the first position
+        double cosLat = Math.cos(Math.toRadians(lat[valid[0]]));
+        double scale = Math.toRadians(EARTH_RADIUS);
+        double[] x = new double[m];
+        double[] y = new double[m];
+        for (int i = 0; i < m; i++) {
+            x[i] = lon[valid[i]] * cosLat * scale;
+            y[i] = lat[valid[i]] * scale;
+        }
+        
+        keep[valid[0]] = true;
+        keep[valid[m - 1]] = true;
+        double toleranceSquared = toleranceMeters * toleranceMeters;
+        
+        // Explicit stack of [first, last] ranges instead of recursion, so long tracks cannot overflow
+        int[] stack = new int[2 * m];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = m - 1;
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+            if (last - first < 2) {
+                continue;
+            }
+            
+            double maxDistance = -1;
+            int index = -1;
+            for (int i = first + 1; i < last; i++) {
+                double d = segmentDistanceSquared(x[i], y[i], x[first], y[first], x[last], y[last]);
+                if (d > maxDistance) {
+                    maxDistance = d;
+                    index = i;
+                }
+            }
+            
+            if (maxDistance > toleranceSquared) {
+                keep[valid[index]] = true;
+                stack[top++] = first;
+                stack[top++] = index;
+                stack[top++] = index;
+                stack[top++] = last;
+            }
+        }
+    }
+    
+    /**
+     * Mark the samples Largest-Triangle-Three-Buckets keeps when reducing (x, y) to threshold samples;
+     * samples where y is missing are skipped
+     */
+    static void largestTriangleThreeBuckets(double[] x, double[] y, int n, int threshold, boolean[] keep) {
+        int[] valid = validIndices(y, y, n);
+        int m = valid.length;
+        if (m == 0) {
+            return;
+        }
+        if (threshold >= m || threshold < 3) {
+            if (threshold >= m) {
+                for (int i : valid) {
+                    keep[i] = true;
+                }
+            } else {
+                keep[valid[0]] = true;
+                keep[valid[m - 1]] = true;
+            }
+            return;
+        }
+        
+        double bucketSize = (double) (m - 2) / (threshold - 2);
+        int a = 0;
+        keep[valid[0]] = true;
+        
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            // Average of the next bucket, the third vertex of the triangle
+            int nextStart = (int) Math.floor((bucket + 1) * bucketSize) + 1;
+            int nextEnd = Math.min((int) Math.floor((bucket + 2) * bucketSize) + 1, m);
+            double avgX = 0;
+            double avgY = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                avgX += x[valid[i]];
+                avgY += y[valid[i]];
+            }
+            int nextCount = Math.max(1, nextEnd - nextStart);
+            avgX /= nextCount;
+            avgY /= nextCount;
+            
+            // Pick the point of this bucket forming the largest triangle with a and the average
+            int start = (int) Math.floor(bucket * bucketSize) + 1;
+            int end = (int) Math.floor((bucket + 1) * bucketSize) + 1;
+            double ax = x[valid[a]];
+            double ay = y[valid[a]];
+            double maxArea = -1;
+            int chosen = start;
+            for (int i = start; i < end; i++) {
+                double area = Math.abs((ax - avgX) * (y[valid[i]] - ay) - (ax - x[valid[i]]) * (avgY - ay));
+                if (area > maxArea) {
+                    maxArea = area;
+                    chosen = i;
+                }
+            }
+            
+            keep[valid[chosen]] = true;
+            a = chosen;
+        }
+        
+        keep[valid[m - 1]] = true;
+    }
+    
+    /**
+     * Indices where neither a nor b is missing
+     */
+    private static int[] validIndices(double[] a, double[] b, int n) {
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (!Double.isNaN(a[i]) && !Double.isNaN(b[i])) {
+                count++;
+            }
+        }
+        int[] valid = new int[count];
+        for (int i = 0, j = 0; i < n; i++) {
+            if (!Double.isNaN(a[i]) && !Double.isNaN(b[i])) {
+                valid[j++] = i;
+            }
+        }
+        return valid;
+    }
+    
+    private static double segmentDistanceSquared(double px, double py, double ax, double ay, double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared > 0 ? ((px - ax) * dx + (py - ay) * dy) / lengthSquared : 0;
+        t = Math.max(0, Math.min(1, t));
+        double cx = ax + t * dx - px;
+        double cy = ay + t * dy - py;
+        return cx * cx + cy * cy;
+    }
+}
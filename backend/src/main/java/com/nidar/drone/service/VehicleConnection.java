@@ -0,0 +1,49 @@
+package com.nidar.drone.service;
+
+import com.nidar.drone.mavlink.MAVLinkLink;
+import com.nidar.drone.mavlink.VehicleState;
+import com.nidar.drone.model.Drone;
+import com.nidar.drone.model.Mission;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * One vehicle on the MAVLink network, identified by its MAVLink system id.
+ *
+ * Holds the link used to address the vehicle, its decoded {@link VehicleState} (receive thread
+ * only), the registered {@link Drone} it belongs to, if any, the mission upload in flight and
+ * the mission last deployed to it (and its waypoint count), which its telemetry is recorded against.
+ * Uploads to the same vehicle are serialized on {@link #getUploadLock()}; different vehicles
+ * upload independently. Simulated vehicles (see {@link SimulatedFlightService}) have no link.
+ */
+@Getter
+public class VehicleConnection {
+    
+    private final int systemId;
+    private final MAVLinkLink link;
+    private final VehicleState state;
+    private final Object uploadLock = new Object();
+    @Setter
+    private volatile Drone drone;
+    @Setter
+    private volatile MissionUploadSession activeUpload;
+    @Setter
+    private volatile Mission mission;
+    @Setter
+    private volatile Integer missionWaypointCount;
+    
+    public VehicleConnection(int systemId, MAVLinkLink link) {
+        this.systemId = systemId;
+        this.link = link;
+        this.state = new VehicleState(systemId);
+    }
+    
+    public Long getDroneId() {
+        Drone current = drone;
+        return current != null ? current.getId() : null;
+    }
+    
+    public boolean isSimulated() {
+        return link == null;
+    }
+}
@@ -6,16 +6,24 @@ const FlightLogs = () => {
   const [statistics, setStatistics] = useState(null);
   const [selectedLog, setSelectedLog] = useState(null);
   const [filter, setFilter] = useState('ALL');
+  const [nextCursor, setNextCursor] = useState(null);
 
   useEffect(() => {
-    loadLogs();
     loadStatistics();
   }, []);
 
-  const loadLogs = async () => {
+  useEffect(() => {
+    loadLogs();
+  }, [filter]);
+
+  const loadLogs = async (cursor = null) => {
     try {
-      const response = await axios.get('http://localhost:8080/api/logs');
-      setLogs(response.data);
+      const params = { limit: 100 };
+      if (filter !== 'ALL') params.status = filter;
+      if (cursor) Object.assign(params, cursor);
+      const response = await axios.get('http://localhost:8080/api/logs/page', { params });
+      setLogs(cursor ? (previous) => [...previous, ...response.data.logs] : response.data.logs);
+      setNextCursor(response.data.nextCursor);
     } catch (error) {
       console.error('Failed to load logs:', error);
     }
@@ -54,10 +62,6 @@ const FlightLogs = () => {
     }
   };
 
-  const filteredLogs = filter === 'ALL' 
-    ? logs 
-    : logs.filter(log => log.flightStatus === filter);
-
   return (
     <div className="space-y-6">
       {/* Header */}
@@ -116,10 +120,10 @@ const FlightLogs = () => {
       {/* Logs List */}
       <div className="neo-card bg-neo-white">
         <h3 className="text-2xl font-black text-neo-black mb-4">
-          FLIGHT HISTORY ({filteredLogs.length})
+          FLIGHT HISTORY ({logs.length})
         </h3>
         
-        {filteredLogs.length === 0 ? (
+        {logs.length === 0 ? (
           <div className="text-center py-12">
             <div className="text-6xl mb-4">🚁</div>
             <p className="text-xl font-bold text-gray-600">No flight logs yet</p>
@@ -127,7 +131,7 @@ const FlightLogs = () => {
           </div>
         ) : (
           <div className="space-y-3 max-h-[600px] overflow-y-auto">
-            {filteredLogs.map((log) => (
+            {logs.map((log) => (
               <div
                 key={log.id}
                 className="neo-border p-4 bg-neo-white hover:bg-gray-50 cursor-pointer transition-all duration-300"
@@ -169,6 +173,14 @@ const FlightLogs = () => {
                 </div>
               </div>
             ))}
+            {nextCursor && (
+              <button
+                onClick={() => loadLogs(nextCursor)}
+                className="neo-border w-full px-6 py-2 font-black bg-neo-white hover:bg-neo-yellow transition-all duration-300"
+              >
+                LOAD MORE
+              </button>
+            )}
           </div>
         )}
       </div>